@@ -0,0 +1,124 @@
+package com.senthil.codesearch;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.SearcherService;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Replays the most used searches of the history after the first project is opened, so that the facets and the
+ * first page of results of the searches the user repeats are cached before they are searched.
+ * The searches are sent one at a time from the worker pool with a pause between them, and are delayed while other
+ * searches are waiting for the server. Runs once per application.
+ */
+public class CacheWarmUpActivity implements StartupActivity, DumbAware {
+
+  private static final Logger LOG = Logger.getInstance(CacheWarmUpActivity.class);
+
+  /**
+   * no of searches replayed, 0 disables the warm up. Can be overridden with -Dcodesearch.warmUp.searches.
+   */
+  private static final int WARM_UP_SEARCHES = Integer.getInteger("codesearch.warmUp.searches", 10);
+  /**
+   * delay in ms before the first search, the project is still loading.
+   */
+  private static final long START_DELAY = TimeUnit.SECONDS.toMillis(10);
+  /**
+   * delay in ms between two searches.
+   */
+  private static final long SEARCH_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+  /**
+   * delay in ms before checking again when other searches are running.
+   */
+  private static final long BUSY_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+  @Override
+  public void runActivity(@NotNull Project project) {
+    if (WARM_UP_SEARCHES <= 0 || ApplicationManager.getApplication().isUnitTestMode()
+        || !STARTED.compareAndSet(false, true)) {
+      return;
+    }
+    List<CodeSearchRequest> requests = CodeSearchHistoryManager.getInstance().getFrequentQueries(WARM_UP_SEARCHES);
+    if (!requests.isEmpty()) {
+      LOG.debug("Warming up the cache with searches ", requests.size());
+      new WarmUp(SearcherService.getInstance(), requests).schedule(START_DELAY);
+    }
+  }
+
+  /**
+   * The searches left to replay.
+   */
+  private static final class WarmUp {
+    private final SearcherService service;
+    private final List<CodeSearchRequest> requests;
+    /**
+     * no of searches sent, the tasks updating it run one after the other.
+     */
+    private int searchCount;
+
+    WarmUp(SearcherService service, List<CodeSearchRequest> requests) {
+      this.service = service;
+      this.requests = requests;
+    }
+
+    void schedule(long delay) {
+      try {
+        service.getScheduler().schedule(this::next, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        //the searcher is disposed.
+        LOG.debug("Cache warm up stopped after searches ", searchCount);
+      }
+    }
+
+    /**
+     * Runs in the scheduler thread, which is shared by all the searches, so the search is sent from a worker.
+     */
+    private void next() {
+      //the searches of the user go first.
+      if (service.getInFlightCount() > 0) {
+        schedule(BUSY_DELAY);
+        return;
+      }
+      if (searchCount == requests.size()) {
+        LOG.debug("Cache warm up done, searches ", searchCount);
+        return;
+      }
+      CodeSearchRequest request = requests.get(searchCount++);
+      try {
+        service.getExecutor().execute(() -> search(request));
+      } catch (RejectedExecutionException e) {
+        //the workers are busy or disposed, the search is sent again later.
+        searchCount--;
+        schedule(BUSY_DELAY);
+      }
+    }
+
+    private void search(CodeSearchRequest request) {
+      CompletableFuture<CodeSearchResponse> response;
+      try {
+        response = service.getSearcher().search(request);
+      } catch (RuntimeException e) {
+        LOG.debug("Cache warm up search failed ", e.getMessage());
+        response = null;
+      }
+      if (response == null) {
+        schedule(SEARCH_INTERVAL);
+      } else {
+        response.whenComplete((value, e) -> schedule(SEARCH_INTERVAL));
+      }
+    }
+  }
+}
@@ -1,33 +1,46 @@
 package com.senthil.codesearch;
 
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.util.xmlb.annotations.AbstractCollection;
+import com.intellij.util.xmlb.annotations.Attribute;
+import com.intellij.util.xmlb.annotations.Tag;
 import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.SearcherFactory;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
 
 
 /**
- * Maintains a history of the code search requests.
+ * Maintains a history of the code search requests and of the patterns of the file search popup.
+ * The history is saved with the application settings and bounded, the least recently used searches are dropped.
+ * The queries and the patterns are completed from the history, the most used and recent first.
  */
-public class CodeSearchHistoryManager {
+@State(name = "CodeSearchHistory", storages = @Storage("codesearch.history.xml"))
+public class CodeSearchHistoryManager implements PersistentStateComponent<CodeSearchHistoryManager.HistoryState> {
 
     /**
-     * Singleton instance
+     * max no of searches kept in each history.
      */
-    private final static CodeSearchHistoryManager INSTANCE = new CodeSearchHistoryManager();
+    private static final int MAX_HISTORY_SIZE = Integer.getInteger("codesearch.history.size", 1000);
+    private static final char KEY_SEPARATOR = '\u0000';
 
     /**
-     * List of recent search requests
+     * recent search requests.
      */
-    private LinkedHashSet<CodeSearchRequest> recentQueries = new LinkedHashSet<>();
-
-    private CodeSearchHistoryManager() {
-
-    }
+    private final SearchHistory<CodeSearchRequest> recentQueries = new SearchHistory<>(MAX_HISTORY_SIZE);
+    /**
+     * patterns of the file search popup that found the file opened.
+     */
+    private final SearchHistory<String> recentFileNames = new SearchHistory<>(MAX_HISTORY_SIZE);
 
     public static CodeSearchHistoryManager getInstance() {
-        return INSTANCE;
+        return ServiceManager.getService(CodeSearchHistoryManager.class);
     }
 
     /**
@@ -36,15 +49,56 @@ public class CodeSearchHistoryManager {
      * @param request search request.
      */
     public void add(CodeSearchRequest request) {
-        recentQueries.remove(request);
-        recentQueries.add(request);
+        CodeSearchRequest copy = request.copy();
+        recentQueries.add(key(copy), text(copy.getQuery()), copy, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a pattern of the file search popup to history.
+     *
+     * @param pattern the text entered in the popup.
+     */
+    public void addFileName(String pattern) {
+        if (pattern != null && !pattern.trim().isEmpty()) {
+            recentFileNames.add(pattern, pattern, pattern, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param limit max no of queries returned.
+     * @return copies of the recent queries, the most recent first.
+     */
+    public List<CodeSearchRequest> getRecentQueries(int limit) {
+        return recentQueries.getRecent(limit).stream().map(CodeSearchRequest::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * @param limit max no of queries returned.
+     * @return copies of the most used and recent queries, the best ranked first.
+     */
+    public List<CodeSearchRequest> getFrequentQueries(int limit) {
+        return recentQueries.getBest(limit).stream().map(CodeSearchRequest::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * @return no of queries in the history.
+     */
+    public int getQueryCount() {
+        return recentQueries.size();
+    }
+
+    /**
+     * @return the queries of the history starting with the prefix, the most used and recent first.
+     */
+    public List<String> completeQuery(@NotNull String prefix, int limit) {
+        return recentQueries.complete(prefix, limit);
     }
 
     /**
-     * @return list of recent queries.
+     * @return the file search patterns of the history starting with the prefix, the most used and recent first.
      */
-    public Collection<CodeSearchRequest> getRecentQueries() {
-        return Collections.unmodifiableCollection(recentQueries);
+    public List<String> completeFileName(@NotNull String prefix, int limit) {
+        return recentFileNames.complete(prefix, limit);
     }
 
     /**
@@ -52,6 +106,105 @@ public class CodeSearchHistoryManager {
      */
     public void clear() {
         recentQueries.clear();
+        recentFileNames.clear();
     }
-}
 
+    @Override
+    public HistoryState getState() {
+        HistoryState state = new HistoryState();
+        for (SearchHistory.Entry<CodeSearchRequest> entry : recentQueries.getEntries()) {
+            HistoryItem item = item(entry);
+            CodeSearchRequest request = entry.getValue();
+            item.query = request.getQuery();
+            item.facet = request.getFacet();
+            item.fileName = request.getFileName();
+            item.filePath = request.getFilePath();
+            item.fileType = request.getFileType();
+            state.queries.add(item);
+        }
+        for (SearchHistory.Entry<String> entry : recentFileNames.getEntries()) {
+            HistoryItem item = item(entry);
+            item.fileName = entry.getValue();
+            state.fileNames.add(item);
+        }
+        return state;
+    }
+
+    @Override
+    public void loadState(HistoryState state) {
+        clear();
+        for (HistoryItem item : state.queries) {
+            CodeSearchRequest request = SearcherFactory.createRequest()
+                .setQuery(item.query)
+                .setFacet(item.facet)
+                .setFileName(item.fileName)
+                .setFilePath(item.filePath)
+                .setFileType(item.fileType);
+            recentQueries.restore(key(request), text(request.getQuery()), request, item.count, item.lastUsed,
+                item.score);
+        }
+        for (HistoryItem item : state.fileNames) {
+            if (item.fileName != null) {
+                recentFileNames.restore(item.fileName, item.fileName, item.fileName, item.count, item.lastUsed,
+                    item.score);
+            }
+        }
+    }
+
+    private static HistoryItem item(SearchHistory.Entry<?> entry) {
+        HistoryItem item = new HistoryItem();
+        item.count = entry.getCount();
+        item.lastUsed = entry.getLastUsed();
+        item.score = entry.getScore();
+        return item;
+    }
+
+    /**
+     * The requests are identified by their search parameters, the paging of the results is ignored.
+     */
+    private static String key(CodeSearchRequest request) {
+        return text(request.getQuery()) + KEY_SEPARATOR + text(request.getFacet()) + KEY_SEPARATOR
+            + text(request.getFileName()) + KEY_SEPARATOR + text(request.getFilePath()) + KEY_SEPARATOR
+            + text(request.getFileType());
+    }
+
+    private static String text(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Saved history, the least recently used searches first.
+     */
+    public static class HistoryState {
+        @Tag("queries")
+        @AbstractCollection(surroundWithTag = false)
+        public List<HistoryItem> queries = new ArrayList<>();
+
+        @Tag("fileNames")
+        @AbstractCollection(surroundWithTag = false)
+        public List<HistoryItem> fileNames = new ArrayList<>();
+    }
+
+    /**
+     * A saved search, with the parameters of the request or the pattern of the file search.
+     */
+    @Tag("search")
+    public static class HistoryItem {
+        @Attribute("query")
+        public String query;
+        @Attribute("facet")
+        public String facet;
+        @Attribute("fileName")
+        public String fileName;
+        @Attribute("filePath")
+        public String filePath;
+        @Attribute("fileType")
+        public String fileType;
+        @Attribute("count")
+        public int count;
+        @Attribute("lastUsed")
+        public long lastUsed;
+        @Attribute("score")
+        public double score;
+    }
+}
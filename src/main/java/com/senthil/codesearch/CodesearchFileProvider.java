@@ -9,10 +9,16 @@ import com.intellij.util.Processor;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.codesearch.net.CodeSearchRequest;
 import com.senthil.codesearch.net.SearcherFactory;
+import com.senthil.codesearch.net.SearcherService;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.jetbrains.annotations.NotNull;
@@ -28,13 +34,26 @@ public class CodesearchFileProvider implements ChooseByNameItemProvider {
   private static final String DELIMITER = " in ";
   //timeout for results future in ms.
   private static final long RESULTS_TIMEOUT = 100;
-  //the duration of the delay in ms.
-  private static final long REQUEST_DELAY = 500;
+  /**
+   * max no of patterns from the history offered for completion.
+   */
+  private static final int MAX_COMPLETIONS = 10;
+
+  /**
+   * searches of the popup, a provider is created per popup.
+   */
+  private final QueryPipeline pipeline =
+      new QueryPipeline(SearcherFactory.getSearcher(), SearcherService.getInstance().getScheduler());
+  /**
+   * results of the last search per facet and file type, refined locally while the user extends the pattern.
+   */
+  private final Map<String, LocalResults> lastResults = new ConcurrentHashMap<>();
 
   @NotNull
   @Override
   public List<String> filterNames(@NotNull ChooseByNameBase base, @NotNull String[] names, @NotNull String pattern) {
-    return Collections.emptyList();
+    //completes the pattern with the patterns that found the files opened before.
+    return CodeSearchHistoryManager.getInstance().completeFileName(pattern.trim(), MAX_COMPLETIONS);
   }
 
   @Override
@@ -63,8 +82,27 @@ public class CodesearchFileProvider implements ChooseByNameItemProvider {
       return false;
     }
 
-//    delaying the search because the user may still be typing.
-    ScheduledFuture<List<CodeSearchResult>> resultsFuture = SearcherFactory.getSearcher().getResults(request, REQUEST_DELAY);
+    String resultsKey = request.getFacet() + DELIMITER + request.getFileType();
+    LocalResults local = lastResults.get(resultsKey);
+    Set<String> shown = Collections.emptySet();
+    if (local != null && local.canRefine(request)) {
+      local = local.refine(request);
+      shown = new HashSet<>();
+      for (CodeSearchResult result : local.getResults()) {
+        shown.add(result.getExternalLink());
+        consumer.process(result);
+      }
+      if (local.isComplete()) {
+        LOG.debug("Refined locally: ", pattern);
+        lastResults.put(resultsKey, local);
+        pipeline.cancel();
+        return true;
+      }
+//      the server may have more matches than the results of the previous pattern, they are added after these.
+    }
+
+//    the search is delayed because the user may still be typing, and cancelled by the next pattern.
+    CompletableFuture<List<CodeSearchResult>> resultsFuture = pipeline.submit(request);
 
     List<CodeSearchResult> results;
     while (true) {
@@ -73,21 +111,36 @@ public class CodesearchFileProvider implements ChooseByNameItemProvider {
 //      Cancel the task if the user cancelled the operation.
         results = resultsFuture.get(RESULTS_TIMEOUT, TimeUnit.MILLISECONDS);
         break;
-      } catch (InterruptedException | ExecutionException | TimeoutException e) {
-        LOG.debug("Interrupted: " + pattern);
+      } catch (TimeoutException e) {
         if (cancelled.isCanceled()) {
           resultsFuture.cancel(true);
-          LOG.debug("Cancelled after interrupt: ", pattern);
+          LOG.debug("Cancelled while waiting: ", pattern);
           return false;
         }
+      } catch (CancellationException e) {
+        LOG.debug("Superseded by a new pattern: ", pattern);
+        return false;
+      } catch (ExecutionException e) {
+        LOG.debug("Error searching for ", pattern);
+        return false;
+      } catch (InterruptedException e) {
+        resultsFuture.cancel(true);
+        Thread.currentThread().interrupt();
+        return false;
       }
     }
+    LOG.debug("Popup searches ", pipeline);
 
     if (results == null) {
       return false;
     }
 
-    results.forEach(consumer::process);
+    lastResults.put(resultsKey, LocalResults.of(request, results));
+    for (CodeSearchResult result : results) {
+      if (!shown.contains(result.getExternalLink())) {
+        consumer.process(result);
+      }
+    }
     return true;
   }
 
@@ -0,0 +1,83 @@
+package com.senthil.codesearch;
+
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.net.CodeSearchRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Results of the last search of a popup, used to answer the next patterns typed without a search.
+ * A pattern extending the searched one matches a subset of its results, which are filtered locally by file name
+ * with a camel hump matcher. When the results filled the page there may be more matches on the server, and the
+ * results are only a partial answer.
+ *
+ * Immutable.
+ */
+final class LocalResults {
+
+  private final String pattern;
+  private final String facet;
+  private final String fileType;
+  private final List<CodeSearchResult> results;
+  /**
+   * true if the results are all the matches of the pattern.
+   */
+  private final boolean complete;
+
+  private LocalResults(String pattern, CodeSearchRequest request, List<CodeSearchResult> results,
+      boolean complete) {
+    this.pattern = pattern;
+    this.facet = request.getFacet();
+    this.fileType = request.getFileType();
+    this.results = Collections.unmodifiableList(results);
+    this.complete = complete;
+  }
+
+  /**
+   * @return the results of a search, complete if there were less results than a page.
+   */
+  static LocalResults of(@NotNull CodeSearchRequest request, @NotNull List<CodeSearchResult> results) {
+    return new LocalResults(request.getFileName(), request, new ArrayList<>(results),
+        results.size() < request.getPageSize());
+  }
+
+  /**
+   * @return true if the results of the request are a subset of these results, ignoring the ones not returned.
+   */
+  boolean canRefine(@NotNull CodeSearchRequest request) {
+    String newPattern = request.getFileName();
+    return pattern != null && newPattern != null && newPattern.regionMatches(true, 0, pattern, 0, pattern.length())
+        && Objects.equals(facet, request.getFacet()) && Objects.equals(fileType, request.getFileType());
+  }
+
+  /**
+   * @return the results whose file name matches the pattern of the request, complete if these results are.
+   */
+  @NotNull
+  LocalResults refine(@NotNull CodeSearchRequest request) {
+    MinusculeMatcher matcher =
+        NameUtil.buildMatcher("*" + request.getFileName(), NameUtil.MatchingCaseSensitivity.NONE);
+    List<CodeSearchResult> matches = new ArrayList<>();
+    for (CodeSearchResult result : results) {
+      if (result.getFileName() != null && matcher.matches(result.getFileName())) {
+        matches.add(result);
+      }
+    }
+    return new LocalResults(request.getFileName(), request, matches, complete);
+  }
+
+  @NotNull
+  List<CodeSearchResult> getResults() {
+    return results;
+  }
+
+  boolean isComplete() {
+    return complete;
+  }
+}
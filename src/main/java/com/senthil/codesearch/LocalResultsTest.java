@@ -0,0 +1,59 @@
+package com.senthil.codesearch;
+
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.SearcherFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LocalResultsTest {
+
+  private static CodeSearchRequest request(String pattern) {
+    return SearcherFactory.createRequest().setFileName(pattern);
+  }
+
+  private static List<CodeSearchResult> results(String... fileNames) {
+    List<CodeSearchResult> results = new ArrayList<>();
+    for (String fileName : fileNames) {
+      results.add(new CodeSearchResult().setFileName(fileName).setExternalLink("https://searchcode.com/" + fileName));
+    }
+    return results;
+  }
+
+  private static List<String> fileNames(LocalResults local) {
+    return local.getResults().stream().map(CodeSearchResult::getFileName).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testLongerPatternRefinesResults() {
+    LocalResults local = LocalResults.of(request("Rewr"), results("RewriteRule.java", "Rewrap.java", "Rewriter.java"));
+    CodeSearchRequest request = request("Rewri");
+
+    Assert.assertTrue(local.canRefine(request));
+    LocalResults refined = local.refine(request);
+    Assert.assertEquals(Arrays.asList("RewriteRule.java", "Rewriter.java"), fileNames(refined));
+    Assert.assertTrue(refined.isComplete());
+  }
+
+  @Test
+  public void testOtherPatternsAreNotRefined() {
+    LocalResults local = LocalResults.of(request("Rewr"), results("RewriteRule.java"));
+
+    Assert.assertFalse(local.canRefine(request("Rew")));
+    Assert.assertFalse(local.canRefine(request("Rule")));
+    Assert.assertFalse(local.canRefine(request("Rewri").setFacet("other")));
+  }
+
+  @Test
+  public void testFullPageIsPartial() {
+    LocalResults local = LocalResults.of(request("Rewr").setNumToReturn(2), results("RewriteRule.java", "Rewriter.java"));
+
+    Assert.assertFalse(local.isComplete());
+    Assert.assertFalse(local.refine(request("Rewri")).isComplete());
+  }
+}
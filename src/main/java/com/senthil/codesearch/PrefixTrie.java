@@ -0,0 +1,206 @@
+package com.senthil.codesearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Prefix tree of values keyed by a string, returning the best ranked values whose key starts with a prefix.
+ * Every node keeps the best ranked values of its subtree, so that a lookup only walks the prefix.
+ * The rank of a value may only improve while it is in the trie, its node is then told with {@link #update}.
+ *
+ * Not thread safe.
+ * @param <E> value type, compared by identity.
+ */
+final class PrefixTrie<E> {
+
+  private final int maxRanked;
+  private final Comparator<? super E> ranking;
+  private final Function<? super E, String> key;
+  private final Node<E> root = new Node<>();
+
+  /**
+   * @param maxRanked no of best ranked values kept by a node, the maximum no of values returned by a lookup.
+   * @param ranking orders the values, the best ranked first.
+   * @param key returns the key of a value, which must not change while the value is in the trie.
+   */
+  PrefixTrie(int maxRanked, @NotNull Comparator<? super E> ranking, @NotNull Function<? super E, String> key) {
+    this.maxRanked = maxRanked;
+    this.ranking = ranking;
+    this.key = key;
+  }
+
+  void add(@NotNull E value) {
+    String text = key.apply(value);
+    Node<E> node = root;
+    offer(node, value);
+    for (int i = 0; i < text.length(); i++) {
+      node = node.childOrCreate(text.charAt(i));
+      offer(node, value);
+    }
+    node.values.add(value);
+  }
+
+  /**
+   * Moves the value up in the nodes of its key, after its rank improved.
+   */
+  void update(@NotNull E value) {
+    String text = key.apply(value);
+    Node<E> node = root;
+    for (int i = 0; node != null; i++) {
+      node.ranked.remove(value);
+      offer(node, value);
+      node = i < text.length() ? node.child(text.charAt(i)) : null;
+    }
+  }
+
+  void remove(@NotNull E value) {
+    String text = key.apply(value);
+    List<Node<E>> path = new ArrayList<>(text.length() + 1);
+    Node<E> node = root;
+    for (int i = 0; node != null; i++) {
+      path.add(node);
+      node = i < text.length() ? node.child(text.charAt(i)) : null;
+    }
+    if (path.size() <= text.length() || !path.get(path.size() - 1).values.remove(value)) {
+      return;
+    }
+    //the children of a node are fixed before the node, its ranking is rebuilt from them.
+    for (int i = path.size() - 1; i >= 0; i--) {
+      node = path.get(i);
+      if (i > 0 && node.values.isEmpty() && node.childCount == 0) {
+        path.get(i - 1).removeChild(text.charAt(i - 1));
+        continue;
+      }
+      boolean full = node.ranked.size() == maxRanked;
+      if (node.ranked.remove(value) && full) {
+        rebuild(node);
+      }
+    }
+  }
+
+  /**
+   * @return the best ranked values whose key starts with the prefix, the best first.
+   */
+  @NotNull
+  List<E> find(@NotNull String prefix, int limit) {
+    Node<E> node = root;
+    for (int i = 0; i < prefix.length() && node != null; i++) {
+      node = node.child(prefix.charAt(i));
+    }
+    if (node == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(node.ranked.subList(0, Math.min(limit, node.ranked.size())));
+  }
+
+  void clear() {
+    root.values.clear();
+    root.ranked.clear();
+    root.labels = new char[0];
+    root.children = emptyChildren();
+    root.childCount = 0;
+  }
+
+  /**
+   * @return no of nodes, including the root.
+   */
+  int nodeCount() {
+    return nodeCount(root);
+  }
+
+  private static int nodeCount(Node<?> node) {
+    int count = 1;
+    for (int i = 0; i < node.childCount; i++) {
+      count += nodeCount(node.children[i]);
+    }
+    return count;
+  }
+
+  private void offer(Node<E> node, E value) {
+    List<E> ranked = node.ranked;
+    int index = Collections.binarySearch(ranked, value, ranking);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    if (index < maxRanked) {
+      ranked.add(index, value);
+      if (ranked.size() > maxRanked) {
+        ranked.remove(maxRanked);
+      }
+    }
+  }
+
+  private void rebuild(Node<E> node) {
+    List<E> candidates = new ArrayList<>(node.values);
+    for (int i = 0; i < node.childCount; i++) {
+      candidates.addAll(node.children[i].ranked);
+    }
+    candidates.sort(ranking);
+    node.ranked.clear();
+    node.ranked.addAll(candidates.subList(0, Math.min(maxRanked, candidates.size())));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> Node<E>[] emptyChildren() {
+    return new Node[0];
+  }
+
+  /**
+   * A node of the trie. The children are sorted by their label.
+   */
+  private static final class Node<E> {
+    private char[] labels = new char[0];
+    private Node<E>[] children = emptyChildren();
+    private int childCount;
+    /**
+     * values whose key ends at this node.
+     */
+    private final List<E> values = new ArrayList<>(1);
+    /**
+     * best ranked values of the subtree, the best first.
+     */
+    private final List<E> ranked = new ArrayList<>(1);
+
+    Node<E> child(char label) {
+      int index = Arrays.binarySearch(labels, 0, childCount, label);
+      return index < 0 ? null : children[index];
+    }
+
+    Node<E> childOrCreate(char label) {
+      int index = Arrays.binarySearch(labels, 0, childCount, label);
+      if (index >= 0) {
+        return children[index];
+      }
+      index = -index - 1;
+      if (childCount == labels.length) {
+        int capacity = Math.max(2, childCount * 2);
+        labels = Arrays.copyOf(labels, capacity);
+        children = Arrays.copyOf(children, capacity);
+      }
+      System.arraycopy(labels, index, labels, index + 1, childCount - index);
+      System.arraycopy(children, index, children, index + 1, childCount - index);
+      Node<E> child = new Node<>();
+      labels[index] = label;
+      children[index] = child;
+      childCount++;
+      return child;
+    }
+
+    void removeChild(char label) {
+      int index = Arrays.binarySearch(labels, 0, childCount, label);
+      if (index < 0) {
+        return;
+      }
+      System.arraycopy(labels, index + 1, labels, index, childCount - index - 1);
+      System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+      childCount--;
+      children[childCount] = null;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package com.senthil.codesearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PrefixTrieTest {
+
+  private static final Comparator<Item> RANKING = Comparator.comparingInt((Item item) -> -item.rank);
+
+  private static PrefixTrie<Item> newTrie(int maxRanked) {
+    return new PrefixTrie<>(maxRanked, RANKING, item -> item.key);
+  }
+
+  private static List<String> keys(List<Item> items) {
+    return items.stream().map(item -> item.key).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testFindReturnsBestRankedWithPrefix() {
+    PrefixTrie<Item> trie = newTrie(10);
+    trie.add(new Item("foo", 1));
+    trie.add(new Item("food", 3));
+    trie.add(new Item("fork", 2));
+    trie.add(new Item("bar", 5));
+
+    Assert.assertEquals(Arrays.asList("food", "fork", "foo"), keys(trie.find("f", 10)));
+    Assert.assertEquals(Arrays.asList("food", "foo"), keys(trie.find("foo", 10)));
+    Assert.assertEquals(Arrays.asList("bar", "food"), keys(trie.find("", 2)));
+    Assert.assertTrue(trie.find("x", 10).isEmpty());
+  }
+
+  @Test
+  public void testUpdateMovesValueUp() {
+    PrefixTrie<Item> trie = newTrie(2);
+    Item foo = new Item("foo", 1);
+    trie.add(foo);
+    trie.add(new Item("fob", 2));
+    trie.add(new Item("fox", 3));
+    Assert.assertEquals(Arrays.asList("fox", "fob"), keys(trie.find("fo", 10)));
+
+    foo.rank = 4;
+    trie.update(foo);
+    Assert.assertEquals(Arrays.asList("foo", "fox"), keys(trie.find("fo", 10)));
+    Assert.assertEquals(Arrays.asList("foo"), keys(trie.find("foo", 10)));
+  }
+
+  @Test
+  public void testRemovePrunesEmptyBranches() {
+    PrefixTrie<Item> trie = newTrie(10);
+    Item abc = new Item("abc", 1);
+    Item abd = new Item("abd", 2);
+    trie.add(abc);
+    trie.add(abd);
+    //root, a, ab, abc, abd
+    Assert.assertEquals(5, trie.nodeCount());
+
+    trie.remove(abd);
+    Assert.assertEquals(4, trie.nodeCount());
+    Assert.assertEquals(Arrays.asList("abc"), keys(trie.find("ab", 10)));
+    Assert.assertTrue(trie.find("abd", 10).isEmpty());
+
+    trie.remove(abc);
+    Assert.assertEquals(1, trie.nodeCount());
+    Assert.assertTrue(trie.find("", 10).isEmpty());
+  }
+
+  @Test
+  public void testRemoveKeepsPrefixWithValue() {
+    PrefixTrie<Item> trie = newTrie(10);
+    Item ab = new Item("ab", 1);
+    Item abc = new Item("abc", 2);
+    trie.add(ab);
+    trie.add(abc);
+
+    trie.remove(abc);
+    Assert.assertEquals(3, trie.nodeCount());
+    Assert.assertEquals(Arrays.asList("ab"), keys(trie.find("a", 10)));
+  }
+
+  @Test
+  public void testRemoveRefillsFullNodes() {
+    PrefixTrie<Item> trie = newTrie(2);
+    Item best = new Item("q1", 3);
+    trie.add(best);
+    trie.add(new Item("q2", 2));
+    trie.add(new Item("q3", 1));
+    Assert.assertEquals(Arrays.asList("q1", "q2"), keys(trie.find("q", 10)));
+
+    trie.remove(best);
+    Assert.assertEquals(Arrays.asList("q2", "q3"), keys(trie.find("q", 10)));
+  }
+
+  @Test
+  public void testMaxRankedCutoff() {
+    PrefixTrie<Item> trie = newTrie(3);
+    for (int i = 0; i < 10; i++) {
+      trie.add(new Item("k" + i, i));
+    }
+    Assert.assertEquals(Arrays.asList("k9", "k8", "k7"), keys(trie.find("k", 10)));
+    Assert.assertEquals(Arrays.asList("k9"), keys(trie.find("k", 1)));
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    Random random = new Random(42);
+    PrefixTrie<Item> trie = newTrie(5);
+    List<Item> items = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      Item item = new Item(randomKey(random), random.nextInt(1000));
+      items.add(item);
+      trie.add(item);
+      if (random.nextInt(4) == 0) {
+        Item removed = items.remove(random.nextInt(items.size()));
+        trie.remove(removed);
+      }
+      if (random.nextInt(4) == 0 && !items.isEmpty()) {
+        Item updated = items.get(random.nextInt(items.size()));
+        updated.rank += random.nextInt(100);
+        trie.update(updated);
+      }
+    }
+    for (int i = 0; i < 100; i++) {
+      String prefix = randomKey(random).substring(0, random.nextInt(3));
+      List<Item> expected = items.stream().filter(item -> item.key.startsWith(prefix)).sorted(RANKING).limit(5)
+          .collect(Collectors.toList());
+      List<Item> found = trie.find(prefix, 5);
+      Assert.assertEquals(prefix, ranks(expected), ranks(found));
+    }
+  }
+
+  private static String randomKey(Random random) {
+    StringBuilder key = new StringBuilder();
+    int length = 2 + random.nextInt(4);
+    for (int i = 0; i < length; i++) {
+      key.append((char) ('a' + random.nextInt(3)));
+    }
+    return key.toString();
+  }
+
+  /**
+   * items of the same rank may be in any order.
+   */
+  private static List<Integer> ranks(List<Item> items) {
+    return items.stream().map(item -> item.rank).collect(Collectors.toList());
+  }
+
+  private static final class Item {
+    private final String key;
+    private int rank;
+
+    Item(String key, int rank) {
+      this.key = key;
+      this.rank = rank;
+    }
+  }
+}
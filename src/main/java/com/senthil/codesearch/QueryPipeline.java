@@ -0,0 +1,150 @@
+package com.senthil.codesearch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.Searcher;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Runs the searches of a popup while the user is typing, so that only the latest pattern reaches the network.
+ * A search is sent once the user paused typing, and submitting a new search cancels the previous one, whether it
+ * is still waiting or already sent, which aborts its http request.
+ * The pause adapts to the typing speed of the user: it is twice the average time between the keystrokes.
+ *
+ * Thread safe, a popup searches from a background thread for every change of the pattern.
+ */
+class QueryPipeline {
+
+  private static final Logger LOG = Logger.getInstance(QueryPipeline.class);
+
+  /**
+   * bounds of the delay in ms before a search is sent.
+   */
+  private static final long MIN_DELAY = 150;
+  private static final long MAX_DELAY = 600;
+  /**
+   * keystrokes further apart than this are not counted as typing, in ms.
+   */
+  private static final long MAX_TYPING_INTERVAL = 1000;
+  /**
+   * weight of the last interval in the average.
+   */
+  private static final double INTERVAL_WEIGHT = 0.3;
+
+  private final Searcher searcher;
+  private final ScheduledExecutorService scheduler;
+
+  private Query current;
+  private long lastSubmitTime;
+  /**
+   * average time between the keystrokes in ms.
+   */
+  private double averageInterval = MAX_DELAY / 4;
+
+  private long submittedCount;
+  private long sentCount;
+
+  QueryPipeline(@NotNull Searcher searcher, @NotNull ScheduledExecutorService scheduler) {
+    this.searcher = searcher;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Schedules the search and cancels the previous one.
+   * @return future of the results, cancelled if another search is submitted before it completes.
+   */
+  synchronized CompletableFuture<List<CodeSearchResult>> submit(@NotNull CodeSearchRequest request) {
+    if (current != null) {
+      current.result.cancel(true);
+    }
+    long now = System.currentTimeMillis();
+    long interval = now - lastSubmitTime;
+    lastSubmitTime = now;
+    if (interval < MAX_TYPING_INTERVAL) {
+      averageInterval += (interval - averageInterval) * INTERVAL_WEIGHT;
+    }
+    submittedCount++;
+
+    Query query = new Query();
+    current = query;
+    long delay = Math.max(MIN_DELAY, Math.min(MAX_DELAY, (long) (averageInterval * 2)));
+    query.timer = scheduler.schedule(() -> send(query, request), delay, TimeUnit.MILLISECONDS);
+    //cancelling the result, by a new search or by the popup, cancels the timer or the request sent.
+    query.result.whenComplete((results, throwable) -> {
+      if (query.result.isCancelled()) {
+        query.cancel();
+      }
+    });
+    return query.result;
+  }
+
+  /**
+   * Cancels the current search, when the pattern is answered without a search.
+   */
+  synchronized void cancel() {
+    if (current != null) {
+      current.result.cancel(true);
+      current = null;
+    }
+  }
+
+  private void send(Query query, CodeSearchRequest request) {
+    synchronized (this) {
+      if (query.result.isDone()) {
+        return;
+      }
+      sentCount++;
+    }
+    LOG.debug("Sending popup search ", request);
+    CompletableFuture<List<CodeSearchResult>> results = searcher.getResults(request);
+    if (results == null) {
+      query.result.complete(null);
+      return;
+    }
+    query.request = results;
+    results.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        query.result.completeExceptionally(throwable);
+      } else {
+        query.result.complete(value);
+      }
+    });
+    //the result may have been cancelled before the request was set.
+    if (query.result.isCancelled()) {
+      results.cancel(true);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "QueryPipeline{" + "submitted=" + submittedCount + ", sent=" + sentCount + ", averageInterval="
+        + (long) averageInterval + '}';
+  }
+
+  /**
+   * A search of the pipeline, waiting for its delay or sent.
+   */
+  private static final class Query {
+    private final CompletableFuture<List<CodeSearchResult>> result = new CompletableFuture<>();
+    private volatile ScheduledFuture<?> timer;
+    private volatile CompletableFuture<List<CodeSearchResult>> request;
+
+    void cancel() {
+      ScheduledFuture<?> currentTimer = timer;
+      if (currentTimer != null) {
+        currentTimer.cancel(false);
+      }
+      CompletableFuture<List<CodeSearchResult>> currentRequest = request;
+      if (currentRequest != null) {
+        currentRequest.cancel(true);
+      }
+    }
+  }
+}
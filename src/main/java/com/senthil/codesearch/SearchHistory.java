@@ -0,0 +1,234 @@
+package com.senthil.codesearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Bounded history of searches, with the completions of a text ranked by recency and frequency.
+ * The rank of an entry is its frecency: every use adds a weight that doubles every {@link #HALF_LIFE}, which keeps
+ * the order of two entries stable over time. It is kept as a base 2 logarithm so that it does not overflow.
+ * When the history is full the least recently used entry is dropped.
+ *
+ * Thread safe.
+ * @param <T> the value recorded for a search.
+ */
+final class SearchHistory<T> {
+
+  /**
+   * time in ms after which the uses of a search weigh half as much as a new use.
+   */
+  static final long HALF_LIFE = 7 * 24 * 60 * 60 * 1000L;
+  /**
+   * no of completions kept by a node of the trie.
+   */
+  private static final int MAX_COMPLETIONS = 16;
+
+  private static final Comparator<Entry<?>> RANKING =
+      Comparator.<Entry<?>>comparingDouble(entry -> -entry.score).thenComparingLong(entry -> -entry.sequence);
+
+  private final int maxSize;
+  private final Map<String, Entry<T>> entries = new HashMap<>();
+  /**
+   * entries by the sequence no of their last use, the least recently used first.
+   */
+  private final TreeMap<Long, Entry<T>> recent = new TreeMap<>();
+  private final PrefixTrie<Entry<T>> completions = new PrefixTrie<>(MAX_COMPLETIONS, RANKING, entry -> entry.prefix);
+  private long sequence;
+
+  SearchHistory(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Records a use of a search.
+   * @param key identifies the search.
+   * @param text text completed for the search.
+   * @param value value returned for the search, replaces the previous value.
+   * @param time time of the use in ms.
+   */
+  synchronized void add(@NotNull String key, @NotNull String text, @NotNull T value, long time) {
+    Entry<T> entry = entries.get(key);
+    if (entry == null) {
+      put(new Entry<>(key, text, value, 1, time, weight(time)));
+      return;
+    }
+    recent.remove(entry.sequence);
+    entry.sequence = ++sequence;
+    recent.put(entry.sequence, entry);
+    entry.value = value;
+    entry.count++;
+    entry.lastUsed = Math.max(entry.lastUsed, time);
+    entry.score = addWeights(entry.score, weight(time));
+    completions.update(entry);
+  }
+
+  /**
+   * Restores an entry saved with {@link #getEntries()}, the entries are restored from the least recently used.
+   */
+  synchronized void restore(@NotNull String key, @NotNull String text, @NotNull T value, int count, long lastUsed,
+      double score) {
+    Entry<T> previous = entries.get(key);
+    if (previous != null) {
+      remove(previous);
+    }
+    put(new Entry<>(key, text, value, Math.max(1, count), lastUsed, score));
+  }
+
+  /**
+   * @return the values of the most recent searches, the most recent first.
+   */
+  @NotNull
+  synchronized List<T> getRecent(int limit) {
+    List<T> values = new ArrayList<>(Math.min(limit, recent.size()));
+    for (Entry<T> entry : recent.descendingMap().values()) {
+      if (values.size() == limit) {
+        break;
+      }
+      values.add(entry.value);
+    }
+    return values;
+  }
+
+  /**
+   * Unlike the completions, which are limited to the no kept by the trie, all the entries are ranked.
+   * @return the values of the best ranked searches, the best first.
+   */
+  @NotNull
+  synchronized List<T> getBest(int limit) {
+    List<Entry<T>> ranked = new ArrayList<>(entries.values());
+    ranked.sort(RANKING);
+    List<T> values = new ArrayList<>(Math.min(limit, ranked.size()));
+    for (Entry<T> entry : ranked.subList(0, Math.min(limit, ranked.size()))) {
+      values.add(entry.value);
+    }
+    return values;
+  }
+
+  /**
+   * @return the texts starting with the prefix, ignoring case, the best ranked first.
+   */
+  @NotNull
+  synchronized List<String> complete(@NotNull String prefix, int limit) {
+    Set<String> texts = new LinkedHashSet<>();
+    for (Entry<T> entry : completions.find(prefix.toLowerCase(), MAX_COMPLETIONS)) {
+      texts.add(entry.text);
+      if (texts.size() == limit) {
+        break;
+      }
+    }
+    return new ArrayList<>(texts);
+  }
+
+  /**
+   * @return the entries, the least recently used first.
+   */
+  @NotNull
+  synchronized List<Entry<T>> getEntries() {
+    List<Entry<T>> copies = new ArrayList<>(recent.size());
+    for (Entry<T> entry : recent.values()) {
+      copies.add(new Entry<>(entry.key, entry.text, entry.value, entry.count, entry.lastUsed, entry.score));
+    }
+    return Collections.unmodifiableList(copies);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    recent.clear();
+    completions.clear();
+  }
+
+  private void put(Entry<T> entry) {
+    entry.sequence = ++sequence;
+    entries.put(entry.key, entry);
+    recent.put(entry.sequence, entry);
+    completions.add(entry);
+    while (entries.size() > maxSize) {
+      remove(recent.firstEntry().getValue());
+    }
+  }
+
+  private void remove(Entry<T> entry) {
+    entries.remove(entry.key);
+    recent.remove(entry.sequence);
+    completions.remove(entry);
+  }
+
+  /**
+   * @return the base 2 logarithm of the weight of a use at the time.
+   */
+  static double weight(long time) {
+    return (double) time / HALF_LIFE;
+  }
+
+  /**
+   * @return the logarithm of the sum of two weights given by their logarithm.
+   */
+  static double addWeights(double a, double b) {
+    double max = Math.max(a, b);
+    return max + Math.log1p(Math.pow(2, -Math.abs(a - b))) / Math.log(2);
+  }
+
+  /**
+   * A search of the history.
+   */
+  static final class Entry<T> {
+    private final String key;
+    private final String text;
+    /**
+     * the text in lower case, indexed by the trie.
+     */
+    private final String prefix;
+    private T value;
+    private int count;
+    private long lastUsed;
+    private double score;
+    private long sequence;
+
+    Entry(String key, String text, T value, int count, long lastUsed, double score) {
+      this.key = key;
+      this.text = text;
+      this.prefix = text.toLowerCase();
+      this.value = value;
+      this.count = count;
+      this.lastUsed = lastUsed;
+      this.score = score;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    String getText() {
+      return text;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    long getLastUsed() {
+      return lastUsed;
+    }
+
+    double getScore() {
+      return score;
+    }
+  }
+}
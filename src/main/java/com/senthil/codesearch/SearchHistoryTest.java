@@ -0,0 +1,136 @@
+package com.senthil.codesearch;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class SearchHistoryTest {
+
+  private static final long NOW = 1_500_000_000_000L;
+
+  private static void add(SearchHistory<String> history, String text, long time) {
+    history.add(text, text, text, time);
+  }
+
+  @Test
+  public void testCompleteOrdersByFrequency() {
+    SearchHistory<String> history = new SearchHistory<>(10);
+    add(history, "foo", NOW);
+    add(history, "fork", NOW);
+    add(history, "fork", NOW);
+    add(history, "fold", NOW);
+    add(history, "fold", NOW);
+    add(history, "fold", NOW);
+    add(history, "bar", NOW);
+
+    Assert.assertEquals(Arrays.asList("fold", "fork", "foo"), history.complete("fo", 10));
+    Assert.assertEquals(Arrays.asList("fold", "fork"), history.complete("fo", 2));
+    Assert.assertEquals(Arrays.asList("bar"), history.complete("b", 10));
+  }
+
+  @Test
+  public void testCompleteOrdersByRecency() {
+    SearchHistory<String> history = new SearchHistory<>(10);
+    add(history, "old", NOW);
+    add(history, "old", NOW);
+    add(history, "old", NOW);
+    //two half lives later a single use weighs four times as much as an old use.
+    add(history, "older", NOW + 2 * SearchHistory.HALF_LIFE);
+    Assert.assertEquals(Arrays.asList("older", "old"), history.complete("old", 10));
+
+    //with the same score, the most recently used comes first.
+    add(history, "a1", NOW);
+    add(history, "a2", NOW);
+    Assert.assertEquals(Arrays.asList("a2", "a1"), history.complete("a", 10));
+  }
+
+  @Test
+  public void testCompleteIgnoresCase() {
+    SearchHistory<String> history = new SearchHistory<>(10);
+    history.add("key", "FooBar", "value", NOW);
+    Assert.assertEquals(Arrays.asList("FooBar"), history.complete("foob", 10));
+    Assert.assertEquals(Arrays.asList("FooBar"), history.complete("FOO", 10));
+  }
+
+  @Test
+  public void testCompleteReturnsDistinctTexts() {
+    SearchHistory<String> history = new SearchHistory<>(10);
+    //the same text searched in two facets.
+    history.add("facet1:foo", "foo", "1", NOW);
+    history.add("facet2:foo", "foo", "2", NOW);
+    Assert.assertEquals(Arrays.asList("foo"), history.complete("f", 10));
+    Assert.assertEquals(2, history.size());
+  }
+
+  @Test
+  public void testDropsLeastRecentlyUsed() {
+    SearchHistory<String> history = new SearchHistory<>(2);
+    add(history, "a", NOW);
+    add(history, "b", NOW);
+    add(history, "a", NOW);
+    add(history, "c", NOW);
+
+    Assert.assertEquals(2, history.size());
+    Assert.assertEquals(Arrays.asList("c", "a"), history.getRecent(10));
+    Assert.assertTrue(history.complete("b", 10).isEmpty());
+  }
+
+  @Test
+  public void testRestoreRebuildsCompletions() {
+    SearchHistory<String> history = new SearchHistory<>(10);
+    add(history, "foo", NOW);
+    add(history, "fork", NOW);
+    add(history, "fork", NOW);
+    add(history, "fold", NOW + SearchHistory.HALF_LIFE);
+    add(history, "foo", NOW);
+
+    SearchHistory<String> restored = new SearchHistory<>(10);
+    for (SearchHistory.Entry<String> entry : history.getEntries()) {
+      restored.restore(entry.getKey(), entry.getText(), entry.getValue(), entry.getCount(), entry.getLastUsed(),
+          entry.getScore());
+    }
+
+    Assert.assertEquals(history.complete("fo", 10), restored.complete("fo", 10));
+    Assert.assertEquals(history.getRecent(10), restored.getRecent(10));
+    Assert.assertEquals(Arrays.asList("foo", "fold", "fork"), restored.getRecent(10));
+
+    //a restored entry keeps its score when it is used again.
+    add(restored, "foo", NOW);
+    Assert.assertEquals(Arrays.asList("foo", "fold", "fork"), restored.complete("fo", 10));
+  }
+
+  @Test
+  public void testMaxCompletionsCutoff() {
+    SearchHistory<String> history = new SearchHistory<>(100);
+    for (int i = 0; i < 20; i++) {
+      add(history, "q" + i, NOW);
+    }
+    List<String> completions = history.complete("q", 100);
+    Assert.assertEquals(16, completions.size());
+    //the most recent first, as the scores are the same.
+    Assert.assertEquals("q19", completions.get(0));
+    Assert.assertEquals("q4", completions.get(15));
+  }
+
+  @Test
+  public void testGetBestIsNotLimitedByCompletions() {
+    SearchHistory<String> history = new SearchHistory<>(100);
+    for (int i = 0; i < 20; i++) {
+      add(history, "q" + i, NOW + i * SearchHistory.HALF_LIFE);
+    }
+    List<String> best = history.getBest(30);
+    Assert.assertEquals(20, best.size());
+    Assert.assertEquals("q19", best.get(0));
+    Assert.assertEquals("q0", best.get(19));
+    Assert.assertEquals(Arrays.asList("q19", "q18"), history.getBest(2));
+  }
+
+  @Test
+  public void testAddWeights() {
+    Assert.assertEquals(1.0, SearchHistory.addWeights(0, 0), 1e-9);
+    Assert.assertEquals(Math.log(3) / Math.log(2), SearchHistory.addWeights(1, 0), 1e-9);
+    Assert.assertEquals(SearchHistory.weight(NOW) + 1, SearchHistory.weight(NOW + SearchHistory.HALF_LIFE), 1e-9);
+  }
+}
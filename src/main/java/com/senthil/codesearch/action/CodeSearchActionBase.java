@@ -18,14 +18,13 @@ import com.intellij.psi.PsiPlainText;
 import com.intellij.psi.PsiPlainTextFile;
 import com.intellij.refactoring.actions.BaseRefactoringAction;
 import com.intellij.util.ui.SwingHelper;
-import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
 import com.senthil.codesearch.net.CodeSearchRequest;
 import com.senthil.codesearch.net.SearcherFactory;
 import com.senthil.ui.StudioIcons;
 import com.senthil.ui.search.CodesearchPanel;
 import com.senthil.utils.CodeSearchUtils;
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import org.jetbrains.annotations.NotNull;
@@ -209,24 +208,22 @@ abstract class CodeSearchActionBase extends AnAction {
             @Override
             public void run(@NotNull ProgressIndicator indicator) {
                 try {
-                    List<CodeSearchFacet> facets = SearcherFactory.getSearcher().getFacets(request).get();
+                    //facets and the first page of results are retrieved in a single request.
+                    CodeSearchResponse response = SearcherFactory.getSearcher().search(request).get();
                     if (indicator.isCanceled()) {
                         LOG.debug("User cancelled search.", request);
                         return;
                     }
                     //We need the application thread to access UI elements.
+                    ApplicationManager.getApplication().invokeLater(() -> panel.updateSearchResponse(response, request),
+                        ModalityState.NON_MODAL);
+                } catch (InterruptedException | ExecutionException e) {
+                    LOG.debug("Search failed ", request);
                     ApplicationManager.getApplication().invokeLater(() -> {
-                        if (facets == null) {
-                            panel.displayError();
-                            //Alert the user with a error message
-                            CodeSearchUtils.displayErrorMessage(panel.getProject());
-                        } else {
-                            panel.updateFacets(facets, request);
-                        }
+                        panel.displayError();
+                        //Alert the user with a error message
+                        CodeSearchUtils.displayErrorMessage(panel.getProject(), e);
                     }, ModalityState.NON_MODAL);
-                } catch (InterruptedException | ExecutionException e) {
-                    LOG.debug("Search interrupted", request);
-                    CodeSearchUtils.displayErrorMessage(panel.getProject());
                 }
             }
         };
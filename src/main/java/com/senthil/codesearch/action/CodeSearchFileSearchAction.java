@@ -8,6 +8,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
+import com.senthil.codesearch.CodeSearchHistoryManager;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.messages.Messages;
 import com.senthil.codesearch.CodesearchFileProvider;
@@ -57,6 +58,7 @@ public class CodeSearchFileSearchAction extends GotoActionBase implements DumbAw
     @Override
     public void elementChosen(final ChooseByNamePopup popup, final Object element) {
       if (element instanceof CodeSearchResult) {
+        CodeSearchHistoryManager.getInstance().addFileName(popup.getEnteredText());
         CodeSearchUtils.openAndHighlightFile(project, (CodeSearchResult) element);
       }
     }
@@ -0,0 +1,61 @@
+package com.senthil.codesearch.cache;
+
+/**
+ * Snapshot of the counters of a cache.
+ */
+public class CacheStats {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  /**
+   * no of entries in the cache.
+   */
+  private final int size;
+  /**
+   * total weight of the entries in the cache.
+   */
+  private final long weight;
+
+  public CacheStats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+    this.weight = weight;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return ratio of the lookups served from the cache.
+   */
+  public double getHitRate() {
+    long lookups = hitCount + missCount;
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{" + "hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+        + ", size=" + size + ", weight=" + weight + '}';
+  }
+}
@@ -0,0 +1,327 @@
+package com.senthil.codesearch.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchHighlights;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.ForwardingSearcher;
+import com.senthil.codesearch.net.Futures;
+import com.senthil.codesearch.net.SearchRefreshListener;
+import com.senthil.codesearch.net.Searcher;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Searcher that keeps the recent facets and results in a bounded in-memory cache.
+ * Switching back to a facet that was already displayed is served from the cache instead of the network.
+ * An optional disk cache is used as the second tier, so that searches after an IDE restart are served locally.
+ * The memory cache is checked in the calling thread, the disk cache in the background.
+ *
+ * Cached responses are served stale-while-revalidate: a response older than the freshness period is returned
+ * right away and refreshed in the background. If the fresh response differs, the refresh listener is notified.
+ * A response older than the time to live (the max staleness) is not served at all.
+ */
+public class CachingSearcher extends ForwardingSearcher {
+
+  private static final Logger LOG = Logger.getInstance(CachingSearcher.class);
+
+  /**
+   * Every kind of response is stored as a CodeSearchResponse, so that all of them share the same weight limit.
+   * The weight of an entry is the number of facets and results in it.
+   */
+  private final WeightedLruCache<SearchCacheKey, CodeSearchResponse> cache;
+  /**
+   * second tier, null if the responses are cached only in memory.
+   */
+  private final PersistentSearchCache persistentCache;
+  /**
+   * keys being revalidated, so that a stale entry is refreshed only once at a time.
+   */
+  private final Set<SearchCacheKey> revalidating = ConcurrentHashMap.newKeySet();
+  /**
+   * time in milliseconds for which a cached response is served without revalidation.
+   */
+  private volatile long freshFor = Long.MAX_VALUE;
+  private volatile SearchRefreshListener refreshListener;
+
+  /**
+   * @param delegate searcher used on a cache miss.
+   * @param scheduler executor for delayed searches.
+   * @param maxWeight maximum number of facets and results kept in the cache.
+   * @param timeToLive time in milliseconds after which a cached response expires.
+   */
+  public CachingSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler, long maxWeight,
+      long timeToLive) {
+    this(delegate, scheduler, maxWeight, timeToLive, null);
+  }
+
+  /**
+   * @param delegate searcher used on a cache miss.
+   * @param scheduler executor for delayed searches.
+   * @param maxWeight maximum number of facets and results kept in the cache.
+   * @param timeToLive time in milliseconds after which a cached response expires.
+   * @param persistentCache disk cache checked when the response is not in memory.
+   */
+  public CachingSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler, long maxWeight,
+      long timeToLive, @Nullable PersistentSearchCache persistentCache) {
+    super(delegate, scheduler);
+    cache = new WeightedLruCache<>(maxWeight, timeToLive,
+        response -> response.getFacets().size() + response.getResults().size());
+    this.persistentCache = persistentCache;
+  }
+
+  /**
+   * Enables stale-while-revalidate. Responses read from the disk cache are always revalidated.
+   * @param freshFor time in milliseconds for which a cached response is served without revalidation.
+   * @return this searcher.
+   */
+  public CachingSearcher setFreshFor(long freshFor) {
+    this.freshFor = freshFor;
+    return this;
+  }
+
+  /**
+   * @param refreshListener notified when a revalidated response differs from the cached response.
+   * @return this searcher.
+   */
+  public CachingSearcher setRefreshListener(@Nullable SearchRefreshListener refreshListener) {
+    this.refreshListener = refreshListener;
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchFacet>> getFacets(@NotNull CodeSearchRequest request) {
+    SearchCacheKey key = SearchCacheKey.of(SearchCacheKey.Kind.FACETS, request);
+    return get(key, CodeSearchResponse::getFacets,
+        cached -> revalidate(key, cached.getFacets(), () -> loadFacets(key, request), CachingSearcher::sameFacets,
+            facets -> notifyListener(listener -> listener.facetsRefreshed(request, facets))),
+        () -> loadFacets(key, request));
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request) {
+    SearchCacheKey key = SearchCacheKey.of(SearchCacheKey.Kind.RESULTS, request);
+    return get(key, CodeSearchResponse::getResults, cached -> revalidateResults(key, request, cached),
+        () -> loadResults(key, request));
+  }
+
+  /**
+   * Cached results are handed to the consumer in a single batch.
+   */
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    SearchCacheKey key = SearchCacheKey.of(SearchCacheKey.Kind.RESULTS, request);
+    return get(key, cached -> {
+      batchConsumer.accept(cached.getResults());
+      return cached.getResults();
+    }, cached -> revalidateResults(key, request, cached),
+        () -> load(key, getDelegate().streamResults(request, batchConsumer),
+            results -> new CodeSearchResponse(Collections.emptyList(), results, request.getFacet())));
+  }
+
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    SearchCacheKey key = SearchCacheKey.of(SearchCacheKey.Kind.SEARCH, request);
+    return get(key, Function.identity(), cached -> revalidate(key, cached, () -> loadSearch(key, request),
+        (a, b) -> sameFacets(a.getFacets(), b.getFacets()) && sameResults(a.getResults(), b.getResults()),
+        response -> notifyListener(listener -> listener.searchRefreshed(request, response))),
+        () -> loadSearch(key, request));
+  }
+
+  /**
+   * Clears all the responses cached in memory.
+   */
+  public void invalidateAll() {
+    cache.clear();
+  }
+
+  @NotNull
+  public CacheStats getStats() {
+    return cache.getStats();
+  }
+
+  /**
+   * @return counters of the disk cache, null if the responses are not persisted.
+   */
+  @Nullable
+  public CacheStats getPersistentStats() {
+    return persistentCache == null ? null : persistentCache.getStats();
+  }
+
+  private CompletableFuture<List<CodeSearchFacet>> loadFacets(SearchCacheKey key, CodeSearchRequest request) {
+    return load(key, getDelegate().getFacets(request),
+        facets -> new CodeSearchResponse(facets, Collections.emptyList(), request.getFacet()));
+  }
+
+  private CompletableFuture<List<CodeSearchResult>> loadResults(SearchCacheKey key, CodeSearchRequest request) {
+    return load(key, getDelegate().getResults(request),
+        results -> new CodeSearchResponse(Collections.emptyList(), results, request.getFacet()));
+  }
+
+  private void revalidateResults(SearchCacheKey key, CodeSearchRequest request, CodeSearchResponse cached) {
+    revalidate(key, cached.getResults(), () -> loadResults(key, request), CachingSearcher::sameResults,
+        results -> notifyListener(listener -> listener.resultsRefreshed(request, results)));
+  }
+
+  private CompletableFuture<CodeSearchResponse> loadSearch(SearchCacheKey key, CodeSearchRequest request) {
+    CompletableFuture<CodeSearchResponse> future = load(key, getDelegate().search(request), Function.identity());
+    return future == null ? null : Futures.propagateCancellation(future.thenApply(response -> {
+      //the results of a search are the same as the results of a getResults call with the same request.
+      if (response != null) {
+        store(SearchCacheKey.of(SearchCacheKey.Kind.RESULTS, request),
+            new CodeSearchResponse(Collections.emptyList(), response.getResults(), response.getFacetId()));
+      }
+      return response;
+    }), future);
+  }
+
+  /**
+   * Serves the response from the memory cache, falling back to the disk cache and then to the delegate.
+   * @param key cache key.
+   * @param fromCache converts the cached response into the value.
+   * @param revalidate reloads a stale cached response in the background.
+   * @param load loads and caches the value on a cache miss.
+   */
+  private <T> CompletableFuture<T> get(SearchCacheKey key, Function<CodeSearchResponse, T> fromCache,
+      Consumer<CodeSearchResponse> revalidate, Supplier<CompletableFuture<T>> load) {
+    CodeSearchResponse response = cache.get(key);
+    if (response != null) {
+      if (cache.getAge(key) > freshFor) {
+        revalidate.accept(response);
+      }
+      return CompletableFuture.completedFuture(fromCache.apply(response));
+    }
+    if (persistentCache == null) {
+      return load.get();
+    }
+    return Futures.compose(persistentCache.getAsync(key), persisted -> {
+      if (persisted == null) {
+        return load.get();
+      }
+      cache.put(key, persisted);
+      //the age of the entry is not known after a restart.
+      if (freshFor != Long.MAX_VALUE) {
+        revalidate.accept(persisted);
+      }
+      return CompletableFuture.completedFuture(fromCache.apply(persisted));
+    });
+  }
+
+  private void store(SearchCacheKey key, CodeSearchResponse response) {
+    cache.put(key, response);
+    if (persistentCache != null) {
+      persistentCache.put(key, response);
+    }
+  }
+
+  /**
+   * Caches the value returned by the delegate once it is available.
+   * @param key cache key.
+   * @param delegateFuture future returned by the delegate.
+   * @param toCache converts the value into the cached representation.
+   */
+  private <T> CompletableFuture<T> load(SearchCacheKey key, CompletableFuture<T> delegateFuture,
+      Function<T, CodeSearchResponse> toCache) {
+    if (delegateFuture == null) {
+      return null;
+    }
+    return Futures.propagateCancellation(delegateFuture.thenApply(value -> {
+      //failed requests are not cached.
+      if (value != null) {
+        store(key, toCache.apply(value));
+      }
+      return value;
+    }), delegateFuture);
+  }
+
+  /**
+   * Reloads a stale entry in the background.
+   * @param key cache key.
+   * @param cached the value served from the cache.
+   * @param reload loads and caches the fresh value.
+   * @param same checks if the fresh value is the same as the cached value.
+   * @param onChange called with the fresh value if it differs.
+   */
+  private <T> void revalidate(SearchCacheKey key, T cached, Supplier<CompletableFuture<T>> reload,
+      BiPredicate<T, T> same, Consumer<T> onChange) {
+    if (!revalidating.add(key)) {
+      return;
+    }
+    LOG.debug("Revalidating stale response ", key);
+    CompletableFuture<T> future;
+    try {
+      future = reload.get();
+    } catch (RuntimeException e) {
+      revalidating.remove(key);
+      throw e;
+    }
+    if (future == null) {
+      revalidating.remove(key);
+      return;
+    }
+    future.whenComplete((fresh, e) -> {
+      revalidating.remove(key);
+      if (fresh != null && !same.test(cached, fresh)) {
+        onChange.accept(fresh);
+      }
+    });
+  }
+
+  private void notifyListener(Consumer<SearchRefreshListener> notification) {
+    SearchRefreshListener listener = refreshListener;
+    if (listener != null) {
+      notification.accept(listener);
+    }
+  }
+
+  private static boolean sameFacets(List<CodeSearchFacet> cached, List<CodeSearchFacet> fresh) {
+    if (cached.size() != fresh.size()) {
+      return false;
+    }
+    for (int i = 0; i < cached.size(); i++) {
+      CodeSearchFacet a = cached.get(i);
+      CodeSearchFacet b = fresh.get(i);
+      if (!Objects.equals(a.getId(), b.getId()) || a.getMatchCount() != b.getMatchCount()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameResults(List<CodeSearchResult> cached, List<CodeSearchResult> fresh) {
+    if (cached.size() != fresh.size()) {
+      return false;
+    }
+    for (int i = 0; i < cached.size(); i++) {
+      CodeSearchResult a = cached.get(i);
+      CodeSearchResult b = fresh.get(i);
+      if (!Objects.equals(a.getExternalLink(), b.getExternalLink()) || !sameLines(a.getHighlights(),
+          b.getHighlights())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameLines(CodeSearchHighlights cached, CodeSearchHighlights fresh) {
+    if (cached == null || fresh == null) {
+      return cached == fresh;
+    }
+    return cached.sameLines(fresh);
+  }
+}
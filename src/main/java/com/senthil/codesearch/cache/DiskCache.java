@@ -0,0 +1,628 @@
+package com.senthil.codesearch.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Persistent key value cache that survives IDE restarts.
+ *
+ * The values are appended to segment files. A segment is memory mapped for reading once it is full.
+ * Each record is laid out as [magic][key length][value length][write time][key bytes][value bytes].
+ * A removed key is recorded as a tombstone, a record with a value length of -1 and no value bytes.
+ * The index (key -> record location) is kept in memory and rebuilt by scanning the segments when the cache is opened.
+ * When the segments grow beyond the size budget, the most recently used live entries are copied to a new segment,
+ * which then replaces the old segments. The copy is done without holding the lock, the entries written or removed
+ * meanwhile go to a later segment and win over the copied ones.
+ * A compacted segment starts with a marker record holding the length of the copied records, written once the copy
+ * is complete. The segments before a complete compacted segment are ignored when the cache is opened, as a mapped
+ * segment can not be deleted on some platforms until its buffer is released.
+ */
+public class DiskCache implements Closeable {
+
+  private static final Logger LOG = Logger.getInstance(DiskCache.class);
+
+  private static final int RECORD_MAGIC = 0xC5CAC4E1;
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+  /**
+   * value length of a tombstone record.
+   */
+  private static final int TOMBSTONE = -1;
+  /**
+   * value length of the marker record heading a compacted segment. Its write time holds the length of the copied
+   * records, -1 until the copy is complete.
+   */
+  private static final int COMPACTED = -2;
+  /**
+   * Compaction keeps the live entries up to this fraction of the size budget, so that it does not run on every write.
+   */
+  private static final double COMPACTION_TARGET_RATIO = 0.75;
+
+  private final File directory;
+  private final long maxBytes;
+  private final int segmentSize;
+  private final long timeToLive;
+  private final LongSupplier clock;
+
+  private final Map<String, Location> index = new HashMap<>();
+  private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private Segment activeSegment;
+  private int nextSegmentId;
+  /**
+   * files of the segments replaced by a compaction that could not be deleted yet.
+   */
+  private final List<File> retiredFiles = new ArrayList<>();
+  /**
+   * total size of all the segments, including overwritten and expired records.
+   */
+  private long totalBytes;
+  /**
+   * true while the live entries are copied by a compaction.
+   */
+  private boolean compacting;
+  private boolean closed;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Opens the cache in the directory, creating the directory if required.
+   * @param directory directory holding the segment files.
+   * @param maxBytes size budget for the segments.
+   * @param segmentSize maximum size of a segment file.
+   * @param timeToLive time in milliseconds after which an entry expires.
+   * @throws IOException if the directory could not be read or written.
+   */
+  public DiskCache(@NotNull File directory, long maxBytes, int segmentSize, long timeToLive) throws IOException {
+    this(directory, maxBytes, segmentSize, timeToLive, System::currentTimeMillis);
+  }
+
+  DiskCache(@NotNull File directory, long maxBytes, int segmentSize, long timeToLive, @NotNull LongSupplier clock)
+      throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.segmentSize = segmentSize;
+    this.timeToLive = timeToLive;
+    this.clock = clock;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + directory);
+    }
+    load();
+  }
+
+  /**
+   * @param key cache key
+   * @return the cached value or null if not present or expired.
+   */
+  @Nullable
+  public synchronized byte[] get(@NotNull String key) {
+    Location location = index.get(key);
+    if (location != null && isExpired(location.writtenAt)) {
+      index.remove(key);
+      location = null;
+    }
+    if (location == null) {
+      missCount++;
+      return null;
+    }
+    try {
+      byte[] value = new byte[location.valueLength];
+      segments.get(location.segmentId)
+          .read(location.offset + HEADER_SIZE + location.keyLength, ByteBuffer.wrap(value));
+      location.lastAccess = clock.getAsLong();
+      hitCount++;
+      return value;
+    } catch (IOException e) {
+      LOG.warn("Error reading codesearch cache entry", e);
+      index.remove(key);
+      missCount++;
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the key has a value that is not expired, without reading it.
+   */
+  public synchronized boolean contains(@NotNull String key) {
+    Location location = index.get(key);
+    return location != null && !isExpired(location.writtenAt);
+  }
+
+  /**
+   * Appends the value to the cache. An older value for the key is left in its segment until the next compaction.
+   */
+  public void put(@NotNull String key, @NotNull byte[] value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int recordLength = HEADER_SIZE + keyBytes.length + value.length;
+    if (recordLength > segmentSize) {
+      return;
+    }
+    Compaction compaction;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      long now = clock.getAsLong();
+      ByteBuffer record = ByteBuffer.allocate(recordLength);
+      record.putInt(RECORD_MAGIC).putInt(keyBytes.length).putInt(value.length).putLong(now).put(keyBytes).put(value);
+      record.flip();
+      try {
+        Location location = append(record, keyBytes.length, value.length, now);
+        index.put(key, location);
+      } catch (IOException e) {
+        LOG.warn("Error writing codesearch cache entry", e);
+        return;
+      }
+      if (totalBytes <= maxBytes || compacting) {
+        return;
+      }
+      compaction = startCompaction();
+    }
+    if (compaction != null) {
+      compact(compaction);
+    }
+  }
+
+  /**
+   * Removes the key and appends a tombstone, so that the key stays removed after the cache is opened again.
+   */
+  public synchronized void remove(@NotNull String key) {
+    if (closed || index.remove(key) == null) {
+      return;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+    record.putInt(RECORD_MAGIC).putInt(keyBytes.length).putInt(TOMBSTONE).putLong(clock.getAsLong()).put(keyBytes);
+    record.flip();
+    try {
+      append(record, keyBytes.length, TOMBSTONE, clock.getAsLong());
+    } catch (IOException e) {
+      LOG.warn("Error writing codesearch cache tombstone", e);
+    }
+  }
+
+  @NotNull
+  public synchronized CacheStats getStats() {
+    return new CacheStats(hitCount, missCount, evictionCount, index.size(), totalBytes);
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (Segment segment : segments.values()) {
+      segment.close();
+    }
+    segments.clear();
+    index.clear();
+    deleteRetiredFiles();
+  }
+
+  /**
+   * Rebuilds the index from the segment files.
+   */
+  private void load() throws IOException {
+    TreeMap<Integer, File> files = new TreeMap<>();
+    File[] listedFiles =
+        directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+    if (listedFiles != null) {
+      for (File file : listedFiles) {
+        String id = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+        try {
+          files.put(Integer.parseInt(id), file);
+        } catch (NumberFormatException e) {
+          LOG.debug("Ignoring unknown file in codesearch cache ", file);
+        }
+      }
+    }
+    nextSegmentId = files.isEmpty() ? 0 : files.lastKey() + 1;
+    Integer compactedId = null;
+    for (Iterator<Map.Entry<Integer, File>> iterator = files.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<Integer, File> entry = iterator.next();
+      Long compactedLength = readCompactedLength(entry.getValue());
+      if (compactedLength != null && compactedLength < 0) {
+        //left by a compaction interrupted by an IDE exit, the segments it copied are still there.
+        deleteFile(entry.getValue());
+        iterator.remove();
+      } else if (compactedLength != null) {
+        compactedId = entry.getKey();
+      }
+    }
+    if (compactedId != null) {
+      for (File file : files.headMap(compactedId).values()) {
+        deleteFile(file);
+      }
+      files = new TreeMap<>(files.tailMap(compactedId));
+    }
+    //later segments contain the more recent values.
+    for (Map.Entry<Integer, File> entry : files.entrySet()) {
+      Segment segment = new Segment(entry.getKey(), entry.getValue());
+      segments.put(segment.id, segment);
+      scan(segment);
+      totalBytes += segment.size;
+    }
+    if (segments.isEmpty() || segments.lastEntry().getValue().size >= segmentSize) {
+      newSegment();
+    } else {
+      activeSegment = segments.lastEntry().getValue();
+    }
+    for (Segment segment : segments.values()) {
+      if (segment != activeSegment) {
+        segment.seal();
+      }
+    }
+  }
+
+  /**
+   * Adds the records of the segment to the index. A partially written record at the end of the segment is truncated.
+   */
+  private void scan(Segment segment) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    long offset = 0;
+    while (offset + HEADER_SIZE <= segment.size) {
+      header.clear();
+      segment.read(offset, header);
+      header.flip();
+      int magic = header.getInt();
+      int keyLength = header.getInt();
+      int valueLength = header.getInt();
+      long writtenAt = header.getLong();
+      boolean tombstone = valueLength == TOMBSTONE;
+      boolean marker = valueLength == COMPACTED && offset == 0;
+      long recordLength = (long) HEADER_SIZE + keyLength + (tombstone || marker ? 0 : valueLength);
+      if (magic != RECORD_MAGIC || keyLength < 0 || (valueLength < 0 && !tombstone && !marker)
+          || offset + recordLength > segment.size) {
+        break;
+      }
+      if (!marker && (tombstone || !isExpired(writtenAt))) {
+        ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+        segment.read(offset + HEADER_SIZE, keyBuffer);
+        String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+        if (tombstone) {
+          index.remove(key);
+        } else {
+          index.put(key, new Location(segment.id, (int) offset, keyLength, valueLength, writtenAt));
+        }
+      }
+      offset += recordLength;
+    }
+    if (offset < segment.size) {
+      LOG.info("Truncating corrupted codesearch cache segment " + segment.file);
+      segment.truncate(offset);
+    }
+  }
+
+  private Location append(ByteBuffer record, int keyLength, int valueLength, long writtenAt) throws IOException {
+    if (activeSegment.size + record.remaining() > segmentSize) {
+      activeSegment.seal();
+      newSegment();
+    }
+    int offset = (int) activeSegment.size;
+    int recordLength = record.remaining();
+    activeSegment.append(record);
+    totalBytes += recordLength;
+    return new Location(activeSegment.id, offset, keyLength, valueLength, writtenAt);
+  }
+
+  /**
+   * Seals the active segment, so that the writes done during the compaction go to a new segment, and takes a snapshot
+   * of the live entries, most recently used first.
+   * The compacted segment takes an id between the old segments and the new one, so that it is read before the
+   * segments written during the compaction.
+   * @return the compaction or null if the new segment could not be created.
+   */
+  private Compaction startCompaction() {
+    int targetId = nextSegmentId++;
+    try {
+      activeSegment.seal();
+      newSegment();
+    } catch (IOException e) {
+      LOG.warn("Error compacting codesearch cache", e);
+      return null;
+    }
+    TreeMap<Integer, Segment> oldSegments = new TreeMap<>(segments.headMap(targetId));
+    List<Snapshot> entries = new ArrayList<>(index.size());
+    for (Location location : index.values()) {
+      entries.add(new Snapshot(location));
+    }
+    entries.sort((first, second) -> Long.compare(second.lastAccess, first.lastAccess));
+    compacting = true;
+    return new Compaction(oldSegments, targetId, entries);
+  }
+
+  /**
+   * Copies the most recently used live entries to the compacted segment without holding the lock, then replaces the
+   * old segments with it.
+   */
+  private void compact(Compaction compaction) {
+    int targetId = compaction.targetId;
+    File targetFile = segmentFile(targetId);
+    long budget = (long) (maxBytes * COMPACTION_TARGET_RATIO);
+    Map<Location, Location> moved = new HashMap<>();
+    try (FileChannel channel = FileChannel.open(targetFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeMarker(channel, -1);
+      long position = HEADER_SIZE;
+      for (Snapshot entry : compaction.entries) {
+        Location location = entry.location;
+        int recordLength = location.recordLength();
+        if (isExpired(location.writtenAt) || position + recordLength > budget) {
+          continue;
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        compaction.segments.get(location.segmentId).read(location.offset, record);
+        record.flip();
+        Location newLocation = new Location(targetId, (int) position, location.keyLength, location.valueLength,
+            location.writtenAt);
+        while (record.hasRemaining()) {
+          position += channel.write(record, position);
+        }
+        moved.put(location, newLocation);
+      }
+      //the marker is written last, an interrupted copy is discarded when the cache is opened.
+      channel.force(false);
+      writeMarker(channel, position - HEADER_SIZE);
+      channel.force(false);
+    } catch (IOException e) {
+      LOG.warn("Error compacting codesearch cache, clearing it", e);
+      moved = null;
+    }
+    synchronized (this) {
+      compacting = false;
+      if (closed) {
+        deleteFile(targetFile);
+        return;
+      }
+      install(compaction, moved);
+    }
+  }
+
+  /**
+   * Replaces the old segments with the compacted segment and points the entries that were not written or removed
+   * during the compaction to their copy. The other entries of the old segments are evicted.
+   * @param moved old location -> location in the compacted segment, null if the copy failed.
+   */
+  private void install(Compaction compaction, @Nullable Map<Location, Location> moved) {
+    int targetId = compaction.targetId;
+    if (moved != null) {
+      try {
+        Segment compacted = new Segment(targetId, segmentFile(targetId));
+        compacted.seal();
+        segments.put(targetId, compacted);
+        totalBytes += compacted.size;
+      } catch (IOException e) {
+        LOG.warn("Error opening compacted codesearch cache segment, clearing the cache", e);
+        moved = null;
+      }
+    }
+    if (moved == null) {
+      deleteFile(segmentFile(targetId));
+    }
+    deleteRetiredFiles();
+    for (Segment segment : compaction.segments.values()) {
+      segments.remove(segment.id);
+      totalBytes -= segment.size;
+      //the file of a mapped segment may only be deleted once its buffer is released.
+      segment.close();
+      retiredFiles.add(segment.file);
+    }
+    deleteRetiredFiles();
+    //the entries in the later segments were written during the compaction.
+    for (Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<String, Location> entry = iterator.next();
+      Location location = entry.getValue();
+      if (location.segmentId > targetId) {
+        continue;
+      }
+      Location newLocation = moved == null ? null : moved.get(location);
+      if (newLocation == null) {
+        iterator.remove();
+        evictionCount++;
+      } else {
+        newLocation.lastAccess = location.lastAccess;
+        entry.setValue(newLocation);
+      }
+    }
+  }
+
+  private void newSegment() throws IOException {
+    int id = nextSegmentId++;
+    activeSegment = new Segment(id, segmentFile(id));
+    segments.put(id, activeSegment);
+  }
+
+  /**
+   * Deletes the files of the replaced segments, the ones still mapped are tried again after the next compaction.
+   */
+  private void deleteRetiredFiles() {
+    retiredFiles.removeIf(file -> !file.exists() || file.delete());
+  }
+
+  private static void writeMarker(FileChannel channel, long compactedLength) throws IOException {
+    ByteBuffer marker = ByteBuffer.allocate(HEADER_SIZE);
+    marker.putInt(RECORD_MAGIC).putInt(0).putInt(COMPACTED).putLong(compactedLength);
+    marker.flip();
+    long position = 0;
+    while (marker.hasRemaining()) {
+      position += channel.write(marker, position);
+    }
+  }
+
+  /**
+   * @return the length of the copied records of a compacted segment, -1 if its copy did not complete, or null if
+   * the file is not a compacted segment.
+   */
+  @Nullable
+  private static Long readCompactedLength(File file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          return null;
+        }
+      }
+    }
+    header.flip();
+    if (header.getInt() != RECORD_MAGIC || header.getInt() != 0 || header.getInt() != COMPACTED) {
+      return null;
+    }
+    return header.getLong();
+  }
+
+  private File segmentFile(int id) {
+    return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+  }
+
+  private boolean isExpired(long writtenAt) {
+    return clock.getAsLong() - writtenAt > timeToLive;
+  }
+
+  private static void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.debug("Unable to delete codesearch cache file ", file);
+    }
+  }
+
+  /**
+   * The old segments and the entries they held when a compaction started.
+   */
+  private static class Compaction {
+    private final TreeMap<Integer, Segment> segments;
+    /**
+     * id of the compacted segment.
+     */
+    private final int targetId;
+    private final List<Snapshot> entries;
+
+    Compaction(TreeMap<Integer, Segment> segments, int targetId, List<Snapshot> entries) {
+      this.segments = segments;
+      this.targetId = targetId;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * A live record, its last access is copied as the reads done during the compaction update it.
+   */
+  private static class Snapshot {
+    private final Location location;
+    private final long lastAccess;
+
+    Snapshot(Location location) {
+      this.location = location;
+      this.lastAccess = location.lastAccess;
+    }
+  }
+
+  /**
+   * Location of a record in a segment.
+   */
+  private static class Location {
+    private final int segmentId;
+    private final int offset;
+    private final int keyLength;
+    private final int valueLength;
+    private final long writtenAt;
+    private long lastAccess;
+
+    Location(int segmentId, int offset, int keyLength, int valueLength, long writtenAt) {
+      this.segmentId = segmentId;
+      this.offset = offset;
+      this.keyLength = keyLength;
+      this.valueLength = valueLength;
+      this.writtenAt = writtenAt;
+      this.lastAccess = writtenAt;
+    }
+
+    int recordLength() {
+      return HEADER_SIZE + keyLength + valueLength;
+    }
+  }
+
+  /**
+   * A segment file. Records are appended to the active segment, sealed segments are only read through a memory map.
+   */
+  private static class Segment {
+    private final int id;
+    private final File file;
+    private final FileChannel channel;
+    private long size;
+    /**
+     * read without the lock by a compaction.
+     */
+    private volatile MappedByteBuffer mappedBuffer;
+
+    Segment(int id, File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      size = channel.size();
+    }
+
+    void read(long position, ByteBuffer target) throws IOException {
+      MappedByteBuffer mapped = mappedBuffer;
+      if (mapped != null) {
+        ByteBuffer source = mapped.duplicate();
+        source.position((int) position);
+        source.limit((int) position + target.remaining());
+        target.put(source);
+        return;
+      }
+      while (target.hasRemaining()) {
+        int read = channel.read(target, position);
+        if (read < 0) {
+          throw new IOException("Unexpected end of codesearch cache segment " + file);
+        }
+        position += read;
+      }
+    }
+
+    void append(ByteBuffer record) throws IOException {
+      while (record.hasRemaining()) {
+        size += channel.write(record, size);
+      }
+    }
+
+    void truncate(long newSize) throws IOException {
+      channel.truncate(newSize);
+      size = newSize;
+    }
+
+    /**
+     * Marks the segment as full and maps it for reading.
+     */
+    void seal() throws IOException {
+      if (mappedBuffer == null && size > 0) {
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+    }
+
+    void close() {
+      mappedBuffer = null;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing codesearch cache segment", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package com.senthil.codesearch.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class DiskCacheTest {
+
+  private static final long TIME_TO_LIVE = 1_000_000;
+
+  private final AtomicLong clock = new AtomicLong(1_500_000_000_000L);
+  private File directory;
+  private DiskCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("codesearch-cache").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    if (cache != null) {
+      cache.close();
+    }
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  private DiskCache open(long maxBytes, int segmentSize) throws IOException {
+    if (cache != null) {
+      cache.close();
+    }
+    cache = new DiskCache(directory, maxBytes, segmentSize, TIME_TO_LIVE, clock::get);
+    return cache;
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String get(String key) {
+    byte[] value = cache.get(key);
+    return value == null ? null : new String(value, StandardCharsets.UTF_8);
+  }
+
+  private File segmentFile(int id) {
+    return new File(directory, "segment-" + id + ".dat");
+  }
+
+  private int segmentCount() {
+    String[] names = directory.list((dir, name) -> name.startsWith("segment-"));
+    return names == null ? 0 : names.length;
+  }
+
+  @Test
+  public void testReopenKeepsValues() throws IOException {
+    open(1 << 20, 1 << 16);
+    cache.put("a", bytes("1"));
+    cache.put("b", bytes("2"));
+    cache.put("a", bytes("3"));
+
+    open(1 << 20, 1 << 16);
+    Assert.assertEquals("3", get("a"));
+    Assert.assertEquals("2", get("b"));
+  }
+
+  @Test
+  public void testReopenAfterRemove() throws IOException {
+    open(1 << 20, 1 << 16);
+    cache.put("a", bytes("1"));
+    cache.put("b", bytes("2"));
+    cache.remove("a");
+    Assert.assertFalse(cache.contains("a"));
+
+    open(1 << 20, 1 << 16);
+    Assert.assertNull(get("a"));
+    Assert.assertEquals("2", get("b"));
+
+    //a value written after the tombstone wins over it.
+    cache.put("a", bytes("4"));
+    open(1 << 20, 1 << 16);
+    Assert.assertEquals("4", get("a"));
+  }
+
+  @Test
+  public void testReopenExpiresEntries() throws IOException {
+    open(1 << 20, 1 << 16);
+    cache.put("a", bytes("1"));
+    clock.addAndGet(TIME_TO_LIVE + 1);
+
+    open(1 << 20, 1 << 16);
+    Assert.assertNull(get("a"));
+  }
+
+  @Test
+  public void testTruncatedRecordIsDropped() throws IOException {
+    open(1 << 20, 1 << 16);
+    cache.put("a", bytes("1"));
+    cache.put("b", bytes("22222"));
+    cache.close();
+    cache = null;
+
+    File file = segmentFile(0);
+    try (RandomAccessFile segment = new RandomAccessFile(file, "rw")) {
+      segment.setLength(segment.length() - 3);
+    }
+    open(1 << 20, 1 << 16);
+    Assert.assertEquals("1", get("a"));
+    Assert.assertNull(get("b"));
+
+    //the partial record is truncated, so that the next record can be read back.
+    cache.put("c", bytes("3"));
+    open(1 << 20, 1 << 16);
+    Assert.assertEquals("1", get("a"));
+    Assert.assertEquals("3", get("c"));
+  }
+
+  @Test
+  public void testCompactionKeepsRecentlyUsedEntries() throws IOException {
+    //each record takes 20 + 2 + 100 bytes.
+    open(2_000, 500);
+    byte[] value = new byte[100];
+    for (int i = 0; i < 10; i++) {
+      cache.put("k" + i, value);
+      clock.incrementAndGet();
+    }
+    cache.get("k0");
+    clock.incrementAndGet();
+    for (int i = 10; i < 17; i++) {
+      cache.put("k" + i, value);
+      clock.incrementAndGet();
+    }
+
+    CacheStats stats = cache.getStats();
+    Assert.assertTrue(stats.getEvictionCount() > 0);
+    Assert.assertTrue(stats.getWeight() <= 2_000);
+    Assert.assertNotNull(cache.get("k0"));
+    Assert.assertNotNull(cache.get("k16"));
+    Assert.assertNull(cache.get("k1"));
+
+    int size = cache.getStats().getSize();
+    open(2_000, 500);
+    Assert.assertEquals(size, cache.getStats().getSize());
+    Assert.assertNotNull(cache.get("k0"));
+    Assert.assertNull(cache.get("k1"));
+  }
+
+  @Test
+  public void testSegmentsBeforeCompactionAreIgnored() throws IOException {
+    open(2_000, 500);
+    cache.put("stale", bytes("old"));
+    byte[] staleSegment = Files.readAllBytes(segmentFile(0).toPath());
+    cache.remove("stale");
+    byte[] value = new byte[100];
+    while (segmentFile(0).exists()) {
+      cache.put("k" + clock.incrementAndGet(), value);
+    }
+    cache.close();
+    cache = null;
+
+    //a replaced segment that could not be deleted while it was mapped.
+    Files.write(segmentFile(0).toPath(), staleSegment);
+    open(2_000, 500);
+    Assert.assertNull(get("stale"));
+    Assert.assertFalse(segmentFile(0).exists());
+  }
+
+  @Test
+  public void testCompactionWithConcurrentPuts() throws Exception {
+    open(20_000, 2_000);
+    int threadCount = 4;
+    int putCount = 2_000;
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      String prefix = "t" + t + "-";
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < putCount; i++) {
+            String key = prefix + i;
+            clock.incrementAndGet();
+            cache.put(key, bytes(key + "-value"));
+            if (i % 7 == 0) {
+              cache.remove(prefix + (i / 2));
+            }
+            String read = get(prefix + (i - 5));
+            if (read != null && !read.equals(prefix + (i - 5) + "-value")) {
+              throw new AssertionError("corrupted value " + read);
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+
+    Assert.assertTrue(cache.getStats().getEvictionCount() > 0);
+    Assert.assertTrue(cache.getStats().getWeight() <= 20_000 + 2_000);
+    int size = cache.getStats().getSize();
+    Assert.assertTrue(size > 0);
+    Assert.assertTrue(segmentCount() <= 20);
+
+    open(20_000, 2_000);
+    Assert.assertEquals(size, cache.getStats().getSize());
+    for (int t = 0; t < threadCount; t++) {
+      for (int i = 0; i < putCount; i++) {
+        String key = "t" + t + "-" + i;
+        String read = get(key);
+        Assert.assertTrue(read == null || read.equals(key + "-value"));
+        if (i % 7 == 0) {
+          Assert.assertNull(get("t" + t + "-" + (i / 2)));
+        }
+      }
+    }
+  }
+}
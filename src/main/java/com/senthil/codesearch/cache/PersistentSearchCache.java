@@ -0,0 +1,129 @@
+package com.senthil.codesearch.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Stores the search responses and the file contents in the disk cache.
+ * The writes are done in the background. A read may wait for the disk, the event dispatch thread uses the async reads.
+ */
+public class PersistentSearchCache {
+
+  private static final Logger LOG = Logger.getInstance(PersistentSearchCache.class);
+
+  private static final String CONTENT_KEY_PREFIX = "content\u0000";
+
+  private final DiskCache diskCache;
+  private final SearchResponseCodec codec;
+  private final Executor executor;
+
+  /**
+   * @param diskCache the underlying disk cache, owned by the caller.
+   * @param codec codec for the search responses.
+   * @param executor executor used for the async reads and for writing to the disk.
+   */
+  public PersistentSearchCache(@NotNull DiskCache diskCache, @NotNull SearchResponseCodec codec,
+      @NotNull Executor executor) {
+    this.diskCache = diskCache;
+    this.codec = codec;
+    this.executor = executor;
+  }
+
+  @Nullable
+  public CodeSearchResponse get(@NotNull SearchCacheKey key) {
+    byte[] bytes = diskCache.get(key.asString());
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      return codec.decode(bytes);
+    } catch (IOException e) {
+      LOG.debug("Discarding unreadable codesearch cache entry ", key);
+      diskCache.remove(key.asString());
+      return null;
+    }
+  }
+
+  /**
+   * Same as get, in the background.
+   * @return future of the cached response, completed with null if not present or if the executor is busy.
+   */
+  @NotNull
+  public CompletableFuture<CodeSearchResponse> getAsync(@NotNull SearchCacheKey key) {
+    return read(() -> get(key));
+  }
+
+  public void put(@NotNull SearchCacheKey key, @NotNull CodeSearchResponse response) {
+    write(() -> {
+      try {
+        diskCache.put(key.asString(), codec.encode(response));
+      } catch (IOException e) {
+        LOG.warn("Error encoding codesearch cache entry", e);
+      }
+    });
+  }
+
+  /**
+   * @param url url of the file.
+   * @return the cached contents of the file or null if not present.
+   */
+  @Nullable
+  public String getContent(@NotNull String url) {
+    byte[] bytes = diskCache.get(CONTENT_KEY_PREFIX + url);
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Same as getContent, in the background.
+   * @return future of the cached contents, completed with null if not present or if the executor is busy.
+   */
+  @NotNull
+  public CompletableFuture<String> getContentAsync(@NotNull String url) {
+    return read(() -> getContent(url));
+  }
+
+  /**
+   * Caches the contents of the file, unless they are already cached.
+   */
+  public void putContent(@NotNull String url, @NotNull String content) {
+    write(() -> {
+      String key = CONTENT_KEY_PREFIX + url;
+      if (!diskCache.contains(key)) {
+        diskCache.put(key, content.getBytes(StandardCharsets.UTF_8));
+      }
+    });
+  }
+
+  @NotNull
+  public CacheStats getStats() {
+    return diskCache.getStats();
+  }
+
+  private <T> CompletableFuture<T> read(Supplier<T> read) {
+    try {
+      return CompletableFuture.supplyAsync(read, executor);
+    } catch (RejectedExecutionException e) {
+      //the value is fetched from the server instead.
+      LOG.debug("Skipping codesearch cache read ", e.getMessage());
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  private void write(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      //the cache is best effort, the entry is fetched again next time.
+      LOG.debug("Skipping codesearch cache write ", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.senthil.codesearch.cache;
+
+import com.senthil.codesearch.net.CodeSearchRequest;
+import java.util.Locale;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Cache key for a search request.
+ * Only the parameters that change the response are part of the key, and they are normalized so that
+ * requests differing only in white spaces or case of the file type share the same entry.
+ */
+public final class SearchCacheKey {
+
+  /**
+   * The kind of response cached against the key.
+   */
+  public enum Kind {
+    FACETS, RESULTS, SEARCH
+  }
+
+  private final Kind kind;
+  private final String query;
+  private final String facet;
+  private final String fileType;
+  private final int start;
+
+  private SearchCacheKey(Kind kind, String query, String facet, String fileType, int start) {
+    this.kind = kind;
+    this.query = query;
+    this.facet = facet;
+    this.fileType = fileType;
+    this.start = start;
+  }
+
+  @NotNull
+  public static SearchCacheKey of(@NotNull Kind kind, @NotNull CodeSearchRequest request) {
+    //start is not part of the facets request, the requests of the same page share the key.
+    int start = kind == Kind.FACETS ? 0 : request.getPageStart();
+    return new SearchCacheKey(kind, normalize(request.getQuery()), normalize(request.getFacet()),
+        request.getFileType() == null ? null : request.getFileType().trim().toLowerCase(Locale.ENGLISH), start);
+  }
+
+  private static String normalize(String value) {
+    return value == null ? null : value.trim().replaceAll("\\s+", " ");
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public String getFacet() {
+    return facet;
+  }
+
+  public String getFileType() {
+    return fileType;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SearchCacheKey that = (SearchCacheKey) o;
+    return start == that.start && kind == that.kind && Objects.equals(query, that.query) && Objects.equals(facet,
+        that.facet) && Objects.equals(fileType, that.fileType);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(kind, query, facet, fileType, start);
+  }
+
+  /**
+   * @return string form of the key that is stable across restarts, used as the key of the disk cache.
+   */
+  @NotNull
+  public String asString() {
+    return kind + "\u0000" + query + "\u0000" + facet + "\u0000" + fileType + "\u0000" + start;
+  }
+
+  @Override
+  public String toString() {
+    return kind + ":" + query + ":" + facet + ":" + fileType + ":" + start;
+  }
+}
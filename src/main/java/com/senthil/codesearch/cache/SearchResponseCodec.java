@@ -0,0 +1,132 @@
+package com.senthil.codesearch.cache;
+
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchHighlights;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.CodeSearchResultBatch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Binary representation of the search responses stored in the disk cache.
+ * The content of the results is not stored, it is cached separately when the file is opened.
+ */
+public class SearchResponseCodec {
+
+  /**
+   * Bumped whenever the format changes, so that entries written by an older version are ignored.
+   */
+  private static final int VERSION = 4;
+
+  /**
+   * creates the results, so that the decoded results behave like the results returned by the searcher.
+   */
+  private final Supplier<CodeSearchResult> resultFactory;
+
+  public SearchResponseCodec(@NotNull Supplier<CodeSearchResult> resultFactory) {
+    this.resultFactory = resultFactory;
+  }
+
+  @NotNull
+  public byte[] encode(@NotNull CodeSearchResponse response) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(VERSION);
+      writeString(out, response.getFacetId());
+
+      out.writeInt(response.getFacets().size());
+      for (CodeSearchFacet facet : response.getFacets()) {
+        writeString(out, facet.getId());
+        writeString(out, facet.getName());
+        out.writeInt(facet.getMatchCount());
+        writeString(out, facet.getQuery());
+      }
+
+      out.writeInt(response.getResults().size());
+      for (CodeSearchResult result : response.getResults()) {
+        writeString(out, result.getFileName());
+        writeString(out, result.getProductName());
+        writeString(out, result.getFilePath());
+        writeString(out, result.getRepositoryPath());
+        writeString(out, result.getFileExtension());
+        writeString(out, result.getExternalLink());
+        CodeSearchHighlights highlights = result.getHighlights();
+        out.writeInt(highlights == null ? -1 : highlights.size());
+        if (highlights != null) {
+          for (int i = 0; i < highlights.size(); i++) {
+            out.writeInt(highlights.getLine(i));
+            out.writeInt(highlights.getColumn(i));
+            out.writeInt(highlights.getLength(i));
+            writeString(out, highlights.getMatchedString(i));
+          }
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param bytes encoded response.
+   * @return the decoded response.
+   * @throws IOException if the bytes are not a valid response of the current version.
+   */
+  @NotNull
+  public CodeSearchResponse decode(@NotNull byte[] bytes) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (in.readInt() != VERSION) {
+        throw new IOException("Unsupported codesearch cache entry version");
+      }
+      String facetId = readString(in);
+
+      int facetCount = in.readInt();
+      List<CodeSearchFacet> facets = new ArrayList<>(facetCount);
+      for (int i = 0; i < facetCount; i++) {
+        facets.add(new CodeSearchFacet(readString(in), readString(in), in.readInt(), readString(in)));
+      }
+
+      int resultCount = in.readInt();
+      List<CodeSearchResult> results = new ArrayList<>(resultCount);
+      CodeSearchResultBatch batch = new CodeSearchResultBatch(resultFactory, resultCount);
+      for (int i = 0; i < resultCount; i++) {
+        CodeSearchResult result = batch.newResult();
+        //the product is set before the path, so that a path made of the name and product is not stored.
+        result.setFileName(readString(in))
+            .setProductName(readString(in))
+            .setFilePath(readString(in))
+            .setRepositoryPath(readString(in))
+            .setFileExtension(readString(in))
+            .setExternalLink(readString(in));
+        int highlightCount = in.readInt();
+        if (highlightCount >= 0) {
+          CodeSearchHighlights.Builder highlights = new CodeSearchHighlights.Builder();
+          for (int j = 0; j < highlightCount; j++) {
+            highlights.add(in.readInt(), in.readInt(), in.readInt(), readString(in));
+          }
+          result.setHighlights(highlights.build());
+        }
+        results.add(result);
+      }
+      return new CodeSearchResponse(facets, results, facetId);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
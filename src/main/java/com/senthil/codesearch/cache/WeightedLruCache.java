@@ -0,0 +1,135 @@
+package com.senthil.codesearch.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Thread safe in-memory cache bounded by the total weight of the entries and by the time to live of an entry.
+ * When the total weight exceeds the limit, least recently used entries are evicted.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class WeightedLruCache<K, V> {
+
+  private final long maxWeight;
+  private final long timeToLive;
+  private final ToIntFunction<V> weigher;
+  private final LongSupplier clock;
+  /**
+   * entries in access order, the least recently used entry comes first.
+   */
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalWeight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @param maxWeight maximum total weight of the entries.
+   * @param timeToLive time in milliseconds after which an entry expires.
+   * @param weigher returns the weight of a value.
+   */
+  public WeightedLruCache(long maxWeight, long timeToLive, @NotNull ToIntFunction<V> weigher) {
+    this(maxWeight, timeToLive, weigher, System::currentTimeMillis);
+  }
+
+  WeightedLruCache(long maxWeight, long timeToLive, @NotNull ToIntFunction<V> weigher, @NotNull LongSupplier clock) {
+    this.maxWeight = maxWeight;
+    this.timeToLive = timeToLive;
+    this.weigher = weigher;
+    this.clock = clock;
+  }
+
+  /**
+   * @param key cache key
+   * @return the cached value or null if not present or expired.
+   */
+  @Nullable
+  public synchronized V get(@NotNull K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry != null && isExpired(entry)) {
+      remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.value;
+  }
+
+  /**
+   * @param key cache key
+   * @return time in milliseconds since the value was added, -1 if not present.
+   */
+  public synchronized long getAge(@NotNull K key) {
+    Entry<V> entry = entries.get(key);
+    return entry == null ? -1 : clock.getAsLong() - entry.createdAt;
+  }
+
+  /**
+   * Adds the value to the cache, evicting the least recently used entries if required.
+   * Values heavier than the maximum weight are not cached.
+   */
+  public synchronized void put(@NotNull K key, @NotNull V value) {
+    int weight = Math.max(1, weigher.applyAsInt(value));
+    remove(key);
+    if (weight > maxWeight) {
+      return;
+    }
+    entries.put(key, new Entry<>(value, weight, clock.getAsLong()));
+    totalWeight += weight;
+    evict();
+  }
+
+  public synchronized void remove(@NotNull K key) {
+    Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      totalWeight -= entry.weight;
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    totalWeight = 0;
+  }
+
+  @NotNull
+  public synchronized CacheStats getStats() {
+    return new CacheStats(hitCount, missCount, evictionCount, entries.size(), totalWeight);
+  }
+
+  private boolean isExpired(Entry<V> entry) {
+    return clock.getAsLong() - entry.createdAt > timeToLive;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    while (totalWeight > maxWeight && iterator.hasNext()) {
+      Entry<V> entry = iterator.next().getValue();
+      iterator.remove();
+      totalWeight -= entry.weight;
+      evictionCount++;
+    }
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final int weight;
+    private final long createdAt;
+
+    Entry(V value, int weight, long createdAt) {
+      this.value = value;
+      this.weight = weight;
+      this.createdAt = createdAt;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.senthil.codesearch.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class WeightedLruCacheTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private WeightedLruCache<String, String> newCache(long maxWeight, long timeToLive) {
+    return new WeightedLruCache<>(maxWeight, timeToLive, String::length, clock::get);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    WeightedLruCache<String, String> cache = newCache(6, 1000);
+    cache.put("a", "aa");
+    cache.put("b", "bb");
+    cache.get("a");
+    cache.put("c", "cc");
+    cache.put("d", "dd");
+
+    Assert.assertEquals("aa", cache.get("a"));
+    Assert.assertNull(cache.get("b"));
+    Assert.assertEquals(1, cache.getStats().getEvictionCount());
+    Assert.assertEquals(6, cache.getStats().getWeight());
+  }
+
+  @Test
+  public void testExpiresAfterTimeToLive() {
+    WeightedLruCache<String, String> cache = newCache(10, 100);
+    cache.put("a", "aa");
+    clock.addAndGet(50);
+    Assert.assertEquals("aa", cache.get("a"));
+    clock.addAndGet(51);
+    Assert.assertNull(cache.get("a"));
+
+    CacheStats stats = cache.getStats();
+    Assert.assertEquals(1, stats.getHitCount());
+    Assert.assertEquals(1, stats.getMissCount());
+    Assert.assertEquals(0, stats.getSize());
+  }
+
+  @Test
+  public void testDoesNotCacheValuesHeavierThanLimit() {
+    WeightedLruCache<String, String> cache = newCache(3, 100);
+    cache.put("a", "aaaa");
+    Assert.assertNull(cache.get("a"));
+    Assert.assertEquals(0, cache.getStats().getWeight());
+  }
+}
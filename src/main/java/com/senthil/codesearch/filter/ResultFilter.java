@@ -0,0 +1,19 @@
+package com.senthil.codesearch.filter;
+
+import java.util.BitSet;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Predicate over the indexed search results, evaluated for all the rows of an index at once.
+ * Filters are created and combined using {@link ResultFilters}.
+ */
+public interface ResultFilter {
+
+  /**
+   * @param index the results to be filtered.
+   * @return a new bitset of the matching rows, owned by the caller.
+   */
+  @NotNull
+  BitSet apply(@NotNull ResultIndex index);
+}
@@ -0,0 +1,251 @@
+package com.senthil.codesearch.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Factory methods for the {@link ResultFilter}s.
+ *
+ * Filters can also be parsed from the text typed in the results filter field, see {@link #parse(String)}.
+ */
+public final class ResultFilters {
+
+  private static final ResultFilter ALL = ResultIndex::allRows;
+
+  private ResultFilters() {
+  }
+
+  /**
+   * @return filter matching all the results.
+   */
+  @NotNull
+  public static ResultFilter all() {
+    return ALL;
+  }
+
+  /**
+   * @return filter matching results with any of the file extensions, ignoring case.
+   */
+  @NotNull
+  public static ResultFilter extension(Collection<String> extensions) {
+    List<String> values = new ArrayList<>(extensions);
+    return index -> {
+      BitSet rows = new BitSet();
+      for (String extension : values) {
+        rows.or(index.getExtensionRows(extension));
+      }
+      return rows;
+    };
+  }
+
+  /**
+   * @return filter matching results from any of the repositories, ignoring case.
+   */
+  @NotNull
+  public static ResultFilter repository(Collection<String> repositories) {
+    List<String> values = new ArrayList<>(repositories);
+    return index -> {
+      BitSet rows = new BitSet();
+      for (String repository : values) {
+        rows.or(index.getRepositoryRows(repository));
+      }
+      return rows;
+    };
+  }
+
+  /**
+   * Matches the path of the file in its repository against a glob.
+   * {@code *} and {@code ?} do not cross directories, {@code **} does. A glob without a {@code /} is matched
+   * against the file name, otherwise against the whole path.
+   */
+  @NotNull
+  public static ResultFilter pathGlob(@NotNull String glob) {
+    Pattern pattern = Pattern.compile(globToRegex(glob));
+    boolean fileNameOnly = glob.indexOf('/') < 0;
+    return index -> copy(index.getPathRows("glob:" + glob, path -> {
+      String value = fileNameOnly ? path.substring(path.lastIndexOf('/') + 1) : path;
+      return pattern.matcher(value).matches();
+    }));
+  }
+
+  /**
+   * @return filter matching results that are not under a directory with the name.
+   */
+  @NotNull
+  public static ResultFilter excludeDirectory(@NotNull String directory) {
+    String name = trimSlashes(directory);
+    String segment = "/" + name + "/";
+    return not(index -> copy(index.getPathRows("dir:" + name,
+        path -> path.startsWith(name + "/") || path.contains(segment))));
+  }
+
+  /**
+   * Matches the path of the file in its repository against a regular expression, anywhere in the path.
+   * @throws PatternSyntaxException if the expression is invalid.
+   */
+  @NotNull
+  public static ResultFilter pathRegex(@NotNull String regex) {
+    Pattern pattern = Pattern.compile(regex);
+    return index -> copy(index.getPathRows("regex:" + regex, path -> pattern.matcher(path).find()));
+  }
+
+  /**
+   * @return filter matching results whose path contains the text, ignoring case.
+   */
+  @NotNull
+  public static ResultFilter pathContains(@NotNull String text) {
+    String lowerCase = text.toLowerCase();
+    return index -> copy(index.getPathRows("contains:" + lowerCase, path -> path.toLowerCase().contains(lowerCase)));
+  }
+
+  @NotNull
+  public static ResultFilter and(ResultFilter... filters) {
+    List<ResultFilter> operands = Arrays.asList(filters);
+    if (operands.isEmpty()) {
+      return ALL;
+    }
+    return operands.size() == 1 ? operands.get(0) : index -> {
+      BitSet rows = operands.get(0).apply(index);
+      for (int i = 1; i < operands.size() && !rows.isEmpty(); i++) {
+        rows.and(operands.get(i).apply(index));
+      }
+      return rows;
+    };
+  }
+
+  @NotNull
+  public static ResultFilter or(ResultFilter... filters) {
+    List<ResultFilter> operands = Arrays.asList(filters);
+    if (operands.isEmpty()) {
+      return ALL;
+    }
+    return operands.size() == 1 ? operands.get(0) : index -> {
+      BitSet rows = new BitSet();
+      for (ResultFilter operand : operands) {
+        rows.or(operand.apply(index));
+      }
+      return rows;
+    };
+  }
+
+  @NotNull
+  public static ResultFilter not(@NotNull ResultFilter filter) {
+    return index -> {
+      BitSet rows = index.allRows();
+      rows.andNot(filter.apply(index));
+      return rows;
+    };
+  }
+
+  /**
+   * Parses the filter text. The terms separated by spaces must all match, and groups of terms separated by
+   * {@code |} are alternatives. A term prefixed by {@code -} is negated.
+   * <ul>
+   *   <li>{@code ext:java,xml} file extension</li>
+   *   <li>{@code repo:name} repository</li>
+   *   <li>{@code path:*Test.java} path glob</li>
+   *   <li>{@code dir:test} excludes a directory, same as {@code -in:test}</li>
+   *   <li>{@code re:regex} or {@code /regex/} regular expression on the path</li>
+   *   <li>any other term must be contained in the path</li>
+   * </ul>
+   * @throws PatternSyntaxException if a regular expression is invalid.
+   */
+  @NotNull
+  public static ResultFilter parse(@NotNull String text) {
+    List<ResultFilter> alternatives = new ArrayList<>();
+    for (String group : text.split("\\|")) {
+      List<ResultFilter> terms = new ArrayList<>();
+      for (String term : group.trim().split("\\s+")) {
+        if (!term.isEmpty()) {
+          terms.add(parseTerm(term));
+        }
+      }
+      if (!terms.isEmpty()) {
+        alternatives.add(and(terms.toArray(new ResultFilter[0])));
+      }
+    }
+    return or(alternatives.toArray(new ResultFilter[0]));
+  }
+
+  private static ResultFilter parseTerm(String term) {
+    if (term.length() > 1 && term.charAt(0) == '-') {
+      return not(parseTerm(term.substring(1)));
+    }
+    if (term.length() > 2 && term.startsWith("/") && term.endsWith("/")) {
+      return pathRegex(term.substring(1, term.length() - 1));
+    }
+    int separator = term.indexOf(':');
+    if (separator > 0 && separator < term.length() - 1) {
+      String value = term.substring(separator + 1);
+      switch (term.substring(0, separator).toLowerCase()) {
+        case "ext":
+          return extension(Arrays.asList(value.split(",")));
+        case "repo":
+          return repository(Arrays.asList(value.split(",")));
+        case "path":
+          return pathGlob(value);
+        case "dir":
+          return excludeDirectory(value);
+        case "in":
+          return not(excludeDirectory(value));
+        case "re":
+          return pathRegex(value);
+        default:
+          break;
+      }
+    }
+    return pathContains(term);
+  }
+
+  static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int length = glob.length();
+    for (int i = 0; i < length; i++) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        if (i + 1 < length && glob.charAt(i + 1) == '*') {
+          i++;
+          if (i + 1 < length && glob.charAt(i + 1) == '/') {
+            //**/ also matches no directory at all.
+            i++;
+            regex.append("(?:.*/)?");
+          } else {
+            regex.append(".*");
+          }
+        } else {
+          regex.append("[^/]*");
+        }
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+        regex.append('\\').append(c);
+      } else {
+        regex.append(c);
+      }
+    }
+    return regex.toString();
+  }
+
+  private static String trimSlashes(String directory) {
+    int start = 0;
+    int end = directory.length();
+    while (start < end && directory.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && directory.charAt(end - 1) == '/') {
+      end--;
+    }
+    return directory.substring(start, end);
+  }
+
+  private static BitSet copy(BitSet rows) {
+    return (BitSet) rows.clone();
+  }
+}
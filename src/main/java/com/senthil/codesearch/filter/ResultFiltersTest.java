@@ -0,0 +1,149 @@
+package com.senthil.codesearch.filter;
+
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ResultFiltersTest {
+
+  private ResultIndex index;
+
+  @Before
+  public void setUp() {
+    index = new ResultIndex();
+    add("src/main/java/Foo.java", "java", "core");
+    add("src/test/java/FooTest.java", "java", "core");
+    add("docs/readme.md", "md", "docs");
+    add("Bar.java", "java", "tools");
+    add("lib/a+b.xml", "xml", "tools");
+  }
+
+  /**
+   * Adds a result shaped like the searchcode results, whose file path is a display name.
+   */
+  private void add(String repositoryPath, String extension, String product) {
+    String fileName = repositoryPath.substring(repositoryPath.lastIndexOf('/') + 1);
+    index.add(new CodeSearchResult().setFileName(fileName).setProductName(product)
+        .setFilePath(fileName + " in " + product).setRepositoryPath(repositoryPath).setFileExtension(extension));
+  }
+
+  private static BitSet rows(int... rows) {
+    BitSet bitSet = new BitSet();
+    for (int row : rows) {
+      bitSet.set(row);
+    }
+    return bitSet;
+  }
+
+  private BitSet apply(String text) {
+    return ResultFilters.parse(text).apply(index);
+  }
+
+  private static boolean globMatches(String glob, String path) {
+    return Pattern.matches(ResultFilters.globToRegex(glob), path);
+  }
+
+  @Test
+  public void testGlobEscapesRegexCharacters() {
+    Assert.assertTrue(globMatches("a+b.xml", "a+b.xml"));
+    Assert.assertFalse(globMatches("a+b.xml", "aab.xml"));
+    Assert.assertFalse(globMatches("Foo.java", "FooXjava"));
+    Assert.assertTrue(globMatches("(x)[1]{2}$^|", "(x)[1]{2}$^|"));
+  }
+
+  @Test
+  public void testGlobStarDoesNotCrossDirectories() {
+    Assert.assertTrue(globMatches("src/*.java", "src/Foo.java"));
+    Assert.assertFalse(globMatches("src/*.java", "src/main/Foo.java"));
+  }
+
+  @Test
+  public void testGlobDoubleStarCrossesDirectories() {
+    Assert.assertTrue(globMatches("src/**.java", "src/main/java/Foo.java"));
+    Assert.assertTrue(globMatches("src/**/Foo.java", "src/main/java/Foo.java"));
+    //**/ also matches no directory.
+    Assert.assertTrue(globMatches("src/**/Foo.java", "src/Foo.java"));
+    Assert.assertFalse(globMatches("src/**/Foo.java", "lib/Foo.java"));
+  }
+
+  @Test
+  public void testGlobQuestionMarkMatchesOneCharacter() {
+    Assert.assertTrue(globMatches("Fo?.java", "Foo.java"));
+    Assert.assertFalse(globMatches("Fo?.java", "Fooo.java"));
+    Assert.assertFalse(globMatches("a?b", "a/b"));
+  }
+
+  @Test
+  public void testParsePathGlob() {
+    //without a slash the glob is matched against the file name.
+    Assert.assertEquals(rows(0, 1, 3), apply("path:*.java"));
+    Assert.assertEquals(rows(1), apply("path:src/**/*Test.java"));
+  }
+
+  @Test
+  public void testParseTermsAndAlternatives() {
+    Assert.assertEquals(rows(0, 1), apply("ext:java repo:core"));
+    Assert.assertEquals(rows(2, 4), apply("ext:md | ext:xml"));
+    Assert.assertEquals(rows(0, 1, 2), apply("ext:MD,Java repo:core,docs"));
+    //any other term is contained in the path, ignoring case.
+    Assert.assertEquals(rows(0, 1), apply("foo"));
+  }
+
+  @Test
+  public void testParseNegation() {
+    Assert.assertEquals(rows(2, 4), apply("-ext:java"));
+    Assert.assertEquals(rows(0, 3), apply("ext:java -test"));
+    Assert.assertEquals(rows(0, 2, 3, 4), apply("dir:test"));
+    Assert.assertEquals(rows(1), apply("in:test"));
+    //a lone dash is a path term.
+    Assert.assertEquals(rows(), apply("-"));
+  }
+
+  @Test
+  public void testParseRegex() {
+    Assert.assertEquals(rows(0, 1), apply("/java/Foo/"));
+    Assert.assertEquals(rows(3), apply("re:^Bar"));
+  }
+
+  @Test
+  public void testPathRowsAreExtendedWithNewResults() {
+    ResultFilter filter = ResultFilters.parse("path:*.md");
+    Assert.assertEquals(rows(2), filter.apply(index));
+    add("notes.md", "md", "docs");
+    Assert.assertEquals(rows(2, 5), filter.apply(index));
+  }
+
+  @Test
+  public void testPathRowsAreEvaluatedAgainAfterEviction() {
+    ResultFilter filter = ResultFilters.parse("path:*.md");
+    Assert.assertEquals(rows(2), filter.apply(index));
+    for (int i = 0; i < 100; i++) {
+      ResultFilters.parse("path:" + i).apply(index);
+    }
+    add("notes.md", "md", "docs");
+    Assert.assertEquals(rows(2, 5), filter.apply(index));
+  }
+
+  @Test
+  public void testDisplayPathIsNotMatched() {
+    Assert.assertEquals(rows(), apply("re:core$"));
+    Assert.assertEquals(rows(), apply("/\\sin\\s/"));
+    Assert.assertEquals(rows(0, 1, 2, 3, 4), apply("-in:core"));
+  }
+
+  @Test
+  public void testFilePathIsMatchedWithoutRepositoryPath() {
+    index.add(new CodeSearchResult().setFileName("Baz.java").setFilePath("lib/test/Baz.java"));
+    Assert.assertEquals(rows(1, 5), apply("in:test"));
+  }
+
+  @Test(expected = PatternSyntaxException.class)
+  public void testParseInvalidRegex() {
+    ResultFilters.parse("re:[");
+  }
+}
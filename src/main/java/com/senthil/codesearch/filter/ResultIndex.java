@@ -0,0 +1,176 @@
+package com.senthil.codesearch.filter;
+
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Column index over the loaded search results, used to evaluate {@link ResultFilter}s without visiting the results.
+ * Every result is assigned a row when it is added, and every attribute value maps to the bitset of rows having it.
+ * The rows matching a path pattern are computed once per pattern and extended as results are added, so re-evaluating
+ * a filter over tens of thousands of results costs a few bitset operations. Only the recently used patterns are kept,
+ * every keystroke in the filter field creates a new one.
+ *
+ * Not thread safe, the index is owned by the results view and used from the event dispatch thread.
+ */
+public class ResultIndex {
+
+  /**
+   * no of path patterns whose rows are kept.
+   */
+  private static final int MAX_PATH_PATTERNS = 16;
+
+  private final List<CodeSearchResult> results = new ArrayList<>();
+  private final Map<CodeSearchResult, Integer> rows = new IdentityHashMap<>();
+  private final List<String> paths = new ArrayList<>();
+  /**
+   * rows by lower case file extension.
+   */
+  private final Map<String, BitSet> extensions = new HashMap<>();
+  /**
+   * rows by lower case repository (product) name.
+   */
+  private final Map<String, BitSet> repositories = new HashMap<>();
+  /**
+   * rows matching a path pattern, by pattern key, in access order.
+   */
+  private final Map<String, PathRows> pathRows = new LinkedHashMap<String, PathRows>(MAX_PATH_PATTERNS, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, PathRows> eldest) {
+      return size() > MAX_PATH_PATTERNS;
+    }
+  };
+
+  /**
+   * Adds the result to the index, if not already present.
+   * @return the row of the result.
+   */
+  public int add(@NotNull CodeSearchResult result) {
+    Integer existing = rows.get(result);
+    if (existing != null) {
+      return existing;
+    }
+    int row = results.size();
+    results.add(result);
+    rows.put(result, row);
+    paths.add(pathOf(result));
+    rowsOf(extensions, result.getFileExtension()).set(row);
+    rowsOf(repositories, result.getProductName()).set(row);
+    return row;
+  }
+
+  /**
+   * @return the row of the result or -1 if the result is not indexed.
+   */
+  public int rowOf(@NotNull CodeSearchResult result) {
+    Integer row = rows.get(result);
+    return row == null ? -1 : row;
+  }
+
+  public CodeSearchResult getResult(int row) {
+    return results.get(row);
+  }
+
+  /**
+   * no of indexed results.
+   */
+  public int size() {
+    return results.size();
+  }
+
+  /**
+   * Removes all the results.
+   */
+  public void clear() {
+    results.clear();
+    rows.clear();
+    paths.clear();
+    extensions.clear();
+    repositories.clear();
+    pathRows.clear();
+  }
+
+  /**
+   * The returned bitsets are owned by the index and must not be modified.
+   * @return rows with the file extension, ignoring case.
+   */
+  @NotNull
+  BitSet getExtensionRows(String extension) {
+    return get(extensions, extension);
+  }
+
+  /**
+   * @return rows of the repository, ignoring case.
+   */
+  @NotNull
+  BitSet getRepositoryRows(String repository) {
+    return get(repositories, repository);
+  }
+
+  /**
+   * @param key identifies the predicate, results are cached by key.
+   * @param predicate evaluated on the path of the rows not evaluated yet, see {@link #pathOf(CodeSearchResult)}.
+   * @return rows whose path matches the predicate.
+   */
+  @NotNull
+  BitSet getPathRows(String key, Predicate<String> predicate) {
+    PathRows matching = pathRows.computeIfAbsent(key, k -> new PathRows());
+    for (int row = matching.evaluated; row < paths.size(); row++) {
+      if (predicate.test(paths.get(row))) {
+        matching.rows.set(row);
+      }
+    }
+    matching.evaluated = paths.size();
+    return matching.rows;
+  }
+
+  /**
+   * @return a new bitset with all the rows set.
+   */
+  @NotNull
+  BitSet allRows() {
+    BitSet all = new BitSet(results.size());
+    all.set(0, results.size());
+    return all;
+  }
+
+  /**
+   * The file path of some servers is only a display name, the path in the repository is matched when known.
+   */
+  private static String pathOf(CodeSearchResult result) {
+    String path = result.getRepositoryPath();
+    if (path == null) {
+      path = result.getFilePath();
+    }
+    return path == null ? "" : path;
+  }
+
+  private static BitSet rowsOf(Map<String, BitSet> index, String value) {
+    return index.computeIfAbsent(normalize(value), k -> new BitSet());
+  }
+
+  private static BitSet get(Map<String, BitSet> index, String value) {
+    BitSet bitSet = index.get(normalize(value));
+    return bitSet == null ? new BitSet() : bitSet;
+  }
+
+  private static String normalize(String value) {
+    return value == null ? "" : value.toLowerCase();
+  }
+
+  private static final class PathRows {
+    private final BitSet rows = new BitSet();
+    /**
+     * no of rows the predicate was evaluated for.
+     */
+    private int evaluated;
+  }
+}
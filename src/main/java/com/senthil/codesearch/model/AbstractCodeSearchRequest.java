@@ -44,6 +44,24 @@ public abstract class AbstractCodeSearchRequest implements CodeSearchRequest {
     return this;
   }
 
+  @Override
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * The results are returned from the start by default.
+   */
+  @Override
+  public int getPageStart() {
+    return start;
+  }
+
+  @Override
+  public int getPageSize() {
+    return numToReturn;
+  }
+
   @Override
   public CodeSearchRequest setRequestTimeOut(long requestTimeOut) {
     this.requestTimeOut = requestTimeOut;
@@ -84,6 +102,11 @@ public abstract class AbstractCodeSearchRequest implements CodeSearchRequest {
     return this;
   }
 
+  @Override
+  public String getFilePath() {
+    return filePath;
+  }
+
   @Override
   public CodeSearchRequest setFileType(String fileType) {
     if (fileType != null && !fileType.isEmpty() && !fileType.equalsIgnoreCase("all")) {
@@ -0,0 +1,241 @@
+package com.senthil.codesearch.model;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Packed highlight information of a search result, one entry per match.
+ * The entries are sorted by line. The column and length of a match are optional, not all the codesearch servers
+ * provide them, and the matched strings are shared through a table.
+ *
+ * The entries are read by index, so that they can be iterated without creating an object per match.
+ * Immutable, the arrays may be shared with a {@link CodeSearchResultBatch}, which only appends to them.
+ */
+public final class CodeSearchHighlights {
+
+  /**
+   * column or length of a match that is not known.
+   */
+  public static final int UNKNOWN = -1;
+
+  private static final String[] NO_STRINGS = new String[0];
+
+  private final int[] lines;
+  /**
+   * null if no column is known.
+   */
+  private final int[] columns;
+  /**
+   * null if no length is known.
+   */
+  private final int[] lengths;
+  /**
+   * position of the matched strings in the table, -1 if unknown.
+   */
+  private final int[] matchedStrings;
+  private final String[] matchedStringTable;
+  private final int offset;
+  private final int size;
+
+  /**
+   * Highlights sharing the same matched string.
+   * @param lines sorted line numbers, starting from 0.
+   * @param columns columns of the matches or null if not known.
+   * @param lengths lengths of the matches or null if not known.
+   */
+  public CodeSearchHighlights(@NotNull int[] lines, int[] columns, int[] lengths, String matchedString) {
+    this(lines, columns, lengths, new int[lines.length], new String[]{matchedString}, 0, lines.length);
+  }
+
+  CodeSearchHighlights(int[] lines, int[] columns, int[] lengths, int[] matchedStrings, String[] matchedStringTable,
+      int offset, int size) {
+    this.lines = lines;
+    this.columns = columns;
+    this.lengths = lengths;
+    this.matchedStrings = matchedStrings;
+    this.matchedStringTable = matchedStringTable;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  /**
+   * no of matches.
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return line number of the match, starting from 0.
+   */
+  public int getLine(int index) {
+    return lines[offset + index];
+  }
+
+  /**
+   * @return column of the match in the line or {@link #UNKNOWN}.
+   */
+  public int getColumn(int index) {
+    return columns == null ? UNKNOWN : columns[offset + index];
+  }
+
+  /**
+   * @return length of the match or {@link #UNKNOWN}, in which case the matched string is to be searched in the line.
+   */
+  public int getLength(int index) {
+    return lengths == null ? UNKNOWN : lengths[offset + index];
+  }
+
+  /**
+   * @return the matched string, the same instance for all the matches of the same string.
+   */
+  public String getMatchedString(int index) {
+    int id = matchedStrings[offset + index];
+    return id < 0 ? null : matchedStringTable[id];
+  }
+
+  /**
+   * @return index of the first match on the line, or (-(insertion point) - 1) if there is no match on the line.
+   */
+  public int indexOfLine(int line) {
+    int index = Arrays.binarySearch(lines, offset, offset + size, line);
+    if (index < 0) {
+      return index + offset;
+    }
+    while (index > offset && lines[index - 1] == line) {
+      index--;
+    }
+    return index - offset;
+  }
+
+  /**
+   * @return true if the matches are on the same lines.
+   */
+  public boolean sameLines(@NotNull CodeSearchHighlights other) {
+    if (size != other.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (getLine(i) != other.getLine(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("CodeSearchHighlights{");
+    for (int i = 0; i < size; i++) {
+      builder.append(i == 0 ? "" : ", ").append(getLine(i)).append(':').append(getMatchedString(i));
+    }
+    return builder.append('}').toString();
+  }
+
+  /**
+   * Builds highlights from matches in any order.
+   */
+  public static class Builder {
+    private int[] lines = new int[16];
+    private int[] columns;
+    private int[] lengths;
+    private int[] matchedStrings = new int[16];
+    private String[] matchedStringTable = NO_STRINGS;
+    private int size;
+    private boolean sorted = true;
+
+    /**
+     * @param line line number, starting from 0.
+     * @param column column in the line or {@link #UNKNOWN}.
+     * @param length length of the match or {@link #UNKNOWN}.
+     */
+    public Builder add(int line, int column, int length, String matchedString) {
+      if (size == lines.length) {
+        lines = Arrays.copyOf(lines, size * 2);
+        matchedStrings = Arrays.copyOf(matchedStrings, size * 2);
+        if (columns != null) {
+          columns = Arrays.copyOf(columns, size * 2);
+        }
+        if (lengths != null) {
+          lengths = Arrays.copyOf(lengths, size * 2);
+        }
+      }
+      if (column != UNKNOWN && columns == null) {
+        columns = unknowns(lines.length);
+      }
+      if (length != UNKNOWN && lengths == null) {
+        lengths = unknowns(lines.length);
+      }
+      sorted &= size == 0 || lines[size - 1] <= line;
+      lines[size] = line;
+      if (columns != null) {
+        columns[size] = column;
+      }
+      if (lengths != null) {
+        lengths[size] = length;
+      }
+      matchedStrings[size] = matchedStringId(matchedString);
+      size++;
+      return this;
+    }
+
+    public CodeSearchHighlights build() {
+      if (!sorted) {
+        sort();
+      }
+      return new CodeSearchHighlights(lines, columns, lengths, matchedStrings, matchedStringTable, 0, size);
+    }
+
+    private int matchedStringId(String matchedString) {
+      if (matchedString == null) {
+        return -1;
+      }
+      for (int i = 0; i < matchedStringTable.length; i++) {
+        if (matchedStringTable[i].equals(matchedString)) {
+          return i;
+        }
+      }
+      matchedStringTable = Arrays.copyOf(matchedStringTable, matchedStringTable.length + 1);
+      matchedStringTable[matchedStringTable.length - 1] = matchedString;
+      return matchedStringTable.length - 1;
+    }
+
+    /**
+     * Insertion sort by line, the matches are usually almost sorted.
+     */
+    private void sort() {
+      for (int i = 1; i < size; i++) {
+        for (int j = i; j > 0 && lines[j - 1] > lines[j]; j--) {
+          swap(lines, j);
+          swap(matchedStrings, j);
+          if (columns != null) {
+            swap(columns, j);
+          }
+          if (lengths != null) {
+            swap(lengths, j);
+          }
+        }
+      }
+    }
+
+    private static void swap(int[] values, int index) {
+      int value = values[index];
+      values[index] = values[index - 1];
+      values[index - 1] = value;
+    }
+  }
+
+  /**
+   * @return a new array of the length filled with {@link #UNKNOWN}.
+   */
+  static int[] unknowns(int length) {
+    int[] values = new int[length];
+    Arrays.fill(values, UNKNOWN);
+    return values;
+  }
+}
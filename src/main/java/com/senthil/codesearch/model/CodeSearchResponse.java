@@ -0,0 +1,69 @@
+package com.senthil.codesearch.model;
+
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Facets and the first page of results returned by a single search round trip.
+ */
+public class CodeSearchResponse {
+
+  private final List<CodeSearchFacet> facets;
+  private final List<CodeSearchResult> results;
+  /**
+   * The facet the results are restricted to, null if the results span all the facets.
+   */
+  private final String facetId;
+
+  public CodeSearchResponse(@NotNull List<CodeSearchFacet> facets, @NotNull List<CodeSearchResult> results,
+      @Nullable String facetId) {
+    this.facets = facets;
+    this.results = results;
+    this.facetId = facetId;
+  }
+
+  public static CodeSearchResponse empty(@Nullable String facetId) {
+    return new CodeSearchResponse(Collections.emptyList(), Collections.emptyList(), facetId);
+  }
+
+  @NotNull
+  public List<CodeSearchFacet> getFacets() {
+    return facets;
+  }
+
+  @NotNull
+  public List<CodeSearchResult> getResults() {
+    return results;
+  }
+
+  @Nullable
+  public String getFacetId() {
+    return facetId;
+  }
+
+  /**
+   * Returns the first page of results for the facet, if this response contains it.
+   * The results belong to the facet if the search was restricted to the facet or if the facet is the only one.
+   * @param facet selected facet.
+   * @return first page of results for the facet or null if the facet's results have to be retrieved separately.
+   */
+  @Nullable
+  public List<CodeSearchResult> getFirstPage(@NotNull CodeSearchFacet facet) {
+    if (facetId != null) {
+      return facetId.equals(facet.getId()) ? results : null;
+    }
+    if (facets.size() == 1 && facets.get(0).getId().equals(facet.getId())) {
+      return results;
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "CodeSearchResponse{" + "facets=" + facets + ", results=" + results + ", facetId='" + facetId + '\''
+        + '}';
+  }
+}
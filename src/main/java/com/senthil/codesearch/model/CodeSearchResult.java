@@ -1,107 +1,241 @@
 package com.senthil.codesearch.model;
 
 import com.intellij.ide.util.gotoByName.ChooseByNameItem;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 
 /**
  * Representation of a codesearch result.
+ *
+ * The fields of the results of a response are stored in a row of a {@link CodeSearchResultBatch}, the result is
+ * only a view of the row. Results created directly hold their fields themselves.
  */
 public class CodeSearchResult implements ChooseByNameItem {
 
+  /**
+   * null for a result created directly.
+   */
+  private CodeSearchResultBatch batch;
+  private int row;
+
   private String fileName;
   private String filePath;
+  private String repositoryPath;
   private String productName;
   private String fileExtension;
   private String externalLink;
-  /**
-   * search result file's content.
-   */
   private String content;
+  private CodeSearchHighlights highlights;
+
   /**
-   * List of highlight data, one for each match in the file.
+   * Binds a new view to the row of the batch.
    */
-  private Collection<CodeSearchHighlightData> highlightData;
+  void bind(CodeSearchResultBatch batch, int row) {
+    this.batch = batch;
+    this.row = row;
+  }
 
   public String getFileName() {
-    return fileName;
+    return batch == null ? fileName : batch.getFileName(row);
   }
 
   public CodeSearchResult setFileName(String fileName) {
-    this.fileName = fileName;
+    if (batch == null) {
+      this.fileName = fileName;
+    } else {
+      batch.setFileName(row, fileName);
+    }
     return this;
   }
 
   public String getFilePath() {
-    return filePath;
+    return batch == null ? filePath : batch.getFilePath(row);
   }
 
   public CodeSearchResult setFilePath(String filePath) {
-    this.filePath = filePath;
+    if (batch == null) {
+      this.filePath = filePath;
+    } else {
+      batch.setFilePath(row, filePath);
+    }
+    return this;
+  }
+
+  /**
+   * path of the file from the root of its repository, the file path may only be a display name.
+   * @return the path or null if not known.
+   */
+  public String getRepositoryPath() {
+    return batch == null ? repositoryPath : batch.getRepositoryPath(row);
+  }
+
+  public CodeSearchResult setRepositoryPath(String repositoryPath) {
+    if (batch == null) {
+      this.repositoryPath = repositoryPath;
+    } else {
+      batch.setRepositoryPath(row, repositoryPath);
+    }
     return this;
   }
 
   public String getProductName() {
-    return productName;
+    return batch == null ? productName : batch.getProductName(row);
   }
 
   public CodeSearchResult setProductName(String productName) {
-    this.productName = productName;
+    if (batch == null) {
+      this.productName = productName;
+    } else {
+      batch.setProductName(row, productName);
+    }
     return this;
   }
 
   public String getFileExtension() {
-    return fileExtension;
+    return batch == null ? fileExtension : batch.getFileExtension(row);
   }
 
   public CodeSearchResult setFileExtension(String fileExtension) {
-    this.fileExtension = fileExtension;
+    if (batch == null) {
+      this.fileExtension = fileExtension;
+    } else {
+      batch.setFileExtension(row, fileExtension);
+    }
     return this;
   }
 
+  /**
+   * search result file's content.
+   */
   public String getContent() {
-    return content;
+    return batch == null ? content : batch.getContent(row);
   }
 
   public CodeSearchResult setContent(String content) {
-    this.content = content;
+    if (batch == null) {
+      this.content = content;
+    } else {
+      batch.setContent(row, content);
+    }
+    return this;
+  }
+
+  /**
+   * @return true if the content is present, without downloading it.
+   */
+  public boolean isContentLoaded() {
+    return (batch == null ? content : batch.getContent(row)) != null;
+  }
+
+  /**
+   * Packed highlight information, one entry for each match in the file.
+   * @return the highlights or null if not known.
+   */
+  public CodeSearchHighlights getHighlights() {
+    return batch == null ? highlights : batch.getHighlights(row);
+  }
+
+  public CodeSearchResult setHighlights(CodeSearchHighlights highlights) {
+    if (batch == null) {
+      this.highlights = highlights;
+    } else {
+      batch.setHighlights(row, highlights);
+    }
     return this;
   }
 
+  /**
+   * List of highlight data, one for each match in the file.
+   * A highlight data is created for every match, {@link #getHighlights()} should be preferred.
+   */
   public Collection<CodeSearchHighlightData> getHighlightData() {
-    return highlightData == null ? null : Collections.unmodifiableCollection(highlightData);
+    CodeSearchHighlights highlights = getHighlights();
+    if (highlights == null) {
+      return null;
+    }
+    List<CodeSearchHighlightData> highlightData = new ArrayList<>(highlights.size());
+    for (int i = 0; i < highlights.size(); i++) {
+      highlightData.add(new CodeSearchHighlightData(highlights.getLine(i), highlights.getMatchedString(i)));
+    }
+    return Collections.unmodifiableCollection(highlightData);
   }
 
   public CodeSearchResult setHighlightData(Collection<CodeSearchHighlightData> highlightData) {
-    this.highlightData = highlightData;
+    if (highlightData == null) {
+      return setHighlights(null);
+    }
+    CodeSearchHighlights.Builder builder = new CodeSearchHighlights.Builder();
+    for (CodeSearchHighlightData data : highlightData) {
+      builder.add(data.getLineNumber(), CodeSearchHighlights.UNKNOWN, CodeSearchHighlights.UNKNOWN,
+          data.getMatchedString());
+    }
+    return setHighlights(builder.build());
+  }
+
+  /**
+   * Sets highlights sharing the same matched string, without creating a highlight data per line.
+   * @param lineNumbers the highlighted line numbers, starting from 0.
+   * @param count no of line numbers to be used.
+   */
+  public CodeSearchResult setHighlightLines(int[] lineNumbers, int count, String matchedString) {
+    if (batch == null) {
+      int[] lines = Arrays.copyOf(lineNumbers, count);
+      Arrays.sort(lines);
+      highlights = new CodeSearchHighlights(lines, null, null, matchedString);
+    } else {
+      batch.setHighlightLines(row, lineNumbers, count, matchedString);
+    }
+    return this;
+  }
+
+  /**
+   * Changes the matched string of all the highlights.
+   */
+  public CodeSearchResult setMatchedString(String matchedString) {
+    if (batch != null) {
+      batch.setMatchedString(row, matchedString);
+    } else if (highlights != null) {
+      CodeSearchHighlights.Builder builder = new CodeSearchHighlights.Builder();
+      for (int i = 0; i < highlights.size(); i++) {
+        builder.add(highlights.getLine(i), highlights.getColumn(i), highlights.getLength(i), matchedString);
+      }
+      highlights = builder.build();
+    }
     return this;
   }
 
   @Override
   public String getName() {
-    return fileName;
+    return getFileName();
   }
 
   @Override
   public String getDescription() {
-    return productName;
+    return getProductName();
   }
 
 
   public String getExternalLink() {
-    return externalLink;
+    return batch == null ? externalLink : batch.getExternalLink(row);
   }
 
   public CodeSearchResult setExternalLink(String externalLink) {
-    this.externalLink = externalLink;
+    if (batch == null) {
+      this.externalLink = externalLink;
+    } else {
+      batch.setExternalLink(row, externalLink);
+    }
     return this;
   }
 
   @Override
   public String toString() {
-    return "CodeSearchResult{" + "fileName='" + fileName + '\'' + ", filePath='" + filePath + '\'' + ", productName='"
-        + productName + '\'' + ", fileExtension='" + fileExtension + '\'' + ", content='" + content + '\''
-        + ", highlightData=" + highlightData + '}';
+    return "CodeSearchResult{" + "fileName='" + getFileName() + '\'' + ", filePath='" + getFilePath() + '\''
+        + ", productName='" + getProductName() + '\'' + ", fileExtension='" + getFileExtension() + '\''
+        + ", content='" + getContent() + '\'' + ", highlights=" + getHighlights() + '}';
   }
 }
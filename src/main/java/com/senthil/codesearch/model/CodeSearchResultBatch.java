@@ -0,0 +1,441 @@
+package com.senthil.codesearch.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Columnar storage of the search results of a response.
+ * The repository, extension and matched string of the results are stored once per distinct value, the names,
+ * paths and links are stored in a shared char arena and the highlighted lines in a shared int array.
+ * The {@link CodeSearchResult}s of the batch are views over a row and hold no data themselves.
+ * The strings read from the arena are kept per row, so that the renderers and the filters repeatedly reading the
+ * same rows do not create a string on every call.
+ *
+ * The batch is filled while the response is decoded and read at the same time by the UI, so all the accesses
+ * are synchronized.
+ */
+public class CodeSearchResultBatch {
+
+  /**
+   * length of a null string.
+   */
+  private static final int NULL = -1;
+  /**
+   * length of a file path made of the file name and the product name, see {@link #derivedPath(int)}.
+   */
+  private static final int DERIVED = -2;
+  private static final String DERIVED_PATH_SEPARATOR = " in ";
+
+  private static final int FILE_NAME = 0;
+  private static final int FILE_PATH = 1;
+  private static final int EXTERNAL_LINK = 2;
+  private static final int REPOSITORY_PATH = 3;
+  private static final int STRING_COLUMNS = 4;
+
+  /**
+   * creates the views, so that the results of the batch behave like the results of the searcher.
+   */
+  private final Supplier<CodeSearchResult> viewFactory;
+
+  private final Dictionary products = new Dictionary();
+  private final Dictionary extensions = new Dictionary();
+  private final Dictionary matchedStrings = new Dictionary();
+
+  private char[] chars;
+  private int charCount;
+  /**
+   * strings of the string columns already read, for every row, allocated when the first one is read.
+   */
+  private String[] decoded;
+
+  private int size;
+  /**
+   * start and length in the arena of the string columns, for every row.
+   */
+  private int[] strings;
+  private int[] productIds;
+  private int[] extensionIds;
+  /**
+   * start in the highlight arrays and no of highlights of every row, the count is -1 if not known.
+   */
+  private int[] highlightStarts;
+  private int[] highlightCounts;
+  private int[] lines;
+  private int[] lineMatchedStrings;
+  /**
+   * columns and lengths of the matches, allocated when the first one is known.
+   */
+  private int[] lineColumns;
+  private int[] lineLengths;
+  private int lineCount;
+  /**
+   * rows whose highlights were handed out. The highlights share the line arrays, so the lines of these rows are
+   * never updated in place.
+   */
+  private final BitSet sharedHighlights = new BitSet();
+  /**
+   * contents of the results, allocated when the first content is set.
+   */
+  private String[] contents;
+
+  public CodeSearchResultBatch(@NotNull Supplier<CodeSearchResult> viewFactory) {
+    this(viewFactory, 16);
+  }
+
+  public CodeSearchResultBatch(@NotNull Supplier<CodeSearchResult> viewFactory, int expectedSize) {
+    this.viewFactory = viewFactory;
+    int capacity = Math.max(expectedSize, 1);
+    strings = new int[capacity * STRING_COLUMNS * 2];
+    productIds = new int[capacity];
+    extensionIds = new int[capacity];
+    highlightStarts = new int[capacity];
+    highlightCounts = new int[capacity];
+    chars = new char[capacity * 64];
+    lines = new int[capacity * 4];
+    lineMatchedStrings = new int[capacity * 4];
+  }
+
+  /**
+   * Adds an empty row.
+   * @return a view of the new row.
+   */
+  @NotNull
+  public synchronized CodeSearchResult newResult() {
+    return get(addRow());
+  }
+
+  /**
+   * @return a new view of the row.
+   */
+  @NotNull
+  public CodeSearchResult get(int row) {
+    CodeSearchResult result = viewFactory.get();
+    result.bind(this, row);
+    return result;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  synchronized int addRow() {
+    if (size == productIds.length) {
+      grow();
+    }
+    int row = size++;
+    Arrays.fill(strings, row * STRING_COLUMNS * 2, (row + 1) * STRING_COLUMNS * 2, NULL);
+    productIds[row] = NULL;
+    extensionIds[row] = NULL;
+    highlightCounts[row] = NULL;
+    return row;
+  }
+
+  synchronized String getFileName(int row) {
+    return getString(row, FILE_NAME);
+  }
+
+  synchronized void setFileName(int row, String fileName) {
+    materializePath(row);
+    setString(row, FILE_NAME, fileName);
+  }
+
+  synchronized String getFilePath(int row) {
+    return getString(row, FILE_PATH);
+  }
+
+  synchronized void setFilePath(int row, String filePath) {
+    if (filePath != null && isDerivedPath(row, filePath)) {
+      strings[(row * STRING_COLUMNS + FILE_PATH) * 2 + 1] = DERIVED;
+      forget(row, FILE_PATH);
+    } else {
+      setString(row, FILE_PATH, filePath);
+    }
+  }
+
+  synchronized String getRepositoryPath(int row) {
+    return getString(row, REPOSITORY_PATH);
+  }
+
+  synchronized void setRepositoryPath(int row, String repositoryPath) {
+    setString(row, REPOSITORY_PATH, repositoryPath);
+  }
+
+  synchronized String getExternalLink(int row) {
+    return getString(row, EXTERNAL_LINK);
+  }
+
+  synchronized void setExternalLink(int row, String externalLink) {
+    setString(row, EXTERNAL_LINK, externalLink);
+  }
+
+  synchronized String getProductName(int row) {
+    return products.get(productIds[row]);
+  }
+
+  synchronized void setProductName(int row, String productName) {
+    materializePath(row);
+    productIds[row] = products.add(productName);
+  }
+
+  synchronized String getFileExtension(int row) {
+    return extensions.get(extensionIds[row]);
+  }
+
+  synchronized void setFileExtension(int row, String fileExtension) {
+    extensionIds[row] = extensions.add(fileExtension);
+  }
+
+  synchronized String getContent(int row) {
+    return contents == null ? null : contents[row];
+  }
+
+  synchronized void setContent(int row, String content) {
+    if (contents == null) {
+      if (content == null) {
+        return;
+      }
+      contents = new String[productIds.length];
+    }
+    contents[row] = content;
+  }
+
+  synchronized CodeSearchHighlights getHighlights(int row) {
+    int count = highlightCounts[row];
+    if (count == NULL) {
+      return null;
+    }
+    //the arrays are only appended to, so the highlights can share them.
+    sharedHighlights.set(row);
+    return new CodeSearchHighlights(lines, lineColumns, lineLengths, lineMatchedStrings, matchedStrings.values(),
+        highlightStarts[row], count);
+  }
+
+  synchronized void setHighlights(int row, CodeSearchHighlights highlights) {
+    if (highlights == null) {
+      highlightCounts[row] = NULL;
+      return;
+    }
+    int count = highlights.size();
+    ensureLineCapacity(count);
+    sharedHighlights.clear(row);
+    highlightStarts[row] = lineCount;
+    for (int i = 0; i < count; i++) {
+      int column = highlights.getColumn(i);
+      int length = highlights.getLength(i);
+      if (column != CodeSearchHighlights.UNKNOWN && lineColumns == null) {
+        lineColumns = CodeSearchHighlights.unknowns(lines.length);
+      }
+      if (length != CodeSearchHighlights.UNKNOWN && lineLengths == null) {
+        lineLengths = CodeSearchHighlights.unknowns(lines.length);
+      }
+      lines[lineCount] = highlights.getLine(i);
+      lineMatchedStrings[lineCount] = matchedStrings.add(highlights.getMatchedString(i));
+      if (lineColumns != null) {
+        lineColumns[lineCount] = column;
+      }
+      if (lineLengths != null) {
+        lineLengths[lineCount] = length;
+      }
+      lineCount++;
+    }
+    highlightCounts[row] = count;
+  }
+
+  /**
+   * Sets highlights sharing the same matched string, with unknown columns.
+   * @param lineNumbers the highlighted line numbers, starting from 0.
+   */
+  synchronized void setHighlightLines(int row, int[] lineNumbers, int count, String matchedString) {
+    ensureLineCapacity(count);
+    int matchedStringId = matchedStrings.add(matchedString);
+    int start = lineCount;
+    sharedHighlights.clear(row);
+    highlightStarts[row] = start;
+    for (int i = 0; i < count; i++) {
+      lines[lineCount] = lineNumbers[i];
+      lineMatchedStrings[lineCount] = matchedStringId;
+      if (lineColumns != null) {
+        lineColumns[lineCount] = CodeSearchHighlights.UNKNOWN;
+      }
+      if (lineLengths != null) {
+        lineLengths[lineCount] = CodeSearchHighlights.UNKNOWN;
+      }
+      lineCount++;
+    }
+    //the matches are kept sorted by line, the lines are usually received in order.
+    Arrays.sort(lines, start, lineCount);
+    highlightCounts[row] = count;
+  }
+
+  /**
+   * Sets the matched string of all the highlights of the row.
+   * The lines of a row whose highlights were handed out are copied first, so that the highlights do not change.
+   */
+  synchronized void setMatchedString(int row, String matchedString) {
+    int count = highlightCounts[row];
+    if (count == NULL) {
+      return;
+    }
+    int matchedStringId = matchedStrings.add(matchedString);
+    if (sharedHighlights.get(row)) {
+      ensureLineCapacity(count);
+      int start = highlightStarts[row];
+      System.arraycopy(lines, start, lines, lineCount, count);
+      if (lineColumns != null) {
+        System.arraycopy(lineColumns, start, lineColumns, lineCount, count);
+      }
+      if (lineLengths != null) {
+        System.arraycopy(lineLengths, start, lineLengths, lineCount, count);
+      }
+      highlightStarts[row] = lineCount;
+      lineCount += count;
+      sharedHighlights.clear(row);
+    }
+    int start = highlightStarts[row];
+    Arrays.fill(lineMatchedStrings, start, start + count, matchedStringId);
+  }
+
+  private String getString(int row, int column) {
+    int index = (row * STRING_COLUMNS + column) * 2;
+    int length = strings[index + 1];
+    if (length == NULL) {
+      return null;
+    }
+    if (decoded == null) {
+      decoded = new String[productIds.length * STRING_COLUMNS];
+    }
+    String value = decoded[index / 2];
+    if (value == null) {
+      value = length == DERIVED ? derivedPath(row) : new String(chars, strings[index], length);
+      decoded[index / 2] = value;
+    }
+    return value;
+  }
+
+  private void setString(int row, int column, String value) {
+    int index = (row * STRING_COLUMNS + column) * 2;
+    forget(row, column);
+    if (value == null) {
+      strings[index + 1] = NULL;
+      return;
+    }
+    int length = value.length();
+    if (charCount + length > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+    }
+    value.getChars(0, length, chars, charCount);
+    strings[index] = charCount;
+    strings[index + 1] = length;
+    charCount += length;
+  }
+
+  private void forget(int row, int column) {
+    if (decoded != null) {
+      decoded[row * STRING_COLUMNS + column] = null;
+    }
+  }
+
+  /**
+   * Some servers have no path for the results and display the file name and product instead.
+   */
+  private String derivedPath(int row) {
+    return getString(row, FILE_NAME) + DERIVED_PATH_SEPARATOR + products.get(productIds[row]);
+  }
+
+  /**
+   * Stores a derived path in the arena, so that it keeps its value when the file name or product changes.
+   */
+  private void materializePath(int row) {
+    if (strings[(row * STRING_COLUMNS + FILE_PATH) * 2 + 1] == DERIVED) {
+      setString(row, FILE_PATH, getString(row, FILE_PATH));
+    }
+  }
+
+  private boolean isDerivedPath(int row, String filePath) {
+    int nameIndex = (row * STRING_COLUMNS + FILE_NAME) * 2;
+    int nameLength = strings[nameIndex + 1];
+    String product = products.get(productIds[row]);
+    if (nameLength == NULL || product == null
+        || filePath.length() != nameLength + DERIVED_PATH_SEPARATOR.length() + product.length()) {
+      return false;
+    }
+    int nameStart = strings[nameIndex];
+    for (int i = 0; i < nameLength; i++) {
+      if (filePath.charAt(i) != chars[nameStart + i]) {
+        return false;
+      }
+    }
+    return filePath.startsWith(DERIVED_PATH_SEPARATOR, nameLength) && filePath.endsWith(product);
+  }
+
+  private void grow() {
+    int capacity = productIds.length * 2;
+    strings = Arrays.copyOf(strings, capacity * STRING_COLUMNS * 2);
+    productIds = Arrays.copyOf(productIds, capacity);
+    extensionIds = Arrays.copyOf(extensionIds, capacity);
+    highlightStarts = Arrays.copyOf(highlightStarts, capacity);
+    highlightCounts = Arrays.copyOf(highlightCounts, capacity);
+    if (decoded != null) {
+      decoded = Arrays.copyOf(decoded, capacity * STRING_COLUMNS);
+    }
+    if (contents != null) {
+      contents = Arrays.copyOf(contents, capacity);
+    }
+  }
+
+  private void ensureLineCapacity(int count) {
+    if (lineCount + count > lines.length) {
+      int capacity = Math.max(lines.length * 2, lineCount + count);
+      lines = Arrays.copyOf(lines, capacity);
+      lineMatchedStrings = Arrays.copyOf(lineMatchedStrings, capacity);
+      if (lineColumns != null) {
+        lineColumns = Arrays.copyOf(lineColumns, capacity);
+      }
+      if (lineLengths != null) {
+        lineLengths = Arrays.copyOf(lineLengths, capacity);
+      }
+    }
+  }
+
+  /**
+   * Distinct values of a column, a value is referenced by its position.
+   * The values are only appended to, so the array can be shared with the highlights. It is replaced when it grows.
+   */
+  private static final class Dictionary {
+    private String[] values = new String[4];
+    private int size;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    int add(String value) {
+      if (value == null) {
+        return NULL;
+      }
+      Integer id = ids.get(value);
+      if (id == null) {
+        if (size == values.length) {
+          values = Arrays.copyOf(values, size * 2);
+        }
+        id = size++;
+        values[id] = value;
+        ids.put(value, id);
+      }
+      return id;
+    }
+
+    String get(int id) {
+      return id == NULL ? null : values[id];
+    }
+
+    /**
+     * @return the values by id, the array may be longer than the no of values.
+     */
+    String[] values() {
+      return values;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.senthil.codesearch.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CodeSearchResultBatchTest {
+
+  @Test
+  public void testStringsAreReadOnce() {
+    CodeSearchResultBatch batch = new CodeSearchResultBatch(CodeSearchResult::new, 1);
+    CodeSearchResult result = batch.newResult().setFileName("Foo.java").setProductName("core")
+        .setFilePath("Foo.java in core").setExternalLink("https://searchcode.com/1");
+
+    Assert.assertEquals("Foo.java in core", result.getFilePath());
+    Assert.assertSame(result.getFilePath(), result.getFilePath());
+    Assert.assertSame(result.getFileName(), batch.get(0).getFileName());
+    Assert.assertSame(result.getExternalLink(), result.getExternalLink());
+  }
+
+  @Test
+  public void testChangedStringsAreReadAgain() {
+    CodeSearchResultBatch batch = new CodeSearchResultBatch(CodeSearchResult::new, 1);
+    CodeSearchResult result = batch.newResult().setFileName("Foo.java").setProductName("core")
+        .setFilePath("Foo.java in core");
+    Assert.assertEquals("Foo.java in core", result.getFilePath());
+
+    //the derived path keeps its value when the name changes.
+    result.setFileName("Bar.java");
+    Assert.assertEquals("Bar.java", result.getFileName());
+    Assert.assertEquals("Foo.java in core", result.getFilePath());
+    result.setFilePath("Bar.java in core");
+    Assert.assertEquals("Bar.java in core", result.getFilePath());
+    result.setFilePath(null);
+    Assert.assertNull(result.getFilePath());
+  }
+
+  @Test
+  public void testRowsKeepTheirStringsWhenTheBatchGrows() {
+    CodeSearchResultBatch batch = new CodeSearchResultBatch(CodeSearchResult::new, 1);
+    for (int i = 0; i < 100; i++) {
+      CodeSearchResult result = batch.newResult().setFileName("f" + i);
+      Assert.assertEquals("f" + i, result.getFileName());
+    }
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("f" + i, batch.get(i).getFileName());
+    }
+  }
+
+  @Test
+  public void testStandaloneResultHoldsItsFields() {
+    CodeSearchResult result = new CodeSearchResult().setFileName("Foo.java").setFilePath("src/Foo.java")
+        .setHighlightLines(new int[]{5, 2, 9}, 2, "foo");
+    Assert.assertEquals("Foo.java", result.getFileName());
+    Assert.assertEquals("src/Foo.java", result.getFilePath());
+    Assert.assertFalse(result.isContentLoaded());
+
+    CodeSearchHighlights highlights = result.getHighlights();
+    Assert.assertEquals(2, highlights.size());
+    Assert.assertEquals(2, highlights.getLine(0));
+    Assert.assertEquals(5, highlights.getLine(1));
+    result.setMatchedString("bar");
+    Assert.assertEquals("bar", result.getHighlights().getMatchedString(1));
+    Assert.assertEquals("foo", highlights.getMatchedString(1));
+  }
+}
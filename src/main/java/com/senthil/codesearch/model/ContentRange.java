@@ -0,0 +1,66 @@
+package com.senthil.codesearch.model;
+
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * A part of the content of a search result.
+ * The offsets are positions in the UTF-8 encoded content. A range always ends on a character boundary, so the
+ * next range starts at {@link #getEnd()}.
+ */
+public class ContentRange {
+
+  private final String text;
+  private final long start;
+  private final long end;
+  /**
+   * length of the whole content, -1 if not known.
+   */
+  private final long totalLength;
+  private final boolean last;
+
+  public ContentRange(@NotNull String text, long start, long end, long totalLength, boolean last) {
+    this.text = text;
+    this.start = start;
+    this.end = end;
+    this.totalLength = totalLength;
+    this.last = last;
+  }
+
+  /**
+   * A range holding the whole content.
+   */
+  public static ContentRange whole(@NotNull String content, long length) {
+    return new ContentRange(content, 0, length, length, true);
+  }
+
+  @NotNull
+  public String getText() {
+    return text;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  public long getTotalLength() {
+    return totalLength;
+  }
+
+  /**
+   * @return true if the range reaches the end of the content.
+   */
+  public boolean isLast() {
+    return last;
+  }
+
+  @Override
+  public String toString() {
+    return "ContentRange{" + "start=" + start + ", end=" + end + ", totalLength=" + totalLength + ", last=" + last
+        + '}';
+  }
+}
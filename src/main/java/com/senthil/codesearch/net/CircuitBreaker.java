@@ -0,0 +1,123 @@
+package com.senthil.codesearch.net;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.function.LongSupplier;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Stops the requests to a server that keeps failing.
+ * The circuit opens after a no of consecutive failures and the requests are rejected while it is open. Once the open
+ * time elapsed a single probe request is let through: its success closes the circuit, its failure opens it again for
+ * twice as long, up to a maximum.
+ *
+ * Thread safe.
+ */
+class CircuitBreaker {
+
+  private static final Logger LOG = Logger.getInstance(CircuitBreaker.class);
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long minOpenTime;
+  private final long maxOpenTime;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int failureCount;
+  /**
+   * time in ms the circuit stays open, doubled by every failed probe.
+   */
+  private long openTime;
+  private long openedAt;
+  private boolean probing;
+
+  /**
+   * @param failureThreshold no of consecutive failures opening the circuit.
+   * @param minOpenTime time in ms before the first probe.
+   * @param maxOpenTime maximum time in ms between two probes.
+   */
+  CircuitBreaker(int failureThreshold, long minOpenTime, long maxOpenTime) {
+    this(failureThreshold, minOpenTime, maxOpenTime, System::currentTimeMillis);
+  }
+
+  CircuitBreaker(int failureThreshold, long minOpenTime, long maxOpenTime, @NotNull LongSupplier clock) {
+    this.failureThreshold = failureThreshold;
+    this.minOpenTime = minOpenTime;
+    this.maxOpenTime = maxOpenTime;
+    this.openTime = minOpenTime;
+    this.clock = clock;
+  }
+
+  /**
+   * @return true if the request can be sent. The caller must then report its outcome.
+   */
+  synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.getAsLong() - openedAt < openTime) {
+          return false;
+        }
+        LOG.debug("Probing the code search server after ms ", openTime);
+        state = State.HALF_OPEN;
+        probing = true;
+        return true;
+      default:
+        if (probing) {
+          return false;
+        }
+        probing = true;
+        return true;
+    }
+  }
+
+  synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOG.debug("Code search server is back, closing the circuit");
+    }
+    state = State.CLOSED;
+    failureCount = 0;
+    openTime = minOpenTime;
+    probing = false;
+  }
+
+  synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open(Math.min(maxOpenTime, openTime * 2));
+    } else if (state == State.CLOSED && ++failureCount >= failureThreshold) {
+      open(minOpenTime);
+    }
+  }
+
+  /**
+   * @return time in ms before the next probe, 0 if the circuit is not open or the probe is due.
+   */
+  synchronized long getRetryDelay() {
+    return state == State.OPEN ? Math.max(0, openedAt + openTime - clock.getAsLong()) : 0;
+  }
+
+  /**
+   * Reports a request that was cancelled or not sent, which tells nothing about the server.
+   */
+  synchronized void onAbandoned() {
+    probing = false;
+  }
+
+  private void open(long time) {
+    LOG.debug("Code search server is failing, opening the circuit for ms ", time);
+    state = State.OPEN;
+    openTime = time;
+    openedAt = clock.getAsLong();
+    probing = false;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CircuitBreaker{" + "state=" + state + ", failureCount=" + failureCount + ", openTime=" + openTime + '}';
+  }
+}
@@ -0,0 +1,84 @@
+package com.senthil.codesearch.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CircuitBreakerTest {
+
+  private static final long MIN_OPEN_TIME = 10_000;
+  private static final long MAX_OPEN_TIME = 120_000;
+
+  private final AtomicLong clock = new AtomicLong(1_500_000_000_000L);
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, MIN_OPEN_TIME, MAX_OPEN_TIME, clock::get);
+
+  private void fail(int times) {
+    for (int i = 0; i < times; i++) {
+      Assert.assertTrue(circuitBreaker.allowRequest());
+      circuitBreaker.onFailure();
+    }
+  }
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    fail(2);
+    circuitBreaker.onSuccess();
+    //a success resets the failure count.
+    fail(2);
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    Assert.assertEquals(0, circuitBreaker.getRetryDelay());
+
+    circuitBreaker.onFailure();
+    Assert.assertFalse(circuitBreaker.allowRequest());
+    Assert.assertEquals(MIN_OPEN_TIME, circuitBreaker.getRetryDelay());
+    clock.addAndGet(4_000);
+    Assert.assertFalse(circuitBreaker.allowRequest());
+    Assert.assertEquals(MIN_OPEN_TIME - 4_000, circuitBreaker.getRetryDelay());
+  }
+
+  @Test
+  public void testHalfOpenLetsOneProbeThrough() {
+    fail(3);
+    clock.addAndGet(MIN_OPEN_TIME);
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    Assert.assertEquals(0, circuitBreaker.getRetryDelay());
+    Assert.assertFalse(circuitBreaker.allowRequest());
+
+    circuitBreaker.onSuccess();
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    Assert.assertTrue(circuitBreaker.allowRequest());
+  }
+
+  @Test
+  public void testAbandonedProbeIsSentAgain() {
+    fail(3);
+    clock.addAndGet(MIN_OPEN_TIME);
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.onAbandoned();
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    Assert.assertFalse(circuitBreaker.allowRequest());
+  }
+
+  @Test
+  public void testFailedProbesDoubleOpenTimeUpToMax() {
+    fail(3);
+    long openTime = MIN_OPEN_TIME;
+    for (long expected : new long[]{20_000, 40_000, 80_000, MAX_OPEN_TIME, MAX_OPEN_TIME}) {
+      clock.addAndGet(openTime - 1);
+      Assert.assertFalse(circuitBreaker.allowRequest());
+      clock.incrementAndGet();
+      Assert.assertTrue(circuitBreaker.allowRequest());
+      circuitBreaker.onFailure();
+      Assert.assertEquals(expected, circuitBreaker.getRetryDelay());
+      openTime = expected;
+    }
+
+    //a successful probe closes the circuit and resets the open time.
+    clock.addAndGet(openTime);
+    Assert.assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.onSuccess();
+    fail(3);
+    Assert.assertEquals(MIN_OPEN_TIME, circuitBreaker.getRetryDelay());
+  }
+}
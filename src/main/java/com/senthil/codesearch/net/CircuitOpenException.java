@@ -0,0 +1,27 @@
+package com.senthil.codesearch.net;
+
+import java.io.IOException;
+
+
+/**
+ * Thrown when a search is rejected without a request because the code search server keeps failing.
+ */
+public class CircuitOpenException extends IOException {
+
+  private final long retryDelay;
+
+  /**
+   * @param retryDelay time in ms before the server is tried again.
+   */
+  public CircuitOpenException(long retryDelay) {
+    super("The code search server is not responding, the search is not sent");
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * @return time in ms before the server is tried again, 0 if it is being tried.
+   */
+  public long getRetryDelay() {
+    return retryDelay;
+  }
+}
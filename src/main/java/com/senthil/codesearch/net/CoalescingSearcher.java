@@ -0,0 +1,199 @@
+package com.senthil.codesearch.net;
+
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Searcher that collapses identical concurrent requests into a single call to the underlying searcher.
+ * A request that arrives while an equal request is in flight shares the result of the in flight request.
+ * Double clicks, history replays and repeated 'load more' clicks therefore do not hit the server more than once.
+ */
+public class CoalescingSearcher extends ForwardingSearcher {
+
+  private final Map<CodeSearchRequest, InFlight<List<CodeSearchFacet>>> facetsInFlight = new ConcurrentHashMap<>();
+  private final Map<CodeSearchRequest, InFlight<List<CodeSearchResult>>> resultsInFlight = new ConcurrentHashMap<>();
+  private final Map<CodeSearchRequest, InFlight<CodeSearchResponse>> searchesInFlight = new ConcurrentHashMap<>();
+
+  /**
+   * no of requests received by this searcher.
+   */
+  private final AtomicLong requestCount = new AtomicLong();
+  /**
+   * no of requests that were served by an identical in flight request.
+   */
+  private final AtomicLong collapsedCount = new AtomicLong();
+
+  public CoalescingSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler) {
+    super(delegate, scheduler);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchFacet>> getFacets(@NotNull CodeSearchRequest request) {
+    return coalesce(facetsInFlight, request, getDelegate()::getFacets);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request) {
+    return coalesce(resultsInFlight, request, getDelegate()::getResults);
+  }
+
+  /**
+   * Shares the in flight requests with getResults. Only the caller that started the request receives the batches,
+   * the collapsed callers receive all the results in a single batch once the request completes.
+   */
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    return coalesce(resultsInFlight, request, r -> getDelegate().streamResults(r, batchConsumer), batchConsumer);
+  }
+
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    return coalesce(searchesInFlight, request, getDelegate()::search);
+  }
+
+  private <T> CompletableFuture<T> coalesce(Map<CodeSearchRequest, InFlight<T>> inFlight,
+      CodeSearchRequest request, Function<CodeSearchRequest, CompletableFuture<T>> call) {
+    return coalesce(inFlight, request, call, null);
+  }
+
+  /**
+   * @param collapsedConsumer receives the shared value if the request is collapsed, may be null.
+   */
+  private <T> CompletableFuture<T> coalesce(Map<CodeSearchRequest, InFlight<T>> inFlight,
+      CodeSearchRequest request, Function<CodeSearchRequest, CompletableFuture<T>> call,
+      Consumer<T> collapsedConsumer) {
+    requestCount.incrementAndGet();
+    //the requests are mutable, so we keep a copy as the key.
+    CodeSearchRequest key = request.copy();
+    InFlight<T> shared = new InFlight<>(inFlight, key);
+    while (true) {
+      InFlight<T> existing = inFlight.putIfAbsent(key, shared);
+      if (existing == null) {
+        break;
+      }
+      if (existing.join()) {
+        collapsedCount.incrementAndGet();
+        return existing.waiter(value -> {
+          if (value != null && collapsedConsumer != null) {
+            collapsedConsumer.accept(value);
+          }
+          return value;
+        });
+      }
+      //all the callers of the existing request cancelled, it is replaced.
+      inFlight.remove(key, existing);
+    }
+
+    CompletableFuture<T> future;
+    try {
+      future = call.apply(request);
+    } catch (RuntimeException | Error e) {
+      //the requests that joined meanwhile fail as well, and the next request makes a fresh call.
+      inFlight.remove(key, shared);
+      shared.result.completeExceptionally(e);
+      throw e;
+    }
+    if (future == null) {
+      inFlight.remove(key, shared);
+      shared.result.complete(null);
+      return null;
+    }
+    shared.setCall(future);
+    future.whenComplete((result, throwable) -> {
+      //remove first, so that a request arriving after this point triggers a fresh call.
+      inFlight.remove(key, shared);
+      if (throwable != null) {
+        shared.result.completeExceptionally(throwable);
+      } else {
+        shared.result.complete(result);
+      }
+    });
+    return shared.waiter(Function.identity());
+  }
+
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getCollapsedCount() {
+    return collapsedCount.get();
+  }
+
+  public int getInFlightCount() {
+    return facetsInFlight.size() + resultsInFlight.size() + searchesInFlight.size();
+  }
+
+  /**
+   * A request in flight and the no of callers waiting for it.
+   * Every caller gets its own future, so that one caller cancelling does not cancel the others. The call to the
+   * underlying searcher is cancelled once all the callers cancelled.
+   */
+  private static final class InFlight<T> {
+    private final Map<CodeSearchRequest, InFlight<T>> inFlight;
+    private final CodeSearchRequest key;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    /**
+     * the caller that started the request is waiting from the start.
+     */
+    private final AtomicInteger waiters = new AtomicInteger(1);
+    private volatile CompletableFuture<T> call;
+
+    InFlight(Map<CodeSearchRequest, InFlight<T>> inFlight, CodeSearchRequest key) {
+      this.inFlight = inFlight;
+      this.key = key;
+    }
+
+    /**
+     * @return false if all the callers cancelled, in which case the request cannot be shared any more.
+     */
+    boolean join() {
+      while (true) {
+        int count = waiters.get();
+        if (count == 0) {
+          return false;
+        }
+        if (waiters.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    CompletableFuture<T> waiter(Function<T, T> onValue) {
+      CompletableFuture<T> waiter = result.thenApply(onValue);
+      waiter.whenComplete((value, throwable) -> {
+        if (waiter.isCancelled() && waiters.decrementAndGet() == 0) {
+          inFlight.remove(key, this);
+          cancelCall();
+        }
+      });
+      return waiter;
+    }
+
+    void setCall(CompletableFuture<T> call) {
+      this.call = call;
+      if (waiters.get() == 0) {
+        cancelCall();
+      }
+    }
+
+    private void cancelCall() {
+      CompletableFuture<T> current = call;
+      if (current != null) {
+        current.cancel(true);
+      }
+    }
+  }
+}
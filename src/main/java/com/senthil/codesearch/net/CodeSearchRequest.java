@@ -26,6 +26,24 @@ public interface CodeSearchRequest {
    */
   CodeSearchRequest setStart(int start);
 
+  /**
+   *
+   * @return the offset to begin the search
+   */
+  int getStart();
+
+  /**
+   * Backends return the results by pages, the first results of the page before the start are returned as well.
+   * @return the offset of the first result returned for the request.
+   */
+  int getPageStart();
+
+  /**
+   * A page with fewer results is the last one.
+   * @return the no of results in a page returned by the backend.
+   */
+  int getPageSize();
+
   /**
    * Sets the time out for the CodeSearch's brokers. This is the time out for the codesearch server and not the http request.
    * @param requestTimeOut request time out in milliseconds.
@@ -66,6 +84,11 @@ public interface CodeSearchRequest {
    */
   CodeSearchRequest setFilePath(String filePath);
 
+  /**
+   * @return the file path paramter
+   */
+  String getFilePath();
+
   /**
    *
    * @param fileType The search hit's file type (extension)
@@ -3,13 +3,13 @@ package com.senthil.codesearch.net;
 import com.senthil.codesearch.model.CodeSearchFacet;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.ContentRange;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -19,8 +19,6 @@ import org.jetbrains.annotations.NotNull;
  */
 public class DummyCodeSearcher implements Searcher {
 
-  private ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
-
   @Override
   public CompletableFuture<List<CodeSearchFacet>> getFacets(CodeSearchRequest request) {
     return CompletableFuture.supplyAsync(() -> {
@@ -43,15 +41,18 @@ public class DummyCodeSearcher implements Searcher {
   }
 
   @Override
-  public ScheduledFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request, long delayInMilliseconds) {
-    CodeSearchResult result = new CodeSearchResult().setFileName(request.getFileName() == null ? "DummyFile.java" : request.getFileName())
-        .setFileExtension("java")
-        .setFilePath("dummy-mp/src/java/DummyFile.java")
-        .setProductName(request.getFacet() == null ? "Dummy" : request.getFacet())
-        .setHighlightData(null)
-        .setContent("dummy content");
-    return scheduledExecutorService.schedule(() -> Collections.singletonList(result), delayInMilliseconds, TimeUnit.MILLISECONDS);
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    return getResults(request).thenApply(results -> {
+      batchConsumer.accept(results);
+      return results;
+    });
+  }
 
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    return getFacets(request).thenCombine(getResults(request),
+        (facets, results) -> new CodeSearchResponse(facets, results, request.getFacet()));
   }
 
   @Override
@@ -59,6 +60,12 @@ public class DummyCodeSearcher implements Searcher {
     return CompletableFuture.supplyAsync(() -> "dummyContent");
   }
 
+  @Override
+  public CompletableFuture<ContentRange> getContentRange(@NotNull CodeSearchResult result, long start, int length) {
+    return getContents(result.getProductName(), result.getFilePath()).thenApply(
+        content -> ContentRange.whole(content, content.getBytes(StandardCharsets.UTF_8).length));
+  }
+
   @Override
   public CompletableFuture<List<CodeSearchHighlightData>> getHighlightData(String productName, String filePath, String query) {
     return CompletableFuture.supplyAsync(Collections::emptyList);
@@ -0,0 +1,75 @@
+package com.senthil.codesearch.net;
+
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.ContentRange;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Base class for searchers that add behaviour on top of another searcher.
+ * All the calls are forwarded to the delegate unless overridden.
+ */
+public abstract class ForwardingSearcher implements Searcher {
+
+  private final Searcher delegate;
+  private final ScheduledExecutorService scheduler;
+
+  protected ForwardingSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler) {
+    this.delegate = delegate;
+    this.scheduler = scheduler;
+  }
+
+  @NotNull
+  protected Searcher getDelegate() {
+    return delegate;
+  }
+
+  @NotNull
+  protected ScheduledExecutorService getScheduler() {
+    return scheduler;
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchFacet>> getFacets(@NotNull CodeSearchRequest request) {
+    return delegate.getFacets(request);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request) {
+    return delegate.getResults(request);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    return delegate.streamResults(request, batchConsumer);
+  }
+
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    return delegate.search(request);
+  }
+
+  @Override
+  public CompletableFuture<String> getContents(@NotNull String productName, @NotNull String filePath) {
+    return delegate.getContents(productName, filePath);
+  }
+
+  @Override
+  public CompletableFuture<ContentRange> getContentRange(@NotNull CodeSearchResult result, long start, int length) {
+    return delegate.getContentRange(result, start, length);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchHighlightData>> getHighlightData(@NotNull String productName,
+      @NotNull String filePath, @NotNull String query) {
+    return delegate.getHighlightData(productName, filePath, query);
+  }
+}
@@ -0,0 +1,116 @@
+package com.senthil.codesearch.net;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Helpers for the futures returned by the searchers.
+ */
+public final class Futures {
+
+  //Utility classes should not have a public or default constructor
+  private Futures() {
+
+  }
+
+  /**
+   * Cancelling a future derived with thenApply or exceptionally does not cancel the future it is derived from.
+   * This cancels the source as well, so that a superseded search stops the http request it is waiting for.
+   * @param dependent the future returned to the caller.
+   * @param source the future the dependent future waits for.
+   * @return the dependent future.
+   */
+  @NotNull
+  public static <T> CompletableFuture<T> propagateCancellation(@NotNull CompletableFuture<T> dependent,
+      @NotNull Future<?> source) {
+    dependent.whenComplete((value, throwable) -> {
+      if (dependent.isCancelled()) {
+        source.cancel(true);
+      }
+    });
+    return dependent;
+  }
+
+  /**
+   * Same as CompletableFuture.failedFuture of Java 9.
+   * @return a future completed exceptionally with the throwable.
+   */
+  @NotNull
+  public static <T> CompletableFuture<T> failed(@NotNull Throwable throwable) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    result.completeExceptionally(throwable);
+    return result;
+  }
+
+  /**
+   * Same as source.thenApplyAsync(function, executor), except when the executor rejects the task.
+   * thenApplyAsync throws the RejectedExecutionException in the thread completing the source, which may be the
+   * event dispatch thread or an I/O thread, and its future never completes. Here the future completes exceptionally.
+   * @return future of the function applied to the value of the source, in the executor.
+   */
+  @NotNull
+  public static <T, R> CompletableFuture<R> applyAsync(@NotNull CompletableFuture<T> source,
+      @NotNull Function<? super T, ? extends R> function, @NotNull Executor executor) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    source.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        result.completeExceptionally(throwable);
+        return;
+      }
+      try {
+        executor.execute(() -> {
+          try {
+            result.complete(function.apply(value));
+          } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Same as source.thenCompose(function), except that cancelling the returned future cancels the source and the
+   * future returned by the function. A null future returned by the function completes the returned future with null.
+   * @return future of the value of the future returned by the function.
+   */
+  @NotNull
+  public static <T, R> CompletableFuture<R> compose(@NotNull CompletableFuture<T> source,
+      @NotNull Function<? super T, CompletableFuture<R>> function) {
+    CompletableFuture<R> result = propagateCancellation(new CompletableFuture<>(), source);
+    source.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        result.completeExceptionally(throwable);
+        return;
+      }
+      CompletableFuture<R> next;
+      try {
+        next = function.apply(value);
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      if (next == null) {
+        result.complete(null);
+        return;
+      }
+      propagateCancellation(result, next);
+      next.whenComplete((nextValue, nextThrowable) -> {
+        if (nextThrowable != null) {
+          result.completeExceptionally(nextThrowable);
+        } else {
+          result.complete(nextValue);
+        }
+      });
+    });
+    return result;
+  }
+}
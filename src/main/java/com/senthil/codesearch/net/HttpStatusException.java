@@ -0,0 +1,32 @@
+package com.senthil.codesearch.net;
+
+import java.io.IOException;
+
+
+/**
+ * Thrown when the code search server answers a request with an error status.
+ */
+public class HttpStatusException extends IOException {
+
+  private final int statusCode;
+
+  /**
+   * @param statusCode http status code of the response.
+   * @param reasonPhrase reason phrase of the response.
+   */
+  public HttpStatusException(int statusCode, String reasonPhrase) {
+    super("The code search server answered " + statusCode + " " + reasonPhrase);
+    this.statusCode = statusCode;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return true if the server failed and the request may succeed later, false if the request itself was refused.
+   */
+  public boolean isServerError() {
+    return statusCode >= 500;
+  }
+}
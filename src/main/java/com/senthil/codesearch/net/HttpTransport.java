@@ -0,0 +1,195 @@
+package com.senthil.codesearch.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Non blocking http transport shared by the searchers.
+ * Requests are executed by the I/O reactor and the returned futures are completed from the I/O callbacks,
+ * so a request in flight does not hold a thread.
+ * Connections are pooled and kept alive between the requests, so repeated searches to the same host
+ * do not have to pay for a new connection (and TLS handshake) each time.
+ */
+public class HttpTransport implements Closeable {
+
+  private final HttpTransportSettings settings;
+  private final PoolingNHttpClientConnectionManager connectionManager;
+  private final RequestConfig requestConfig;
+  private final CloseableHttpAsyncClient httpClient;
+  private final ScheduledFuture<?> idleConnectionEvictor;
+
+  /**
+   * @param settings transport tuning parameters.
+   * @param scheduler used to periodically evict idle connections from the pool.
+   * @throws IOReactorException if the I/O reactor could not be started.
+   */
+  public HttpTransport(@NotNull HttpTransportSettings settings, @NotNull ScheduledExecutorService scheduler)
+      throws IOReactorException {
+    this.settings = settings;
+    IOReactorConfig reactorConfig = IOReactorConfig.custom()
+        .setConnectTimeout(settings.getConnectTimeOut())
+        .setSoTimeout(settings.getReadTimeOut())
+        .setSoKeepAlive(true)
+        .build();
+    connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+    connectionManager.setMaxTotal(settings.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+    requestConfig = RequestConfig.custom()
+        .setConnectTimeout(settings.getConnectTimeOut())
+        .setSocketTimeout(settings.getReadTimeOut())
+        .setConnectionRequestTimeout(settings.getLeaseTimeOut())
+        .build();
+
+    httpClient = HttpAsyncClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(createKeepAliveStrategy(settings.getDefaultKeepAlive()))
+        .build();
+    httpClient.start();
+
+    //the async client does not evict idle connections by itself.
+    idleConnectionEvictor = scheduler.scheduleWithFixedDelay(() -> {
+      connectionManager.closeExpiredConnections();
+      connectionManager.closeIdleConnections(settings.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+    }, settings.getMaxIdleTime(), settings.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Executes the request asynchronously.
+   * The returned future is completed by the I/O reactor once the whole response has been received.
+   * The response entity is buffered in memory, so the connection is already back in the pool when the future completes.
+   * @param request http request
+   * @return future of the http response. The future completes exceptionally if the request fails or times out.
+   */
+  @NotNull
+  public CompletableFuture<HttpResponse> execute(@NotNull HttpRequestBase request) {
+    if (request.getConfig() == null) {
+      request.setConfig(requestConfig);
+    }
+    CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    Future<HttpResponse> exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+      @Override
+      public void completed(HttpResponse response) {
+        result.complete(response);
+      }
+
+      @Override
+      public void failed(Exception ex) {
+        result.completeExceptionally(ex);
+      }
+
+      @Override
+      public void cancelled() {
+        result.cancel(false);
+      }
+    });
+    //cancelling the result or aborting the request aborts the exchange, which releases its connection.
+    request.setCancellable(() -> exchange.cancel(true));
+    return Futures.propagateCancellation(result, exchange);
+  }
+
+  /**
+   * Executes the request asynchronously, without buffering the response.
+   * The returned future is completed as soon as the response headers have been received. The entity content is a
+   * blocking stream that receives the body as it arrives, so it has to be read outside the I/O thread and closed
+   * once done, which releases the connection back to the pool.
+   * @param request http request
+   * @return future of the http response. The future completes exceptionally if the request fails or times out.
+   */
+  @NotNull
+  public CompletableFuture<HttpResponse> stream(@NotNull HttpRequestBase request) {
+    if (request.getConfig() == null) {
+      request.setConfig(requestConfig);
+    }
+    CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    Future<HttpResponse> exchange = httpClient.execute(HttpAsyncMethods.create(request),
+        new StreamingResponseConsumer(result),
+        new FutureCallback<HttpResponse>() {
+          @Override
+          public void completed(HttpResponse response) {
+            result.complete(response);
+          }
+
+          @Override
+          public void failed(Exception ex) {
+            result.completeExceptionally(ex);
+          }
+
+          @Override
+          public void cancelled() {
+            result.cancel(false);
+          }
+        });
+    //the result is completed with the headers, the request is aborted to stop the exchange while the body is read.
+    request.setCancellable(() -> exchange.cancel(true));
+    return Futures.propagateCancellation(result, exchange);
+  }
+
+  /**
+   * Aborts the request when the future is cancelled, even if the response was already received.
+   * @param future future derived from the response of the request.
+   * @param request request executed by this transport.
+   * @return the future.
+   */
+  @NotNull
+  public static <T> CompletableFuture<T> abortOnCancel(@NotNull CompletableFuture<T> future,
+      @NotNull HttpRequestBase request) {
+    future.whenComplete((value, throwable) -> {
+      if (future.isCancelled()) {
+        request.abort();
+      }
+    });
+    return future;
+  }
+
+  @NotNull
+  public HttpTransportSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * @return current usage of the connection pool.
+   */
+  @NotNull
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  @Override
+  public void close() throws IOException {
+    idleConnectionEvictor.cancel(false);
+    httpClient.close();
+  }
+
+  /**
+   * Uses the keep alive duration sent by the server, or the default duration if the server did not send one.
+   */
+  private static ConnectionKeepAliveStrategy createKeepAliveStrategy(long defaultKeepAlive) {
+    return (response, context) -> {
+      long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+    };
+  }
+}
@@ -0,0 +1,126 @@
+package com.senthil.codesearch.net;
+
+/**
+ * Tuning parameters for the http transport used by the searchers.
+ * The defaults can be overridden with system properties (eg. -Dcodesearch.http.maxConnectionsPerRoute=10).
+ */
+public class HttpTransportSettings {
+
+  private static final String PROPERTY_PREFIX = "codesearch.http.";
+
+  /**
+   * Maximum number of pooled connections across all the hosts.
+   */
+  private int maxConnections = 20;
+  /**
+   * Maximum number of pooled connections to a single host.
+   */
+  private int maxConnectionsPerRoute = 10;
+  /**
+   * time out in milliseconds for establishing a connection.
+   */
+  private int connectTimeOut = 5000;
+  /**
+   * time out in milliseconds for waiting for data once connected.
+   */
+  private int readTimeOut = 15000;
+  /**
+   * time out in milliseconds for leasing a connection from the pool.
+   */
+  private int leaseTimeOut = 10000;
+  /**
+   * Connections idle for longer than this duration (in milliseconds) are evicted from the pool.
+   */
+  private long maxIdleTime = 30000;
+  /**
+   * Keep alive duration in milliseconds if the server does not send one.
+   */
+  private long defaultKeepAlive = 60000;
+
+  /**
+   * @return settings with the default values, overridden by the system properties if present.
+   */
+  public static HttpTransportSettings fromSystemProperties() {
+    HttpTransportSettings defaults = new HttpTransportSettings();
+    return new HttpTransportSettings().setMaxConnections(
+        Integer.getInteger(PROPERTY_PREFIX + "maxConnections", defaults.maxConnections))
+        .setMaxConnectionsPerRoute(
+            Integer.getInteger(PROPERTY_PREFIX + "maxConnectionsPerRoute", defaults.maxConnectionsPerRoute))
+        .setConnectTimeOut(Integer.getInteger(PROPERTY_PREFIX + "connectTimeOut", defaults.connectTimeOut))
+        .setReadTimeOut(Integer.getInteger(PROPERTY_PREFIX + "readTimeOut", defaults.readTimeOut))
+        .setLeaseTimeOut(Integer.getInteger(PROPERTY_PREFIX + "leaseTimeOut", defaults.leaseTimeOut))
+        .setMaxIdleTime(Long.getLong(PROPERTY_PREFIX + "maxIdleTime", defaults.maxIdleTime))
+        .setDefaultKeepAlive(Long.getLong(PROPERTY_PREFIX + "defaultKeepAlive", defaults.defaultKeepAlive));
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public HttpTransportSettings setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+    return this;
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public HttpTransportSettings setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    return this;
+  }
+
+  public int getConnectTimeOut() {
+    return connectTimeOut;
+  }
+
+  public HttpTransportSettings setConnectTimeOut(int connectTimeOut) {
+    this.connectTimeOut = connectTimeOut;
+    return this;
+  }
+
+  public int getReadTimeOut() {
+    return readTimeOut;
+  }
+
+  public HttpTransportSettings setReadTimeOut(int readTimeOut) {
+    this.readTimeOut = readTimeOut;
+    return this;
+  }
+
+  public int getLeaseTimeOut() {
+    return leaseTimeOut;
+  }
+
+  public HttpTransportSettings setLeaseTimeOut(int leaseTimeOut) {
+    this.leaseTimeOut = leaseTimeOut;
+    return this;
+  }
+
+  public long getMaxIdleTime() {
+    return maxIdleTime;
+  }
+
+  public HttpTransportSettings setMaxIdleTime(long maxIdleTime) {
+    this.maxIdleTime = maxIdleTime;
+    return this;
+  }
+
+  public long getDefaultKeepAlive() {
+    return defaultKeepAlive;
+  }
+
+  public HttpTransportSettings setDefaultKeepAlive(long defaultKeepAlive) {
+    this.defaultKeepAlive = defaultKeepAlive;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "HttpTransportSettings{" + "maxConnections=" + maxConnections + ", maxConnectionsPerRoute="
+        + maxConnectionsPerRoute + ", connectTimeOut=" + connectTimeOut + ", readTimeOut=" + readTimeOut
+        + ", leaseTimeOut=" + leaseTimeOut + ", maxIdleTime=" + maxIdleTime + ", defaultKeepAlive="
+        + defaultKeepAlive + '}';
+  }
+}
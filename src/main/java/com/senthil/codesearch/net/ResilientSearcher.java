@@ -0,0 +1,215 @@
+package com.senthil.codesearch.net;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Retries the failed searches and stops sending searches while the server keeps failing.
+ * A search fails if it completes exceptionally or with null. Only the transient failures, an I/O error, a timeout or a
+ * server error, are retried after a random delay of up to an exponentially growing backoff, so that the retries of
+ * many searches are spread. They are counted by a circuit breaker, the searches are rejected with a
+ * {@link CircuitOpenException} while it is open. The other failures, e.g. an invalid request or response, give the same
+ * answer when sent again and fail at once.
+ *
+ * Unlike the delegate, the searches never return null and fail exceptionally instead.
+ * The contents and the highlight data are forwarded as is, a null is a valid answer for them.
+ */
+public class ResilientSearcher extends ForwardingSearcher {
+
+  private static final Logger LOG = Logger.getInstance(ResilientSearcher.class);
+
+  /**
+   * no of times a search is sent, including the first one.
+   */
+  private static final int MAX_ATTEMPTS = 3;
+  /**
+   * backoff in ms before the first retry, doubled for every retry.
+   */
+  private static final long BASE_BACKOFF = 200;
+  private static final long MAX_BACKOFF = 2000;
+  /**
+   * no of consecutive failures opening the circuit.
+   */
+  private static final int FAILURE_THRESHOLD = 5;
+  /**
+   * time in ms before the server is probed again, doubled while the probes fail.
+   */
+  private static final long MIN_OPEN_TIME = TimeUnit.SECONDS.toMillis(10);
+  private static final long MAX_OPEN_TIME = TimeUnit.MINUTES.toMillis(2);
+
+  private final CircuitBreaker circuitBreaker;
+
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  public ResilientSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler) {
+    this(delegate, scheduler, new CircuitBreaker(FAILURE_THRESHOLD, MIN_OPEN_TIME, MAX_OPEN_TIME));
+  }
+
+  ResilientSearcher(@NotNull Searcher delegate, @NotNull ScheduledExecutorService scheduler,
+      @NotNull CircuitBreaker circuitBreaker) {
+    super(delegate, scheduler);
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchFacet>> getFacets(@NotNull CodeSearchRequest request) {
+    return call(() -> getDelegate().getFacets(request), () -> true);
+  }
+
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request) {
+    return call(() -> getDelegate().getResults(request), () -> true);
+  }
+
+  /**
+   * A stream is retried only if it failed before any result was handed to the consumer.
+   */
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    AtomicBoolean received = new AtomicBoolean();
+    return call(() -> getDelegate().streamResults(request, batch -> {
+      received.set(true);
+      batchConsumer.accept(batch);
+    }), () -> !received.get());
+  }
+
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    return call(() -> getDelegate().search(request), () -> true);
+  }
+
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * @return no of searches rejected while the circuit was open.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @param call sends the search to the delegate.
+   * @param retryable checks if the search can be sent again after a failure.
+   */
+  private <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, BooleanSupplier retryable) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attempt(call, retryable, result, 1);
+    return result;
+  }
+
+  private <T> void attempt(Supplier<CompletableFuture<T>> call, BooleanSupplier retryable,
+      CompletableFuture<T> result, int attempt) {
+    //the search may have been cancelled while waiting for the retry.
+    if (result.isDone()) {
+      return;
+    }
+    if (!circuitBreaker.allowRequest()) {
+      rejectedCount.incrementAndGet();
+      result.completeExceptionally(new CircuitOpenException(circuitBreaker.getRetryDelay()));
+      return;
+    }
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      circuitBreaker.onAbandoned();
+      result.completeExceptionally(e);
+      return;
+    }
+    if (future == null) {
+      //the request could not be built or sent, sending it again gives the same result.
+      circuitBreaker.onAbandoned();
+      result.completeExceptionally(new IOException("Unable to send the search"));
+      return;
+    }
+    Futures.propagateCancellation(result, future);
+    future.whenComplete((value, throwable) -> {
+      if (future.isCancelled()) {
+        circuitBreaker.onAbandoned();
+        return;
+      }
+      if (throwable == null && value != null) {
+        circuitBreaker.onSuccess();
+        result.complete(value);
+        return;
+      }
+      Throwable cause = throwable == null ? new IOException("No response from the code search server")
+          : unwrap(throwable);
+      if (!isTransient(cause)) {
+        //sending the search again gives the same answer, and it tells nothing about the health of the server.
+        circuitBreaker.onAbandoned();
+        result.completeExceptionally(cause);
+        return;
+      }
+      circuitBreaker.onFailure();
+      if (attempt >= MAX_ATTEMPTS || !retryable.getAsBoolean()) {
+        result.completeExceptionally(cause);
+        return;
+      }
+      retry(call, retryable, result, attempt, cause);
+    });
+  }
+
+  /**
+   * Sends the search again after a random delay between 0 and the backoff of the attempt.
+   */
+  private <T> void retry(Supplier<CompletableFuture<T>> call, BooleanSupplier retryable, CompletableFuture<T> result,
+      int attempt, Throwable cause) {
+    long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << (attempt - 1));
+    long delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+    LOG.debug("Retrying search after ms ", delay);
+    retryCount.incrementAndGet();
+    try {
+      getScheduler().schedule(() -> attempt(call, retryable, result, attempt + 1), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * @return true if the search may succeed when sent again: an I/O error other than a client error, or a timeout.
+   */
+  static boolean isTransient(Throwable cause) {
+    if (cause instanceof HttpStatusException) {
+      return ((HttpStatusException) cause).isServerError();
+    }
+    return cause instanceof IOException || cause instanceof TimeoutException;
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+        && throwable.getCause() != null) {
+      return throwable.getCause();
+    }
+    return throwable;
+  }
+
+  @Override
+  public String toString() {
+    return "ResilientSearcher{" + "circuitBreaker=" + circuitBreaker + ", retries=" + retryCount.get()
+        + ", rejected=" + rejectedCount.get() + '}';
+  }
+}
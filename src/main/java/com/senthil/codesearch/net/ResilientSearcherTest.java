@@ -0,0 +1,153 @@
+package com.senthil.codesearch.net;
+
+import com.google.gson.JsonParseException;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.net.github.SearchCodeRequest;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ResilientSearcherTest {
+
+  private static final CodeSearchResponse RESPONSE = CodeSearchResponse.empty(null);
+
+  private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+  private final AtomicLong clock = new AtomicLong(1_500_000_000_000L);
+  /**
+   * no of searches failing before the delegate responds.
+   */
+  private final AtomicInteger failureCount = new AtomicInteger(Integer.MAX_VALUE);
+  private final AtomicInteger sentCount = new AtomicInteger();
+  private volatile Throwable failureCause = new IOException("failed");
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private ResilientSearcher newSearcher(int failureThreshold) {
+    Searcher delegate = new ForwardingSearcher(new DummyCodeSearcher(), scheduler) {
+      @Override
+      public CompletableFuture<CodeSearchResponse> search(CodeSearchRequest request) {
+        sentCount.incrementAndGet();
+        if (failureCount.getAndDecrement() > 0) {
+          return Futures.failed(failureCause);
+        }
+        return CompletableFuture.completedFuture(RESPONSE);
+      }
+    };
+    return new ResilientSearcher(delegate, scheduler,
+        new CircuitBreaker(failureThreshold, 10_000, 120_000, clock::get));
+  }
+
+  private static Throwable failure(CompletableFuture<?> future) throws InterruptedException {
+    try {
+      future.get(10, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (TimeoutException e) {
+      throw new AssertionError(e);
+    }
+    throw new AssertionError("the search did not fail");
+  }
+
+  @Test
+  public void testRetriesUntilSuccess() throws Exception {
+    ResilientSearcher searcher = newSearcher(5);
+    failureCount.set(2);
+
+    Assert.assertSame(RESPONSE, searcher.search(new SearchCodeRequest()).get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(3, sentCount.get());
+    Assert.assertEquals(2, searcher.getRetryCount());
+    Assert.assertEquals(0, searcher.getRejectedCount());
+  }
+
+  @Test
+  public void testFailsAfterMaxAttempts() throws Exception {
+    ResilientSearcher searcher = newSearcher(5);
+
+    Throwable failure = failure(searcher.search(new SearchCodeRequest()));
+    Assert.assertTrue(failure instanceof IOException);
+    Assert.assertFalse(failure instanceof CircuitOpenException);
+    Assert.assertEquals(3, sentCount.get());
+    Assert.assertEquals(2, searcher.getRetryCount());
+  }
+
+  @Test
+  public void testRejectsWhileCircuitIsOpen() throws Exception {
+    ResilientSearcher searcher = newSearcher(2);
+
+    //the second attempt opens the circuit, the third one is rejected.
+    Throwable failure = failure(searcher.search(new SearchCodeRequest()));
+    Assert.assertTrue(failure instanceof CircuitOpenException);
+    Assert.assertEquals(10_000, ((CircuitOpenException) failure).getRetryDelay());
+    Assert.assertEquals(2, sentCount.get());
+    Assert.assertEquals(2, searcher.getRetryCount());
+    Assert.assertEquals(1, searcher.getRejectedCount());
+
+    clock.addAndGet(3_000);
+    failure = failure(searcher.search(new SearchCodeRequest()));
+    Assert.assertEquals(7_000, ((CircuitOpenException) failure).getRetryDelay());
+    Assert.assertEquals(2, sentCount.get());
+    Assert.assertEquals(2, searcher.getRejectedCount());
+
+    //the probe succeeds and closes the circuit.
+    clock.addAndGet(7_000);
+    failureCount.set(0);
+    Assert.assertSame(RESPONSE, searcher.search(new SearchCodeRequest()).get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(3, sentCount.get());
+  }
+
+  @Test
+  public void testRetriesServerErrors() throws Exception {
+    ResilientSearcher searcher = newSearcher(5);
+    failureCount.set(1);
+    failureCause = new HttpStatusException(503, "Service Unavailable");
+
+    Assert.assertSame(RESPONSE, searcher.search(new SearchCodeRequest()).get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(2, sentCount.get());
+    Assert.assertEquals(1, searcher.getRetryCount());
+  }
+
+  @Test
+  public void testClientErrorsFailAtOnce() throws Exception {
+    ResilientSearcher searcher = newSearcher(1);
+    failureCause = new HttpStatusException(400, "Bad Request");
+
+    Throwable failure = failure(searcher.search(new SearchCodeRequest()));
+    Assert.assertEquals(400, ((HttpStatusException) failure).getStatusCode());
+    Assert.assertEquals(1, sentCount.get());
+    Assert.assertEquals(0, searcher.getRetryCount());
+
+    //the failure does not open the circuit.
+    failureCause = new CompletionException(new JsonParseException("invalid"));
+    failure = failure(searcher.search(new SearchCodeRequest()));
+    Assert.assertTrue(failure instanceof JsonParseException);
+    Assert.assertEquals(2, sentCount.get());
+    Assert.assertEquals(0, searcher.getRejectedCount());
+
+    failureCount.set(0);
+    Assert.assertSame(RESPONSE, searcher.search(new SearchCodeRequest()).get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTransientFailures() {
+    Assert.assertTrue(ResilientSearcher.isTransient(new IOException("reset")));
+    Assert.assertTrue(ResilientSearcher.isTransient(new TimeoutException()));
+    Assert.assertTrue(ResilientSearcher.isTransient(new HttpStatusException(502, "Bad Gateway")));
+    Assert.assertFalse(ResilientSearcher.isTransient(new HttpStatusException(404, "Not Found")));
+    Assert.assertFalse(ResilientSearcher.isTransient(new IllegalArgumentException("invalid uri")));
+    Assert.assertFalse(ResilientSearcher.isTransient(new JsonParseException("invalid")));
+  }
+}
@@ -0,0 +1,24 @@
+package com.senthil.codesearch.net;
+
+import com.intellij.util.messages.Topic;
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Notified when a stale cached response has been revalidated and the fresh response differs from the cached one.
+ * The notifications are published on the application message bus from a background thread.
+ */
+public interface SearchRefreshListener {
+
+  Topic<SearchRefreshListener> TOPIC = Topic.create("codesearch response refreshed", SearchRefreshListener.class);
+
+  void facetsRefreshed(@NotNull CodeSearchRequest request, @NotNull List<CodeSearchFacet> facets);
+
+  void resultsRefreshed(@NotNull CodeSearchRequest request, @NotNull List<CodeSearchResult> results);
+
+  void searchRefreshed(@NotNull CodeSearchRequest request, @NotNull CodeSearchResponse response);
+}
@@ -3,9 +3,11 @@ package com.senthil.codesearch.net;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.codesearch.model.CodeSearchFacet;
 import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.ContentRange;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -26,12 +28,22 @@ public interface Searcher {
   CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request);
 
   /**
-   * Returns the search results for the given search request.
+   * Returns the search results for the given search request, handing them to the consumer in batches as they are
+   * received, so that the first results can be displayed while the rest are still being downloaded.
+   * The consumer is called from a background thread.
    * @param request search request.
-   * @param delayInMilliseconds delay in milliseconds after which the task will be run.
-   * @return a list of search results.
+   * @param batchConsumer receives the results in order, in one or more batches.
+   * @return the complete list of search results.
+   */
+  CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer);
+
+  /**
+   * Returns the facets and the first page of results for the given search request in a single round trip.
+   * @param request search request.
+   * @return facets and results for the search request.
    */
-  ScheduledFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request, long delayInMilliseconds);
+  CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request);
 
   /**
    * Retrives the content of the given file. This Function may not be called if getResults() contains the contents as well.
@@ -41,6 +53,16 @@ public interface Searcher {
    */
   CompletableFuture<String> getContents(@NotNull String productName, @NotNull String filePath);
 
+  /**
+   * Returns a part of the content of the result, so that a large file can be displayed before it is downloaded.
+   * The returned range may be longer than requested, or hold the whole content if the server does not support ranges.
+   * @param result the search result.
+   * @param start offset of the first byte of the range in the UTF-8 encoded content.
+   * @param length maximum no of bytes requested.
+   * @return the range, or null if the content is not available.
+   */
+  CompletableFuture<ContentRange> getContentRange(@NotNull CodeSearchResult result, long start, int length);
+
   /**
    * Returns the highlight data for the given query for the file.
    * @param productName multiproduct name
@@ -1,7 +1,6 @@
 package com.senthil.codesearch.net;
 
 import com.senthil.codesearch.net.github.SearchCodeRequest;
-import com.senthil.codesearch.net.github.SearchCodeSearcher;
 
 
 /**
@@ -16,10 +15,10 @@ public class SearcherFactory {
 
   /**
    *
-   * @return a reference to the searcher
+   * @return a reference to the searcher shared by the application
    */
   public static Searcher getSearcher() {
-    return new SearchCodeSearcher();
+    return SearcherService.getInstance().getSearcher();
   }
 
   /**
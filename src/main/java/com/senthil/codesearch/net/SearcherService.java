@@ -0,0 +1,266 @@
+package com.senthil.codesearch.net;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.cache.CachingSearcher;
+import com.senthil.codesearch.cache.DiskCache;
+import com.senthil.codesearch.cache.PersistentSearchCache;
+import com.senthil.codesearch.cache.SearchResponseCodec;
+import com.senthil.codesearch.net.github.SearchCodeSearcher;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Application level service that owns the resources shared by all the searches - the http transport and the executors.
+ * A single searcher is created per application and the resources are released when the plugin is disposed.
+ */
+public class SearcherService implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(SearcherService.class);
+
+  /**
+   * Number of threads used for parsing search responses.
+   */
+  private static final int WORKER_THREADS = 5;
+  /**
+   * Maximum number of responses waiting for a worker thread. The searches whose response arrives when the queue is
+   * full fail, see {@link Futures#applyAsync}.
+   */
+  private static final int WORKER_QUEUE_SIZE = 100;
+  /**
+   * Number of threads used for the retries and other delayed tasks.
+   */
+  private static final int SCHEDULER_THREADS = 2;
+  /**
+   * Number of low priority threads downloading the results before they are opened.
+   */
+  private static final int PREFETCH_THREADS = 2;
+  /**
+   * Maximum number of results waiting to be prefetched, the oldest are dropped.
+   */
+  private static final int PREFETCH_QUEUE_SIZE = 32;
+  /**
+   * Time in seconds after which an idle thread is stopped.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 60;
+  /**
+   * Time in seconds to wait for the running searches during shutdown.
+   */
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 2;
+  /**
+   * Maximum number of facets and results kept in the in-memory cache.
+   */
+  private static final long MEMORY_CACHE_MAX_WEIGHT = 5000;
+  /**
+   * Time in milliseconds for which a cached response is served without revalidation.
+   * Can be overridden with -Dcodesearch.cache.freshFor.
+   */
+  private static final long MEMORY_CACHE_FRESH_FOR = TimeUnit.MINUTES.toMillis(1);
+  /**
+   * Time in milliseconds after which a cached response is too stale to be served, even while it is revalidated.
+   * Can be overridden with -Dcodesearch.cache.maxStaleness.
+   */
+  private static final long MEMORY_CACHE_MAX_STALENESS = TimeUnit.MINUTES.toMillis(10);
+  /**
+   * Name of the disk cache directory inside the IDE system directory.
+   */
+  private static final String DISK_CACHE_DIRECTORY = "codesearch-cache";
+  /**
+   * Size budget in bytes for the disk cache.
+   */
+  private static final long DISK_CACHE_MAX_BYTES = 50L * 1024 * 1024;
+  /**
+   * Maximum size in bytes of a disk cache segment file.
+   */
+  private static final int DISK_CACHE_SEGMENT_SIZE = 4 * 1024 * 1024;
+  /**
+   * Time in milliseconds after which a response cached on the disk expires.
+   */
+  private static final long DISK_CACHE_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(72);
+
+  private final HttpTransport transport;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final ThreadPoolExecutor prefetchExecutor;
+  private final ResilientSearcher resilientSearcher;
+  private final CoalescingSearcher coalescingSearcher;
+  private final DiskCache diskCache;
+  private final CachingSearcher searcher;
+  /**
+   * no of results opened with a prefetched content, and opened without content.
+   */
+  private final AtomicLong prefetchHitCount = new AtomicLong();
+  private final AtomicLong prefetchMissCount = new AtomicLong();
+
+  @NotNull
+  public static SearcherService getInstance() {
+    return ServiceManager.getService(SearcherService.class);
+  }
+
+  public SearcherService() {
+    executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(WORKER_QUEUE_SIZE), newThreadFactory("CodeSearch worker"));
+    executor.allowCoreThreadTimeOut(true);
+
+    prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(PREFETCH_QUEUE_SIZE),
+        newThreadFactory("CodeSearch prefetch", Thread.MIN_PRIORITY), new ThreadPoolExecutor.DiscardOldestPolicy());
+    prefetchExecutor.allowCoreThreadTimeOut(true);
+
+    scheduler = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, newThreadFactory("CodeSearch scheduler"));
+    scheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    scheduler.allowCoreThreadTimeOut(true);
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    try {
+      transport = new HttpTransport(HttpTransportSettings.fromSystemProperties(), scheduler);
+    } catch (IOReactorException e) {
+      throw new IllegalStateException("Unable to start the http transport", e);
+    }
+
+    SearchCodeSearcher searchCodeSearcher = new SearchCodeSearcher(transport, executor);
+    diskCache = openDiskCache();
+    PersistentSearchCache persistentCache = null;
+    if (diskCache != null) {
+      persistentCache = new PersistentSearchCache(diskCache, new SearchResponseCodec(searchCodeSearcher::newResult),
+          executor);
+      searchCodeSearcher.setContentCache(persistentCache);
+    }
+
+    //identical searches share a request and its retries, the cache keeps the responses of the retried searches.
+    resilientSearcher = new ResilientSearcher(searchCodeSearcher, scheduler);
+    coalescingSearcher = new CoalescingSearcher(resilientSearcher, scheduler);
+    searcher = new CachingSearcher(coalescingSearcher, scheduler, MEMORY_CACHE_MAX_WEIGHT,
+        Long.getLong("codesearch.cache.maxStaleness", MEMORY_CACHE_MAX_STALENESS), persistentCache);
+    searcher.setFreshFor(Long.getLong("codesearch.cache.freshFor", MEMORY_CACHE_FRESH_FOR));
+    Application application = ApplicationManager.getApplication();
+    if (application != null) {
+      searcher.setRefreshListener(application.getMessageBus().syncPublisher(SearchRefreshListener.TOPIC));
+    }
+  }
+
+  /**
+   * @return the disk cache or null if it could not be opened, in which case the responses are cached only in memory.
+   */
+  private static DiskCache openDiskCache() {
+    File directory = new File(PathManager.getSystemPath(), DISK_CACHE_DIRECTORY);
+    try {
+      return new DiskCache(directory, DISK_CACHE_MAX_BYTES, DISK_CACHE_SEGMENT_SIZE, DISK_CACHE_TIME_TO_LIVE);
+    } catch (IOException e) {
+      LOG.warn("Unable to open codesearch disk cache " + directory, e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the searcher shared by the application.
+   */
+  @NotNull
+  public Searcher getSearcher() {
+    return searcher;
+  }
+
+  /**
+   * @return executor used for parsing search responses.
+   */
+  @NotNull
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * @return executor used for delayed and periodic tasks.
+   */
+  @NotNull
+  public ScheduledExecutorService getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * @return low priority executor with a bounded queue, used to download the results before they are opened.
+   */
+  @NotNull
+  public ThreadPoolExecutor getPrefetchExecutor() {
+    return prefetchExecutor;
+  }
+
+  /**
+   * Records whether the content of an opened result was prefetched.
+   */
+  public void recordPrefetchedOpen(boolean prefetched) {
+    (prefetched ? prefetchHitCount : prefetchMissCount).incrementAndGet();
+  }
+
+  /**
+   * @return no of searches waiting for a response from the server.
+   */
+  public int getInFlightCount() {
+    return coalescingSearcher.getInFlightCount();
+  }
+
+  /**
+   * @return a snapshot of the connection pool and the executors usage, the request counters and the cache counters.
+   */
+  @NotNull
+  public SearcherStats getStats() {
+    return new SearcherStats(transport.getPoolStats(), executor.getActiveCount(), executor.getPoolSize(),
+        executor.getQueue().size(), executor.getCompletedTaskCount(), scheduler.getQueue().size(),
+        coalescingSearcher.getRequestCount(), coalescingSearcher.getCollapsedCount(),
+        resilientSearcher.getRetryCount(), resilientSearcher.getRejectedCount(), prefetchHitCount.get(),
+        prefetchMissCount.get(), searcher.getStats(), searcher.getPersistentStats());
+  }
+
+  @Override
+  public void dispose() {
+    LOG.debug("Shutting down codesearch searcher ", getStats());
+    scheduler.shutdownNow();
+    prefetchExecutor.shutdownNow();
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    try {
+      transport.close();
+    } catch (Exception e) {
+      LOG.warn("Exception closing http client", e);
+    }
+    if (diskCache != null) {
+      diskCache.close();
+    }
+  }
+
+  private static ThreadFactory newThreadFactory(String name) {
+    return newThreadFactory(name, Thread.NORM_PRIORITY);
+  }
+
+  private static ThreadFactory newThreadFactory(String name, int priority) {
+    AtomicInteger threadCount = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + " " + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(priority);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,164 @@
+package com.senthil.codesearch.net;
+
+import com.senthil.codesearch.cache.CacheStats;
+import org.apache.http.pool.PoolStats;
+
+
+/**
+ * Snapshot of the resources used by the searcher service.
+ */
+public class SearcherStats {
+
+  /**
+   * http connection pool usage.
+   */
+  private final PoolStats connectionStats;
+  /**
+   * no of worker threads processing a search.
+   */
+  private final int activeWorkers;
+  /**
+   * no of worker threads alive.
+   */
+  private final int workerPoolSize;
+  /**
+   * no of searches waiting for a worker.
+   */
+  private final int queuedTasks;
+  private final long completedTasks;
+  /**
+   * no of delayed tasks waiting to be run.
+   */
+  private final int scheduledTasks;
+  /**
+   * no of facets and results requests received.
+   */
+  private final long searchRequests;
+  /**
+   * no of requests that shared the response of an identical in flight request.
+   */
+  private final long collapsedRequests;
+  /**
+   * no of searches sent again after a failure.
+   */
+  private final long retriedRequests;
+  /**
+   * no of searches rejected while the server was failing.
+   */
+  private final long rejectedRequests;
+  /**
+   * no of results opened with a prefetched content, and opened without content.
+   */
+  private final long prefetchHits;
+  private final long prefetchMisses;
+  /**
+   * counters of the in-memory response cache.
+   */
+  private final CacheStats memoryCacheStats;
+  /**
+   * counters of the disk response cache, null if the disk cache is not available.
+   */
+  private final CacheStats diskCacheStats;
+
+  public SearcherStats(PoolStats connectionStats, int activeWorkers, int workerPoolSize, int queuedTasks,
+      long completedTasks, int scheduledTasks, long searchRequests, long collapsedRequests,
+      long retriedRequests, long rejectedRequests, long prefetchHits, long prefetchMisses,
+      CacheStats memoryCacheStats, CacheStats diskCacheStats) {
+    this.connectionStats = connectionStats;
+    this.activeWorkers = activeWorkers;
+    this.workerPoolSize = workerPoolSize;
+    this.queuedTasks = queuedTasks;
+    this.completedTasks = completedTasks;
+    this.scheduledTasks = scheduledTasks;
+    this.searchRequests = searchRequests;
+    this.collapsedRequests = collapsedRequests;
+    this.retriedRequests = retriedRequests;
+    this.rejectedRequests = rejectedRequests;
+    this.prefetchHits = prefetchHits;
+    this.prefetchMisses = prefetchMisses;
+    this.memoryCacheStats = memoryCacheStats;
+    this.diskCacheStats = diskCacheStats;
+  }
+
+  public int getLeasedConnections() {
+    return connectionStats.getLeased();
+  }
+
+  public int getAvailableConnections() {
+    return connectionStats.getAvailable();
+  }
+
+  public int getPendingConnections() {
+    return connectionStats.getPending();
+  }
+
+  public int getActiveWorkers() {
+    return activeWorkers;
+  }
+
+  public int getWorkerPoolSize() {
+    return workerPoolSize;
+  }
+
+  public int getQueuedTasks() {
+    return queuedTasks;
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks;
+  }
+
+  public int getScheduledTasks() {
+    return scheduledTasks;
+  }
+
+  public long getSearchRequests() {
+    return searchRequests;
+  }
+
+  public long getCollapsedRequests() {
+    return collapsedRequests;
+  }
+
+  public long getRetriedRequests() {
+    return retriedRequests;
+  }
+
+  public long getRejectedRequests() {
+    return rejectedRequests;
+  }
+
+  public long getPrefetchHits() {
+    return prefetchHits;
+  }
+
+  public long getPrefetchMisses() {
+    return prefetchMisses;
+  }
+
+  /**
+   * @return the ratio of the results opened with a prefetched content, 0 if no result was opened.
+   */
+  public double getPrefetchHitRate() {
+    long opened = prefetchHits + prefetchMisses;
+    return opened == 0 ? 0 : (double) prefetchHits / opened;
+  }
+
+  public CacheStats getMemoryCacheStats() {
+    return memoryCacheStats;
+  }
+
+  public CacheStats getDiskCacheStats() {
+    return diskCacheStats;
+  }
+
+  @Override
+  public String toString() {
+    return "SearcherStats{" + "connections=" + connectionStats + ", activeWorkers=" + activeWorkers
+        + ", workerPoolSize=" + workerPoolSize + ", queuedTasks=" + queuedTasks + ", completedTasks=" + completedTasks
+        + ", scheduledTasks=" + scheduledTasks + ", searchRequests=" + searchRequests + ", collapsedRequests="
+        + collapsedRequests + ", retriedRequests=" + retriedRequests + ", rejectedRequests=" + rejectedRequests
+        + ", prefetchHits=" + prefetchHits + ", prefetchMisses=" + prefetchMisses + ", memoryCache=" + memoryCacheStats
+        + ", diskCache=" + diskCacheStats + '}';
+  }
+}
@@ -0,0 +1,74 @@
+package com.senthil.codesearch.net;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+
+/**
+ * Response consumer that hands the response to the caller as soon as the headers are received.
+ * The entity content is a blocking stream fed by the I/O reactor as the body arrives.
+ * When the buffer is full, the reactor stops reading from the connection until the caller has consumed some data.
+ */
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private final SharedInputBuffer buffer = new SharedInputBuffer(BUFFER_SIZE);
+  /**
+   * completed with the response once the headers are received.
+   */
+  private final CompletableFuture<HttpResponse> headersFuture;
+  private HttpResponse response;
+
+  StreamingResponseConsumer(CompletableFuture<HttpResponse> headersFuture) {
+    this.headersFuture = headersFuture;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse response) {
+    this.response = response;
+  }
+
+  @Override
+  protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+    BasicHttpEntity streamingEntity = new BasicHttpEntity();
+    streamingEntity.setContent(new ContentInputStream(buffer));
+    streamingEntity.setContentLength(entity.getContentLength());
+    streamingEntity.setContentType(entity.getContentType());
+    streamingEntity.setContentEncoding(entity.getContentEncoding());
+    response.setEntity(streamingEntity);
+    headersFuture.complete(response);
+  }
+
+  @Override
+  protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+    buffer.consumeContent(decoder, ioControl);
+  }
+
+  @Override
+  protected HttpResponse buildResult(HttpContext context) {
+    //responses without a body are handed over only when complete.
+    headersFuture.complete(response);
+    return response;
+  }
+
+  @Override
+  protected void releaseResources() {
+    if (getException() != null || getResult() == null) {
+      //the reader gets an error instead of a truncated body.
+      buffer.shutdown();
+    } else {
+      buffer.close();
+    }
+  }
+}
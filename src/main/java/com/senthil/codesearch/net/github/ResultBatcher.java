@@ -0,0 +1,44 @@
+package com.senthil.codesearch.net.github;
+
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * Groups the results decoded one at a time into batches, so that the consumer (usually the UI) is called once per
+ * batch instead of once per result. The batch size starts at one, so that the first result is handed over right
+ * away, and doubles up to the maximum batch size.
+ */
+class ResultBatcher implements Consumer<CodeSearchResult> {
+
+  private final Consumer<List<CodeSearchResult>> batchConsumer;
+  private final int maxBatchSize;
+  private int batchSize = 1;
+  private List<CodeSearchResult> batch = new ArrayList<>();
+
+  ResultBatcher(Consumer<List<CodeSearchResult>> batchConsumer, int maxBatchSize) {
+    this.batchConsumer = batchConsumer;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  @Override
+  public void accept(CodeSearchResult result) {
+    batch.add(result);
+    if (batch.size() >= batchSize) {
+      flush();
+      batchSize = Math.min(batchSize * 2, maxBatchSize);
+    }
+  }
+
+  /**
+   * Hands over the results received since the last batch.
+   */
+  void flush() {
+    if (!batch.isEmpty()) {
+      batchConsumer.accept(batch);
+      batch = new ArrayList<>();
+    }
+  }
+}
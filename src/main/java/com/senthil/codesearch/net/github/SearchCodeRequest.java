@@ -15,13 +15,42 @@ import org.apache.http.message.BasicNameValuePair;
  */
 public class SearchCodeRequest extends AbstractCodeSearchRequest {
 
+  /**
+   * maximum no of results per page supported by searchcode.
+   */
+  private static final int MAX_PAGE_SIZE = 100;
+
+  /**
+   * The page size can be overridden with -Dcodesearch.searchcode.pageSize.
+   */
+  public SearchCodeRequest() {
+    numToReturn = Integer.getInteger("codesearch.searchcode.pageSize", numToReturn);
+  }
+
+  /**
+   * searchcode returns pages of numToReturn results.
+   */
+  @Override
+  public int getPageStart() {
+    return start / getPageSize() * getPageSize();
+  }
+
+  @Override
+  public int getPageSize() {
+    return Math.max(1, Math.min(numToReturn, MAX_PAGE_SIZE));
+  }
+
   @Override
   public CodeSearchRequest setContext(SearchContext context) {
     return null;
   }
 
+  /**
+   * searchcode has no file name search, the name is searched as the query and kept for matching the results.
+   */
   @Override
   public CodeSearchRequest setFileName(String fileName) {
+    super.setFileName(fileName);
     setQuery(fileName);
     return this;
   }
@@ -47,10 +76,11 @@ public class SearchCodeRequest extends AbstractCodeSearchRequest {
     if (fileType == null) {
       params.add(new BasicNameValuePair("q", query));
     } else {
-      params.add(new BasicNameValuePair("q", query + "ext:" + fileType));
+      params.add(new BasicNameValuePair("q", query + " ext:" + fileType));
     }
 
-    params.add(new BasicNameValuePair("p", String.valueOf(start / 20)));
+    params.add(new BasicNameValuePair("p", String.valueOf(start / getPageSize())));
+    params.add(new BasicNameValuePair("per_page", String.valueOf(getPageSize())));
     if (facet != null) {
       params.add(new BasicNameValuePair("src", facet));
     }
@@ -0,0 +1,237 @@
+package com.senthil.codesearch.net.github;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.CodeSearchResultBatch;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+
+/**
+ * Decodes the searchcode.com response as the tokens arrive, without building a json tree.
+ * The results are created as soon as their object is read, so that they can be handed to the caller before
+ * the rest of the response is received. The results of a response are stored in a single batch.
+ */
+class SearchCodeResponseDecoder {
+
+  private final Supplier<CodeSearchResult> resultFactory;
+
+  SearchCodeResponseDecoder(@NotNull Supplier<CodeSearchResult> resultFactory) {
+    this.resultFactory = resultFactory;
+  }
+
+  /**
+   * @param reader response body.
+   * @param query the query string stored in the facets.
+   * @param facetId the facet the search is restricted to.
+   * @param resultConsumer called with each result as soon as it is decoded, may be null.
+   * @return the decoded response.
+   * @throws IOException if the response could not be read or is not valid json.
+   */
+  @NotNull
+  CodeSearchResponse decode(@NotNull Reader reader, String query, String facetId,
+      @Nullable Consumer<CodeSearchResult> resultConsumer) throws IOException {
+    long total = -1;
+    String matchTerm = null;
+    List<CodeSearchFacet> facets = new ArrayList<>();
+    List<CodeSearchResult> results = new ArrayList<>();
+    CodeSearchResultBatch batch = new CodeSearchResultBatch(resultFactory);
+    //no of results read before the matched term.
+    int pendingCount = 0;
+
+    try (JsonReader in = new JsonReader(reader)) {
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "total":
+            total = in.nextLong();
+            break;
+          case "matchterm":
+            matchTerm = nextString(in);
+            break;
+          case "source_filters":
+            readFacets(in, query, facets);
+            break;
+          case "results":
+            in.beginArray();
+            LineNumbers lineNumbers = new LineNumbers();
+            while (in.hasNext()) {
+              CodeSearchResult result = batch.newResult();
+              readResult(in, result, lineNumbers);
+              if (matchTerm == null) {
+                pendingCount++;
+              }
+              result.setHighlightLines(lineNumbers.values, lineNumbers.size, matchTerm);
+              results.add(result);
+              if (resultConsumer != null) {
+                resultConsumer.accept(result);
+              }
+            }
+            in.endArray();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+    }
+
+    if (total == 0L) {
+      return CodeSearchResponse.empty(facetId);
+    }
+    //the matched term came after the results, update the highlights of those results.
+    if (matchTerm != null) {
+      for (int i = 0; i < pendingCount; i++) {
+        results.get(i).setMatchedString(matchTerm);
+      }
+    }
+    return new CodeSearchResponse(facets, results, facetId);
+  }
+
+  private static void readFacets(JsonReader in, String query, List<CodeSearchFacet> facets) throws IOException {
+    in.beginArray();
+    while (in.hasNext()) {
+      String id = null;
+      String name = null;
+      int count = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "id":
+            id = nextString(in);
+            break;
+          case "source":
+            name = nextString(in);
+            break;
+          case "count":
+            count = in.nextInt();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      facets.add(new CodeSearchFacet(id, name, count, query));
+    }
+    in.endArray();
+  }
+
+  /**
+   * Reads a result object into the result.
+   * @param lineNumbers receives the highlighted line numbers, starting from 0.
+   */
+  private static void readResult(JsonReader in, CodeSearchResult result, LineNumbers lineNumbers)
+      throws IOException {
+    String fileName = null;
+    String repository = null;
+    String location = null;
+    lineNumbers.clear();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "filename":
+          fileName = nextString(in);
+          break;
+        case "name":
+          repository = nextString(in);
+          break;
+        case "location":
+          location = nextString(in);
+          break;
+        case "language":
+          result.setFileExtension(nextString(in));
+          break;
+        case "url":
+          result.setExternalLink(nextString(in));
+          break;
+        case "lines":
+          in.beginObject();
+          while (in.hasNext()) {
+            lineNumbers.add(parseLineNumber(in.nextName()) - 1);
+            in.skipValue();
+          }
+          in.endObject();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    result.setFileName(fileName).setProductName(repository).setFilePath(fileName + " in " + repository)
+        .setRepositoryPath(repositoryPath(location, fileName));
+  }
+
+  /**
+   * @param location directory of the file in the repository, such as {@code /src/main}.
+   * @return the path of the file without a leading slash.
+   */
+  static String repositoryPath(String location, String fileName) {
+    if (fileName == null) {
+      return null;
+    }
+    if (location == null) {
+      return fileName;
+    }
+    int start = 0;
+    int end = location.length();
+    while (start < end && location.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && location.charAt(end - 1) == '/') {
+      end--;
+    }
+    return start == end ? fileName : location.substring(start, end) + '/' + fileName;
+  }
+
+  /**
+   * Parses the line number without creating intermediate objects.
+   */
+  private static int parseLineNumber(String name) {
+    int value = 0;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException("Invalid line number " + name);
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  /**
+   * Growable buffer of line numbers, reused for all the results of a response.
+   */
+  private static final class LineNumbers {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void clear() {
+      size = 0;
+    }
+  }
+}
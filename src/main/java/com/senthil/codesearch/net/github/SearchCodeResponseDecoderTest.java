@@ -0,0 +1,67 @@
+package com.senthil.codesearch.net.github;
+
+import com.senthil.codesearch.filter.ResultFilters;
+import com.senthil.codesearch.filter.ResultIndex;
+import com.senthil.codesearch.model.CodeSearchResponse;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.BitSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class SearchCodeResponseDecoderTest {
+
+  private static final String RESPONSE = "{\"matchterm\": \"foo\", \"total\": 3, \"results\": ["
+      + "{\"name\": \"core\", \"filename\": \"FooTest.java\", \"location\": \"/src/test/java\", \"language\": \"Java\","
+      + " \"url\": \"https://searchcode.com/codesearch/view/1/\", \"lines\": {\"3\": \"foo\"}},"
+      + "{\"name\": \"core\", \"filename\": \"Foo.java\", \"location\": \"/src/main/java/\", \"language\": \"Java\","
+      + " \"url\": \"https://searchcode.com/codesearch/view/2/\", \"lines\": {\"1\": \"foo\"}},"
+      + "{\"name\": \"tools\", \"filename\": \"foo.py\", \"location\": \"\", \"language\": \"Python\","
+      + " \"url\": \"https://searchcode.com/codesearch/view/3/\", \"lines\": {}}]}";
+
+  private static CodeSearchResponse decode() throws IOException {
+    return new SearchCodeResponseDecoder(CodeSearchResult::new).decode(new StringReader(RESPONSE), "foo", null, null);
+  }
+
+  @Test
+  public void testRepositoryPathIsDecodedFromLocation() throws IOException {
+    CodeSearchResponse response = decode();
+    Assert.assertEquals(3, response.getResults().size());
+    CodeSearchResult result = response.getResults().get(0);
+    Assert.assertEquals("FooTest.java", result.getFileName());
+    Assert.assertEquals("FooTest.java in core", result.getFilePath());
+    Assert.assertEquals("src/test/java/FooTest.java", result.getRepositoryPath());
+    Assert.assertEquals("src/main/java/Foo.java", response.getResults().get(1).getRepositoryPath());
+    Assert.assertEquals("foo.py", response.getResults().get(2).getRepositoryPath());
+  }
+
+  @Test
+  public void testPathFiltersMatchDecodedResults() throws IOException {
+    ResultIndex index = new ResultIndex();
+    for (CodeSearchResult result : decode().getResults()) {
+      index.add(result);
+    }
+    Assert.assertEquals(rows(0), ResultFilters.parse("path:*Test.java").apply(index));
+    Assert.assertEquals(rows(1, 2), ResultFilters.parse("-in:test").apply(index));
+    Assert.assertEquals(rows(0, 1), ResultFilters.parse("path:src/**").apply(index));
+    Assert.assertEquals(rows(), ResultFilters.parse("re:core$").apply(index));
+  }
+
+  @Test
+  public void testRepositoryPath() {
+    Assert.assertEquals("a/b/c.txt", SearchCodeResponseDecoder.repositoryPath("//a/b//", "c.txt"));
+    Assert.assertEquals("c.txt", SearchCodeResponseDecoder.repositoryPath("/", "c.txt"));
+    Assert.assertEquals("c.txt", SearchCodeResponseDecoder.repositoryPath(null, "c.txt"));
+    Assert.assertNull(SearchCodeResponseDecoder.repositoryPath("/a", null));
+  }
+
+  private static BitSet rows(int... rows) {
+    BitSet bitSet = new BitSet();
+    for (int row : rows) {
+      bitSet.set(row);
+    }
+    return bitSet;
+  }
+}
@@ -8,11 +8,35 @@ import com.senthil.codesearch.model.CodeSearchResult;
  */
 public class SearchCodeSearchResult extends CodeSearchResult {
 
-  private static final SearchCodeSearcher GITHUB_SEARCHER= new SearchCodeSearcher();
+  private final SearchCodeSearcher searcher;
+
+  public SearchCodeSearchResult(SearchCodeSearcher searcher) {
+    this.searcher = searcher;
+  }
+
+  /**
+   * The content is downloaded from the raw view of the result the first time it is requested.
+   */
   @Override
   public String getContent() {
     String content = super.getContent();
-    content = content.replace("/view/", "/raw/");
-    return GITHUB_SEARCHER.getContent(content);
+    if (content == null && getExternalLink() != null) {
+      content = searcher.getContent(SearchCodeSearcher.rawUrl(getExternalLink()));
+      super.setContent(content);
+    }
+    return content;
+  }
+
+  /**
+   * The content is also cached, it is set once downloaded in ranges. It is not written again if the whole file was
+   * already cached when it was downloaded or read from the cache.
+   */
+  @Override
+  public CodeSearchResult setContent(String content) {
+    super.setContent(content);
+    if (content != null && getExternalLink() != null) {
+      searcher.putContent(SearchCodeSearcher.rawUrl(getExternalLink()), content);
+    }
+    return this;
   }
 }
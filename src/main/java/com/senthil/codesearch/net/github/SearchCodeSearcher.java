@@ -1,36 +1,40 @@
 package com.senthil.codesearch.net.github;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
 import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.cache.PersistentSearchCache;
 import com.senthil.codesearch.model.CodeSearchFacet;
 import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchResponse;
 import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.ContentRange;
 import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.Futures;
+import com.senthil.codesearch.net.HttpStatusException;
+import com.senthil.codesearch.net.HttpTransport;
 import com.senthil.codesearch.net.Searcher;
-import com.senthil.utils.JsonParserUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -41,124 +45,162 @@ public class SearchCodeSearcher implements Searcher {
 
   private static final String GITHUB_HOST = "https://searchcode.com/api/codesearch_I/";
   private static final Logger LOG = Logger.getInstance(SearchCodeSearcher.class);
-  //search time out in milliseconds
-  private static final int SEARCH_TIME_OUT = 10000;
-  private final RequestConfig httpRequestConfig;
+  /**
+   * maximum no of streamed results handed over together.
+   */
+  private static final int MAX_BATCH_SIZE = 10;
 
-  private ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(5);
+  private final HttpTransport transport;
 
-  private CloseableHttpClient httpClient = HttpClients.createDefault();
+  private final ExecutorService executor;
 
-  private ExecutorService executor = Executors.newFixedThreadPool(5);
+  private final SearchCodeResponseDecoder decoder = new SearchCodeResponseDecoder(this::newResult);
 
-  public SearchCodeSearcher() {
-    RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
-    requestConfigBuilder.setConnectionRequestTimeout(SEARCH_TIME_OUT);
-    httpRequestConfig = requestConfigBuilder.build();
+  /**
+   * cache for the file contents, null if the contents are not cached.
+   */
+  private volatile PersistentSearchCache contentCache;
+
+  /**
+   * Creates a searcher that uses the given shared resources. The caller owns the resources and is responsible for
+   * shutting them down.
+   * @param transport http transport used for the requests.
+   * @param executor executor used to parse the responses.
+   */
+  public SearchCodeSearcher(@NotNull HttpTransport transport, @NotNull ExecutorService executor) {
+    this.transport = transport;
+    this.executor = executor;
+  }
+
+  /**
+   * @param contentCache cache used for the contents of the files.
+   * @return this searcher.
+   */
+  public SearchCodeSearcher setContentCache(PersistentSearchCache contentCache) {
+    this.contentCache = contentCache;
+    return this;
+  }
+
+  /**
+   * @return a new empty result backed by this searcher.
+   */
+  @NotNull
+  public CodeSearchResult newResult() {
+    return new SearchCodeSearchResult(this);
   }
 
   @Override
   public CompletableFuture<List<CodeSearchFacet>> getFacets(@NotNull CodeSearchRequest request) {
+    String query = request.toString();
+    HttpGet httpRequest;
     try {
-      String query = request.toString();
       URIBuilder uriBuilder = new URIBuilder(GITHUB_HOST);
       uriBuilder.setParameter("q", query);
-      System.out.println("Retrieving facets for query " + uriBuilder.build());
-
-      HttpGet httpRequest = new HttpGet(uriBuilder.build());
-      httpRequest.setConfig(httpRequestConfig);
-
-      return CompletableFuture.supplyAsync(() -> {
-        CloseableHttpResponse response;
-        try {
-          response = httpClient.execute(httpRequest);
-          JsonObject results =
-              JsonParserUtil.getRootElement(new InputStreamReader(response.getEntity().getContent())).getAsJsonObject();
-
-          if (results.getAsJsonPrimitive("total").getAsLong() == 0L) {
-            return Collections.emptyList();
-          }
-
-          //we are interested only in the facets data.
-          JsonArray facetsArray = results.getAsJsonArray("source_filters");
-          //create a list of facets from result.
-          List<CodeSearchFacet> searchFacets = new ArrayList<CodeSearchFacet>(facetsArray.size());
-          for (JsonElement element : facetsArray) {
-            JsonObject facet = element.getAsJsonObject();
-            searchFacets.add(new CodeSearchFacet(facet.getAsJsonPrimitive("id").getAsString(),
-                facet.getAsJsonPrimitive("source").getAsString(), facet.getAsJsonPrimitive("count").getAsString(),
-                query));
-          }
-          return searchFacets;
-        } catch (IOException e) {
-          LOG.warn("Exception retrieving facets", e);
-          return null;
-        } finally {
-          httpRequest.releaseConnection();
-        }
-      }, executor);
-    } catch (Exception e) {
-      return null;
+      httpRequest = new HttpGet(uriBuilder.build());
+    } catch (URISyntaxException | RuntimeException e) {
+      return Futures.failed(e);
     }
+    LOG.debug("Retrieving facets for query ", httpRequest.getURI());
+    //we are interested only in the facets data.
+    CompletableFuture<CodeSearchResponse> response = execute(httpRequest, query, null, null);
+    return Futures.propagateCancellation(response.thenApply(CodeSearchResponse::getFacets), response);
   }
 
   @Override
   public CompletableFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request) {
+    //we are interested only in the results data.
+    CompletableFuture<CodeSearchResponse> response = search(request);
+    return Futures.propagateCancellation(response.thenApply(CodeSearchResponse::getResults), response);
+  }
+
+  /**
+   * The facets and the results are returned by the same endpoint. So both are parsed from a single response.
+   */
+  @Override
+  public CompletableFuture<CodeSearchResponse> search(@NotNull CodeSearchRequest request) {
+    HttpGet httpRequest;
     try {
-      HttpGet httpRequest = new HttpGet(GITHUB_HOST + "?" + request.build());
-      System.out.println("Retrieving facets for query " + (GITHUB_HOST + "?" + request.build()));
-      httpRequest.setConfig(httpRequestConfig);
-
-      return CompletableFuture.supplyAsync(() -> {
-        CloseableHttpResponse response;
-        try {
-          response = httpClient.execute(httpRequest);
-          JsonObject results =
-              JsonParserUtil.getRootElement(new InputStreamReader(response.getEntity().getContent())).getAsJsonObject();
-
-          String matchedTerm = results.getAsJsonPrimitive("matchterm").getAsString();
-
-          //we are interested only in the results data.
-          JsonArray facetsArray = results.getAsJsonArray("results");
-          //create a list of facets from result.
-          List<CodeSearchResult> searchResults = new ArrayList<>(facetsArray.size());
-          for (JsonElement element : facetsArray) {
-            JsonObject result = element.getAsJsonObject();
-            CodeSearchResult codeSearchResult = new SearchCodeSearchResult();
-            codeSearchResult.setFileName(result.getAsJsonPrimitive("filename").getAsString())
-                .setFileExtension(result.getAsJsonPrimitive("language").getAsString())
-                .setFilePath(result.getAsJsonPrimitive("filename").getAsString() + " in " + result.getAsJsonPrimitive("name").getAsString())
-                .setProductName(result.getAsJsonPrimitive("name").getAsString())
-                .setExternalLink(result.getAsJsonPrimitive("url").getAsString())
-                .setContent(result.getAsJsonPrimitive("url").getAsString())
-                .setHighlightData(parseHighlightInfo(matchedTerm, result.getAsJsonObject("lines")));
-            searchResults.add(codeSearchResult);
-          }
-          return searchResults;
-        } catch (IOException e) {
-          LOG.warn("Exception retrieving facets", e);
-          return null;
-        } finally {
-          httpRequest.releaseConnection();
-        }
-      }, executor);
-    } catch (Exception e) {
-      return null;
+      httpRequest = new HttpGet(GITHUB_HOST + "?" + request.build());
+    } catch (RuntimeException e) {
+      return Futures.failed(e);
     }
+    LOG.debug("Searching for query ", httpRequest.getURI());
+    return execute(httpRequest, request.toString(), request.getFacet(), null);
   }
 
-  private Collection<CodeSearchHighlightData> parseHighlightInfo(String query, JsonObject lines) {
-    List<CodeSearchHighlightData> highlightDatas = new ArrayList<>();
-    for (Map.Entry<String, JsonElement> lineNo : lines.entrySet()) {
-      highlightDatas.add(new CodeSearchHighlightData(Integer.parseInt(lineNo.getKey()) -1 , query));
+  /**
+   * The response is decoded while it is being downloaded and the results are handed over as soon as they are decoded.
+   */
+  @Override
+  public CompletableFuture<List<CodeSearchResult>> streamResults(@NotNull CodeSearchRequest request,
+      @NotNull Consumer<List<CodeSearchResult>> batchConsumer) {
+    HttpGet httpRequest;
+    try {
+      httpRequest = new HttpGet(GITHUB_HOST + "?" + request.build());
+    } catch (RuntimeException e) {
+      return Futures.failed(e);
     }
-    return highlightDatas;
+    LOG.debug("Streaming results for query ", httpRequest.getURI());
+    ResultBatcher batcher = new ResultBatcher(batchConsumer, MAX_BATCH_SIZE);
+    CompletableFuture<CodeSearchResponse> response = execute(httpRequest, request.toString(), request.getFacet(),
+        batcher);
+    return Futures.propagateCancellation(response.thenApply(result -> {
+      batcher.flush();
+      return result.getResults();
+    }), response);
   }
 
-  @Override
-  public ScheduledFuture<List<CodeSearchResult>> getResults(@NotNull CodeSearchRequest request,
-      long delayInMilliseconds) {
-    return scheduledExecutorService.schedule(() -> getResults(request).get(), delayInMilliseconds, TimeUnit.MILLISECONDS);
+  /**
+   * Executes the request and parses the response.
+   * @param httpRequest http request for the codesearch endpoint.
+   * @param query the query string stored in the facets.
+   * @param facetId the facet the search is restricted to.
+   * @param resultConsumer receives the results while the response is being downloaded. If null, the response is
+   * decoded once it has been completely received.
+   * @return future of the parsed response. The future completes exceptionally with the cause if the request fails,
+   * with an {@link HttpStatusException} if the server answers with an error and with a {@link JsonParseException} if
+   * the response is not valid.
+   */
+  private CompletableFuture<CodeSearchResponse> execute(HttpGet httpRequest, String query, String facetId,
+      Consumer<CodeSearchResult> resultConsumer) {
+    //the response is parsed in the executor, the I/O thread is only used for receiving the response.
+    //a streamed response holds the worker until the body is received, so only the requests that need it stream.
+    CompletableFuture<HttpResponse> responseFuture =
+        resultConsumer == null ? transport.execute(httpRequest) : transport.stream(httpRequest);
+    //a cancelled search aborts the http request, also while a streamed response is being decoded.
+    CompletableFuture<CodeSearchResponse> result = HttpTransport.abortOnCancel(
+        Futures.applyAsync(responseFuture, response -> {
+          try {
+            return decode(response, query, facetId, resultConsumer);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, executor), httpRequest);
+    result.whenComplete((response, throwable) -> {
+      if (throwable != null && !result.isCancelled()) {
+        LOG.warn("Exception retrieving search results", throwable);
+      }
+    });
+    return result;
+  }
+
+  private CodeSearchResponse decode(HttpResponse response, String query, String facetId,
+      Consumer<CodeSearchResult> resultConsumer) throws IOException {
+    StatusLine statusLine = response.getStatusLine();
+    if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+      //reads the rest of the error page, which releases the connection.
+      EntityUtils.consumeQuietly(response.getEntity());
+      throw new HttpStatusException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+    }
+    if (response.getEntity() == null) {
+      throw new JsonParseException("Empty response");
+    }
+    try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+      return decoder.decode(reader, query, facetId, resultConsumer);
+    } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+      //the server sent something else than the expected json, sending the search again gives the same answer.
+      throw new JsonParseException(e);
+    }
   }
 
   @Override
@@ -172,18 +214,138 @@ public class SearchCodeSearcher implements Searcher {
     return null;
   }
 
+  @Override
+  public CompletableFuture<ContentRange> getContentRange(@NotNull CodeSearchResult result, long start, int length) {
+    if (result.getExternalLink() == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    String url = rawUrl(result.getExternalLink());
+    PersistentSearchCache cache = contentCache;
+    if (cache == null) {
+      return fetchContentRange(url, start, length);
+    }
+    //the range is requested from the event dispatch thread, the disk cache is read in the background.
+    return Futures.compose(cache.getContentAsync(url), content -> {
+      if (content == null) {
+        return fetchContentRange(url, start, length);
+      }
+      return CompletableFuture.completedFuture(
+          ContentRange.whole(content, content.getBytes(StandardCharsets.UTF_8).length));
+    });
+  }
+
+  private CompletableFuture<ContentRange> fetchContentRange(String url, long start, int length) {
+    HttpGet httpRequest = new HttpGet(url);
+    httpRequest.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + (start + length - 1));
+    LOG.debug("Retrieving content range ", httpRequest.getFirstHeader(HttpHeaders.RANGE));
+    CompletableFuture<HttpResponse> responseFuture = transport.execute(httpRequest);
+    return Futures.propagateCancellation(Futures.applyAsync(responseFuture, response -> {
+      try {
+        return readRange(url, response, start, length);
+      } catch (IOException e) {
+        LOG.warn("Exception retrieving content", e);
+        return null;
+      }
+    }, executor).exceptionally(e -> {
+      LOG.warn("Exception retrieving content", e);
+      return null;
+    }), responseFuture);
+  }
+
+  /**
+   * Reads a range response. A server that ignores the range returns the whole content, which is cached.
+   */
+  private ContentRange readRange(String url, HttpResponse response, long start, int length) throws IOException {
+    int status = response.getStatusLine().getStatusCode();
+    if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+      return new ContentRange("", start, start, start, true);
+    }
+    byte[] bytes = response.getEntity() == null ? new byte[0] : IOUtils.toByteArray(response.getEntity().getContent());
+    if (status == HttpStatus.SC_OK) {
+      String content = new String(bytes, StandardCharsets.UTF_8);
+      putContent(url, content);
+      return ContentRange.whole(content, bytes.length);
+    }
+    if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+      LOG.debug("Unexpected status retrieving content ", response.getStatusLine());
+      return null;
+    }
+    Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+    long totalLength = contentRange == null ? -1 : totalLength(contentRange.getValue());
+    boolean last = totalLength >= 0 ? start + bytes.length >= totalLength : bytes.length < length;
+    //the range may end inside a character, the rest of it is read with the next range.
+    int end = last ? bytes.length : characterBoundary(bytes, bytes.length);
+    return new ContentRange(new String(bytes, 0, end, StandardCharsets.UTF_8), start, start + end, totalLength,
+        last);
+  }
+
+  /**
+   * @param contentRange value of the Content-Range header, e.g. 'bytes 0-1023/4096'.
+   * @return the total length or -1 if not known.
+   */
+  static long totalLength(String contentRange) {
+    int index = contentRange.lastIndexOf('/');
+    if (index < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentRange.substring(index + 1).trim());
+    } catch (NumberFormatException e) {
+      //'*' when the length is not known.
+      return -1;
+    }
+  }
+
+  /**
+   * @return the length of the bytes without a trailing incomplete UTF-8 sequence.
+   */
+  static int characterBoundary(byte[] bytes, int length) {
+    //a sequence is at most 4 bytes, look for its lead byte.
+    for (int i = length - 1; i >= Math.max(0, length - 4); i--) {
+      int b = bytes[i] & 0xFF;
+      if ((b & 0xC0) != 0x80) {
+        int sequenceLength = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return i + sequenceLength <= length ? length : i;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * @return the url of the raw content of the result.
+   */
+  static String rawUrl(@NotNull String externalLink) {
+    return externalLink.replace("/view/", "/raw/");
+  }
+
+  void putContent(String url, String content) {
+    PersistentSearchCache cache = contentCache;
+    if (cache != null) {
+      cache.putContent(url, content);
+    }
+  }
+
   public String getContent(String url) {
+    PersistentSearchCache cache = contentCache;
+    String content = cache == null ? null : cache.getContent(url);
+    if (content != null) {
+      return content;
+    }
     HttpGet httpRequest = new HttpGet(url);
-    httpRequest.setConfig(httpRequestConfig);
     try {
-      CloseableHttpResponse response = httpClient.execute(httpRequest);
+      HttpResponse response = transport.execute(httpRequest).get();
       ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
       IOUtils.copy(response.getEntity().getContent(), outputStream);
-      return outputStream.toString();
-    } catch (IOException e) {
+      content = outputStream.toString(StandardCharsets.UTF_8.name());
+      if (cache != null) {
+        cache.putContent(url, content);
+      }
+      return content;
+    } catch (IOException | ExecutionException e) {
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       return null;
-    } finally {
-      httpRequest.releaseConnection();
     }
   }
 }
@@ -1,5 +1,9 @@
 package com.senthil.codesearch.net.github;
 
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.net.SearcherService;
+import java.util.List;
+import org.junit.Assert;
 import org.junit.Test;
 
 
@@ -10,6 +14,17 @@ public class SearchCodeSearcherTest {
 
   @Test
   public void testGetFacets() throws Exception {
-    System.out.println(new SearchCodeSearcher().getFacets(new SearchCodeRequest().setQuery("collection")).get());
+    SearcherService service = new SearcherService();
+    try {
+      List<CodeSearchFacet> facets =
+          service.getSearcher().getFacets(new SearchCodeRequest().setQuery("collection")).get();
+      Assert.assertNotNull(facets);
+      Assert.assertFalse(facets.isEmpty());
+      for (CodeSearchFacet facet : facets) {
+        Assert.assertEquals("collection", facet.getQuery());
+      }
+    } finally {
+      service.dispose();
+    }
   }
 }
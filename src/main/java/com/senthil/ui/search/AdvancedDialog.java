@@ -5,10 +5,12 @@ import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
+import com.senthil.codesearch.CodeSearchHistoryManager;
 import com.senthil.messages.Messages;
 import com.senthil.codesearch.net.CodeSearchRequest;
 import com.senthil.codesearch.net.SearcherFactory;
 import java.awt.*;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -64,6 +66,10 @@ public class AdvancedDialog extends DialogWrapper {
   private JBTextField multiproducts;
 
   private CodeSearchRequest searchRequest;
+  /**
+   * true while the query field is changed by the completion.
+   */
+  private boolean completing;
 
   public AdvancedDialog(Project project) {
     super(project);
@@ -78,6 +84,10 @@ public class AdvancedDialog extends DialogWrapper {
       @Override
       public void insertUpdate(DocumentEvent e) {
         validateInput();
+        if (!completing) {
+          //the document cannot be changed while notifying its listeners.
+          SwingUtilities.invokeLater(AdvancedDialog.this::completeQuery);
+        }
       }
 
       @Override
@@ -96,6 +106,29 @@ public class AdvancedDialog extends DialogWrapper {
     });
   }
 
+  /**
+   * Completes the query typed with the best ranked query of the history. The completed part is selected,
+   * so that typing on replaces it.
+   */
+  private void completeQuery() {
+    String text = queryField.getText();
+    if (text.isEmpty() || queryField.getCaretPosition() != text.length()) {
+      return;
+    }
+    List<String> completions = CodeSearchHistoryManager.getInstance().completeQuery(text, 1);
+    if (completions.isEmpty() || completions.get(0).length() <= text.length()) {
+      return;
+    }
+    String completion = completions.get(0);
+    completing = true;
+    try {
+      queryField.setText(text + completion.substring(text.length()));
+      queryField.select(text.length(), completion.length());
+    } finally {
+      completing = false;
+    }
+  }
+
   @Nullable
   @Override
   protected JComponent createCenterPanel() {
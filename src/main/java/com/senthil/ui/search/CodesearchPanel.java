@@ -1,5 +1,6 @@
 package com.senthil.ui.search;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
@@ -7,21 +8,26 @@ import com.intellij.openapi.project.Project;
 import com.intellij.ui.JBSplitter;
 import com.intellij.ui.KeyStrokeAdapter;
 import com.intellij.ui.treeStructure.Tree;
+import com.intellij.util.messages.MessageBusConnection;
+import com.senthil.codesearch.cache.SearchCacheKey;
 import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResponse;
 import com.senthil.codesearch.model.CodeSearchResult;
-import com.senthil.messages.Messages;
 import com.senthil.codesearch.CodeSearchHistoryManager;
 import com.senthil.codesearch.net.CodeSearchRequest;
+import com.senthil.codesearch.net.SearchRefreshListener;
 import com.senthil.codesearch.net.SearcherFactory;
+import com.senthil.codesearch.net.SearcherService;
 import com.senthil.utils.CodeSearchUtils;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import org.jetbrains.annotations.NotNull;
 
@@ -41,11 +47,45 @@ public class CodesearchPanel extends JBSplitter {
   private final Project project;
   private final FacetsPanel facetsPanel;
   private final ResultsPanel resultsPanel;
+  /**
+   * downloads the selected result and the next ones in the background.
+   */
+  private final ContentPrefetcher prefetcher;
+  /**
+   * next pages of results, requested before 'load more' is selected.
+   */
+  private final PageBuffer pageBuffer = new PageBuffer(MAX_PREFETCHED_PAGES);
+  /**
+   * offset of the next page of every facet. It may be more than the no of results displayed, as the results
+   * already displayed are skipped when the pages overlap.
+   */
+  private final Map<String, Integer> nextStarts = new ConcurrentHashMap<>();
   private Tree facetsTree = new Tree();
   private Tree resultsTree;
+  /**
+   * The response of the search displayed in this panel.
+   */
+  private volatile CodeSearchResponse searchResponse;
+  /**
+   * The request of the search displayed in this panel.
+   */
+  private volatile CodeSearchRequest searchRequest;
+  /**
+   * The first page of results displayed in this panel, null if no results or more than one page is displayed.
+   */
+  private volatile DisplayedResults displayedResults;
+  /**
+   * Connection to the application message bus, for refreshes of the displayed responses.
+   */
+  private MessageBusConnection connection;
   private static final Logger LOGGER = Logger.getInstance(CodesearchPanel.class);
 
   private static final float DEFAULT_SPLIT_RATIO = 0.25f;
+  /**
+   * the next page is prefetched when one of the last rows is displayed or selected.
+   */
+  private static final int NEAR_END_ROWS = 5;
+  private static final int MAX_PREFETCHED_PAGES = 4;
 
   public CodesearchPanel(Project project) {
     super(false, DEFAULT_SPLIT_RATIO);
@@ -70,6 +110,7 @@ public class CodesearchPanel extends JBSplitter {
       }
     };
     resultsPanel = new ResultsPanel(resultsTree);
+    prefetcher = new ContentPrefetcher(SearcherService.getInstance(), SearcherFactory.getSearcher());
     setFirstComponent(facetsPanel);
     setSecondComponent(resultsPanel);
 
@@ -94,35 +135,126 @@ public class CodesearchPanel extends JBSplitter {
       onFacetChanged((CodeSearchFacet) node.getUserObject());
     });
 
-    //Listen to selection changes in the results tree.
-    resultsTree.addKeyListener(new KeyStrokeAdapter() {
+    //Listen to selection changes in the results tree and list.
+    KeyStrokeAdapter keyListener = new KeyStrokeAdapter() {
       @Override
       public void keyPressed(KeyEvent event) {
         if (event.getKeyCode() == VK_ENTER) {
           openCurrentResult();
         }
       }
-    });
-
-    resultsTree.addMouseListener(new MouseAdapter() {
+    };
+    MouseAdapter mouseListener = new MouseAdapter() {
       @Override
       public void mouseClicked(MouseEvent e) {
         if (e.getClickCount() == 2 && e.getButton() == MouseEvent.BUTTON1) {
           openCurrentResult();
         }
       }
-    });
+    };
+    resultsTree.addKeyListener(keyListener);
+    resultsTree.addMouseListener(mouseListener);
+    resultsPanel.getResultsList().addKeyListener(keyListener);
+    resultsPanel.getResultsList().addMouseListener(mouseListener);
+    resultsPanel.addSelectionListener(this::prefetchSelectedResults);
+    resultsPanel.addNearEndListener(NEAR_END_ROWS, this::prefetchNextPage);
+  }
+
+  /**
+   * @return the selected facet or null.
+   */
+  private CodeSearchFacet getSelectedFacet() {
+    Object selectedFacet = facetsTree.getLastSelectedPathComponent();
+    if (!(selectedFacet instanceof FacetTreeNode)) {
+      return null;
+    }
+    Object facet = ((FacetTreeNode) selectedFacet).getUserObject();
+    return facet instanceof CodeSearchFacet ? (CodeSearchFacet) facet : null;
+  }
+
+  /**
+   * @return the offset of the results after the loaded ones.
+   */
+  private int nextStart(CodeSearchFacet facet) {
+    return nextStarts.getOrDefault(facet.getId(), resultsPanel.getResultCount());
+  }
+
+  /**
+   * Requests the page after the loaded results, so that 'load more' displays it at once.
+   */
+  private void prefetchNextPage() {
+    CodeSearchFacet facet = getSelectedFacet();
+    int start = facet == null ? 0 : nextStart(facet);
+    if (facet == null || start == 0 || start >= facet.getMatchCount() || resultsPanel.isLoading()
+        || pageBuffer.contains(facet, start)) {
+      return;
+    }
+    CompletableFuture<List<CodeSearchResult>> page =
+        SearcherFactory.getSearcher().getResults(createRequest(facet, start));
+    if (page != null) {
+      LOGGER.debug("Prefetching results from ", start);
+      pageBuffer.put(facet, start, page);
+    }
+  }
+
+  /**
+   * Prefetches the selected result and the results after it, so that stepping through the results is instant.
+   */
+  private void prefetchSelectedResults() {
+    CodeSearchResult result = resultsPanel.getSelectedResult();
+    CodeSearchFacet facet = getSelectedFacet();
+    if (result == null || facet == null) {
+      prefetcher.cancel();
+      return;
+    }
+    List<CodeSearchResult> results = new ArrayList<>(ContentPrefetcher.NEXT_RESULTS + 1);
+    results.add(result);
+    results.addAll(resultsPanel.getResultsAfter(result, ContentPrefetcher.NEXT_RESULTS));
+    prefetcher.prefetch(results, facet);
   }
 
   public Project getProject() {
     return project;
   }
 
+  @Override
+  public void addNotify() {
+    super.addNotify();
+    if (connection == null) {
+      connection = ApplicationManager.getApplication().getMessageBus().connect();
+      connection.subscribe(SearchRefreshListener.TOPIC, new RefreshListener());
+    }
+  }
+
+  @Override
+  public void removeNotify() {
+    prefetcher.cancel();
+    if (connection != null) {
+      connection.disconnect();
+      connection = null;
+    }
+    super.removeNotify();
+  }
+
   public void updateFacets(List<CodeSearchFacet> facets, CodeSearchRequest searchRequest) {
+    this.searchRequest = searchRequest;
+    pageBuffer.clear();
+    nextStarts.clear();
     facetsPanel.update(facets, searchRequest.getQuery());
     CodeSearchHistoryManager.getInstance().add(searchRequest);
   }
 
+  /**
+   * Displays the facets of the search response. The results in the response are kept,
+   * so that selecting the facet they belong to does not need another request.
+   * @param response facets and first page of results.
+   * @param searchRequest the search request.
+   */
+  public void updateSearchResponse(CodeSearchResponse response, CodeSearchRequest searchRequest) {
+    this.searchResponse = response;
+    updateFacets(response.getFacets(), searchRequest);
+  }
+
   private void clearResults() {
     resultsPanel.clearView();
   }
@@ -137,36 +269,87 @@ public class CodesearchPanel extends JBSplitter {
    * @param startIndex
    */
   private void loadResults(CodeSearchFacet facet, int startIndex) {
-    resultsPanel.markBusy();
-    CodeSearchRequest request = SearcherFactory.createRequest();
-    int resultsToReturn = Math.min(request.getNumToReturn(), facet.getMatchCount());
-    request.setQuery(facet.getQuery())
-        .setNumToReturn(resultsToReturn + startIndex)
-        .setFacet(facet.getId())
-        .setStart(startIndex);
+    //only the first page is refreshed in place, the later pages are appended to it.
+    displayedResults = null;
+    //the first page may already be available from the search response.
+    CodeSearchResponse response = searchResponse;
+    if (startIndex == 0) {
+      nextStarts.remove(facet.getId());
+    }
+    if (startIndex == 0 && response != null) {
+      List<CodeSearchResult> firstPage = response.getFirstPage(facet);
+      if (firstPage != null) {
+        nextStarts.put(facet.getId(), firstPage.size());
+        displayedResults = new DisplayedResults(null, facet);
+        updateResults(firstPage, facet);
+        return;
+      }
+    }
+    CodeSearchRequest request = createRequest(facet, startIndex);
+    if (startIndex == 0) {
+      displayedResults = new DisplayedResults(SearchCacheKey.of(SearchCacheKey.Kind.RESULTS, request), facet);
+    }
+    int loadId = resultsPanel.startLoading(facet);
+    CompletableFuture<List<CodeSearchResult>> resultsFuture;
+    CompletableFuture<List<CodeSearchResult>> prefetchedPage = pageBuffer.take(facet, startIndex);
+    if (prefetchedPage != null) {
+      resultsFuture = prefetchedPage.thenApply(results -> {
+        resultsPanel.appendResults(loadId, results, facet);
+        return results;
+      });
+    } else {
+      //the results are appended to the tree in batches, as they are received.
+      resultsFuture = SearcherFactory.getSearcher()
+          .streamResults(request, batch -> resultsPanel.appendResults(loadId, batch, facet));
+    }
+    if (resultsFuture != null) {
+      //the page may start before the start index, the next page starts after it.
+      resultsFuture = resultsFuture.thenApply(results -> {
+        if (results != null) {
+          nextStarts.merge(facet.getId(), request.getPageStart() + results.size(), Math::max);
+        }
+        return results;
+      });
+    }
+    //cached results are displayed right away, without a background task.
+    if (resultsFuture != null && resultsFuture.isDone() && !resultsFuture.isCompletedExceptionally()
+        && resultsFuture.getNow(null) != null) {
+      resultsPanel.finishLoading(loadId, facet, isLastPage(request, resultsFuture.getNow(null)));
+      return;
+    }
     new Task.Backgroundable(project, request.getDescription()) {
       @Override
       public void run(@NotNull ProgressIndicator indicator) {
         List<CodeSearchResult> results = null;
         try {
-          results = SearcherFactory.getSearcher().getResults(request).get();
+          results = resultsFuture == null ? null : resultsFuture.get();
           if (indicator.isCanceled()) {
             return;
           }
-          if (results != null) {
-            updateResults(results, facet);
-          } else {
-            List<CodeSearchResult> searchResults = new ArrayList<>();
-            updateResults(searchResults, facet);
+          if (results == null) {
             CodeSearchUtils.displayErrorMessage(project);
           }
         } catch (InterruptedException | ExecutionException e) {
-          CodeSearchUtils.displayErrorMessage(project);
+          CodeSearchUtils.displayErrorMessage(project, e);
+        } finally {
+          resultsPanel.finishLoading(loadId, facet, isLastPage(request, results));
         }
       }
     }.queue();
   }
 
+  /**
+   * @return true if the page is not full, a failed page may be loaded again.
+   */
+  private static boolean isLastPage(CodeSearchRequest request, List<CodeSearchResult> results) {
+    return results != null && results.size() < request.getPageSize();
+  }
+
+  private static CodeSearchRequest createRequest(CodeSearchFacet facet, int startIndex) {
+    //the no of results returned is the page size of the backend, only the page after the loaded results is fetched.
+    return SearcherFactory.createRequest().setQuery(facet.getQuery()).setFacet(facet.getId()).setStart(startIndex);
+  }
+
   private void updateResults(List<CodeSearchResult> results, CodeSearchFacet facet) {
     resultsPanel.update(results, facet);
   }
@@ -181,20 +364,12 @@ public class CodesearchPanel extends JBSplitter {
    */
 
   /**
-   * Checks if the search results contains content and highlight info.
-   * Tries to retrieve those, if not present.
+   * Checks if the search results contains highlight info.
+   * Tries to retrieve it, if not present. The content is downloaded in the background when the file is opened.
    * @param result search result
    * @param facet CodeSearchFacet corresponding to the result.
    */
   void validateResult(CodeSearchResult result, CodeSearchFacet facet) {
-    if (result.getContent() == null) {
-      try {
-        result.setContent(SearcherFactory.getSearcher().getContents(facet.getId(), result.getFilePath()).get());
-      } catch (Exception e) {
-        LOGGER.debug("Error getting contents of the file", e);
-      }
-    }
-
     //We call the searcher for highlight data only if the result doesnt contain highlight info.
     if (result.getHighlightData() == null) {
       try {
@@ -208,20 +383,18 @@ public class CodesearchPanel extends JBSplitter {
   }
 
   void onFacetChanged(CodeSearchFacet facet) {
+    prefetcher.cancel();
+    LOGGER.debug("Prefetched results ", prefetcher);
     clearResults();
     loadResults(facet);
   }
 
   /**
    * Handler for the load more results button.
-   * @param node the last node of the tree ('load more')
    * @param facet CodeSearchFacet currently selected.
    */
-  void handleLoadMoreResults(ResultsTreeNode node, CodeSearchFacet facet) {
-    int totalResultsShown = ((DefaultMutableTreeNode) resultsTree.getModel().getRoot()).getChildCount();
-    node.setUserObject(Messages.message("ui.codesearch.results.loading.message"));
-    ((DefaultTreeModel) ((FilteredTreeModel) resultsTree.getModel()).getTreeModel()).reload(node);
-    loadResults(facet, totalResultsShown - 1);
+  void handleLoadMoreResults(CodeSearchFacet facet) {
+    loadResults(facet, nextStart(facet));
   }
 
   Tree getFacetsTree() {
@@ -229,24 +402,83 @@ public class CodesearchPanel extends JBSplitter {
   }
 
   void openCurrentResult() {
-    Object component = resultsTree.getLastSelectedPathComponent();
-
-    if (!(component instanceof ResultsTreeNode)) {
+    boolean loadMore = resultsPanel.isLoadMoreSelected();
+    CodeSearchResult result = resultsPanel.getSelectedResult();
+    if (!loadMore && result == null) {
       return;
     }
 
-    ResultsTreeNode node = (ResultsTreeNode) component;
     FacetTreeNode selectedFacet = (FacetTreeNode) facetsTree.getLastSelectedPathComponent();
     CodeSearchFacet facet = (CodeSearchFacet) selectedFacet.getUserObject();
 
     //If its a last node, then it is the 'show more' button.
     //Load more results
-    if (node.isLastNode()) {
-      handleLoadMoreResults(node, facet);
+    if (loadMore) {
+      handleLoadMoreResults(facet);
     } else {
-      CodeSearchResult result = (CodeSearchResult) node.getUserObject();
+      prefetcher.recordOpen(result);
       validateResult(result, facet);
       CodeSearchUtils.openAndHighlightFile(project, result);
     }
   }
+
+  /**
+   * Identifies the first page of results displayed in the panel.
+   */
+  private static class DisplayedResults {
+    /**
+     * key of the results request, null if the results are the first page of the search response.
+     */
+    private final SearchCacheKey key;
+    private final CodeSearchFacet facet;
+
+    DisplayedResults(SearchCacheKey key, CodeSearchFacet facet) {
+      this.key = key;
+      this.facet = facet;
+    }
+  }
+
+  /**
+   * Updates the panel in place when the displayed responses are refreshed.
+   */
+  private class RefreshListener implements SearchRefreshListener {
+
+    @Override
+    public void facetsRefreshed(@NotNull CodeSearchRequest request, @NotNull List<CodeSearchFacet> facets) {
+      if (isDisplayedSearch(request, SearchCacheKey.Kind.FACETS)) {
+        ApplicationManager.getApplication().invokeLater(() -> facetsPanel.refresh(facets, request.getQuery()));
+      }
+    }
+
+    @Override
+    public void resultsRefreshed(@NotNull CodeSearchRequest request, @NotNull List<CodeSearchResult> results) {
+      DisplayedResults displayed = displayedResults;
+      if (displayed != null && displayed.key != null && displayed.key.equals(
+          SearchCacheKey.of(SearchCacheKey.Kind.RESULTS, request))) {
+        resultsPanel.replace(results, displayed.facet);
+      }
+    }
+
+    @Override
+    public void searchRefreshed(@NotNull CodeSearchRequest request, @NotNull CodeSearchResponse response) {
+      if (!isDisplayedSearch(request, SearchCacheKey.Kind.SEARCH)) {
+        return;
+      }
+      searchResponse = response;
+      ApplicationManager.getApplication()
+          .invokeLater(() -> facetsPanel.refresh(response.getFacets(), request.getQuery()));
+      DisplayedResults displayed = displayedResults;
+      if (displayed != null && displayed.key == null) {
+        List<CodeSearchResult> firstPage = response.getFirstPage(displayed.facet);
+        if (firstPage != null) {
+          resultsPanel.replace(firstPage, displayed.facet);
+        }
+      }
+    }
+
+    private boolean isDisplayedSearch(CodeSearchRequest request, SearchCacheKey.Kind kind) {
+      CodeSearchRequest displayed = searchRequest;
+      return displayed != null && SearchCacheKey.of(kind, displayed).equals(SearchCacheKey.of(kind, request));
+    }
+  }
 }
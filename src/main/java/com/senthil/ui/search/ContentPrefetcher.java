@@ -0,0 +1,157 @@
+package com.senthil.ui.search;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.ContentRange;
+import com.senthil.codesearch.net.Searcher;
+import com.senthil.codesearch.net.SearcherService;
+import com.senthil.codesearch.net.SearcherStats;
+import com.senthil.utils.CodeSearchUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Downloads the content and highlight data of the selected result and of the results after it, so that they open
+ * at once when stepping through the results.
+ * The downloads run on a low priority executor with a bounded queue. The waiting downloads are cancelled when the
+ * selection moves or the facet changes, a running download completes and keeps its content.
+ * Only the files that fit in a single range are prefetched. The first range of a larger file is handed to the
+ * loader, which opens the file with it and downloads the rest in ranges.
+ *
+ * Must be used in the event dispatch thread.
+ */
+class ContentPrefetcher {
+
+  private static final Logger LOG = Logger.getInstance(ContentPrefetcher.class);
+
+  /**
+   * no of results after the selected one that are prefetched.
+   */
+  static final int NEXT_RESULTS = 3;
+  /**
+   * no of bytes requested for a content, only the first range of a longer content is kept.
+   */
+  private static final int MAX_CONTENT_LENGTH = 256 * 1024;
+
+  private final SearcherService service;
+  private final ThreadPoolExecutor executor;
+  private final Searcher searcher;
+  private final List<FutureTask<Void>> pending = new ArrayList<>();
+  /**
+   * results whose content or first range was downloaded by the prefetcher.
+   */
+  private final Set<CodeSearchResult> prefetched =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  private final AtomicLong prefetchCount = new AtomicLong();
+  private long cancelCount;
+
+  ContentPrefetcher(@NotNull SearcherService service, @NotNull Searcher searcher) {
+    this.service = service;
+    this.executor = service.getPrefetchExecutor();
+    this.searcher = searcher;
+  }
+
+  /**
+   * Replaces the waiting downloads with the downloads of the results, in order.
+   */
+  void prefetch(@NotNull List<CodeSearchResult> results, @NotNull CodeSearchFacet facet) {
+    cancel();
+    for (CodeSearchResult result : results) {
+      if ((result.isContentLoaded() || prefetched.contains(result)) && result.getHighlights() != null) {
+        continue;
+      }
+      FutureTask<Void> task = new FutureTask<>(() -> load(result, facet), null);
+      pending.add(task);
+      executor.execute(task);
+    }
+  }
+
+  /**
+   * Cancels the downloads that are not started.
+   */
+  void cancel() {
+    for (FutureTask<Void> task : pending) {
+      if (task.cancel(false)) {
+        executor.remove(task);
+        cancelCount++;
+      }
+    }
+    pending.clear();
+  }
+
+  /**
+   * Records whether the content of an opened result was prefetched, see {@link SearcherStats#getPrefetchHitRate()}.
+   * A result whose content was loaded otherwise is not counted.
+   */
+  void recordOpen(@NotNull CodeSearchResult result) {
+    if (prefetched.contains(result)) {
+      service.recordPrefetchedOpen(true);
+    } else if (!result.isContentLoaded()) {
+      service.recordPrefetchedOpen(false);
+    }
+  }
+
+  private void load(CodeSearchResult result, CodeSearchFacet facet) {
+    try {
+      if (!result.isContentLoaded() && !prefetched.contains(result) && result.getFilePath() != null) {
+        loadContent(result, facet);
+      }
+      if (result.getHighlights() == null && result.getFilePath() != null) {
+        CompletableFuture<List<CodeSearchHighlightData>> highlightData =
+            searcher.getHighlightData(facet.getName(), result.getFilePath(), facet.getQuery());
+        if (highlightData != null) {
+          result.setHighlightData(highlightData.get());
+        }
+      }
+      if (result.isContentLoaded() || prefetched.contains(result)) {
+        prefetched.add(result);
+        prefetchCount.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | RuntimeException e) {
+      LOG.debug("Error prefetching search result ", e.getMessage());
+    }
+  }
+
+  /**
+   * Downloads the beginning of the content, which is kept if it is the whole content, or handed to the loader.
+   * The searcher reads the content from its cache if present.
+   */
+  private void loadContent(CodeSearchResult result, CodeSearchFacet facet)
+      throws InterruptedException, ExecutionException {
+    CompletableFuture<ContentRange> range = searcher.getContentRange(result, 0, MAX_CONTENT_LENGTH);
+    if (range == null) {
+      CompletableFuture<String> content = searcher.getContents(facet.getId(), result.getFilePath());
+      if (content != null) {
+        result.setContent(content.get());
+      }
+      return;
+    }
+    ContentRange content = range.get();
+    if (content != null && content.getStart() == 0 && content.isLast()) {
+      result.setContent(content.getText());
+    } else if (content != null && content.getStart() == 0) {
+      CodeSearchUtils.keepFirstRange(result, content);
+      prefetched.add(result);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ContentPrefetcher{" + "prefetched=" + prefetchCount.get() + ", cancelled=" + cancelCount + '}';
+  }
+}
@@ -14,6 +14,15 @@ class FacetTreeNode extends DefaultMutableTreeNode {
     super(facet);
     this.facet = facet;
   }
+
+  CodeSearchFacet getFacet() {
+    return facet;
+  }
+
+  void setFacet(CodeSearchFacet facet) {
+    setUserObject(facet);
+    this.facet = facet;
+  }
   @Override
   public String toString() {
     return String.format("%s (%d)", facet.getName(), facet.getMatchCount());
@@ -11,7 +11,9 @@ import com.senthil.codesearch.model.CodeSearchFacet;
 import com.senthil.messages.Messages;
 
 import java.awt.*;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
@@ -84,6 +86,37 @@ class FacetsPanel extends JBPanel {
         facetsTree.expandPath(new TreePath(root.getPath()));
     }
 
+    /**
+     * Updates the facets in place, keeping the selection and the expanded state of the tree.
+     * Facets are matched by their id, the facets that are no longer present are removed and the new ones are added.
+     *
+     * @param products refreshed list of multi products for the displayed query.
+     * @param query    search query string.
+     */
+    void refresh(List<CodeSearchFacet> products, String query) {
+        if (products.isEmpty() || root.getChildCount() == 0) {
+            update(products, query);
+            return;
+        }
+        Map<String, CodeSearchFacet> refreshed = new LinkedHashMap<>();
+        for (CodeSearchFacet product : products) {
+            refreshed.put(product.getId(), product);
+        }
+        for (int i = root.getChildCount() - 1; i >= 0; i--) {
+            FacetTreeNode node = (FacetTreeNode) root.getChildAt(i);
+            CodeSearchFacet product = refreshed.remove(node.getFacet().getId());
+            if (product == null) {
+                model.removeNodeFromParent(node);
+            } else {
+                node.setFacet(product);
+                model.nodeChanged(node);
+            }
+        }
+        for (CodeSearchFacet product : refreshed.values()) {
+            model.insertNodeInto(new FacetTreeNode(product), root, root.getChildCount());
+        }
+    }
+
     /**
      * Display a busy message in the facets panel.
      */
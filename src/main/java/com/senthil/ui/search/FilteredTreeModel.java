@@ -1,27 +1,82 @@
 package com.senthil.ui.search;
 
+import com.senthil.codesearch.filter.ResultFilter;
+import com.senthil.codesearch.filter.ResultFilters;
+import com.senthil.codesearch.filter.ResultIndex;
 import com.senthil.codesearch.model.CodeSearchResult;
 
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
  * Custom tree model that wraps the underlying tree model into a filter.
- * Only nodes that match one of the filters are displayed in the
+ * Only nodes that match one of the file type filters and the query filter are displayed in the
  * tree view
+ *
+ * The visible children of a parent are indexed the first time the parent is accessed and the index is updated
+ * when the underlying model changes or the filters change, so the lookups done by the tree while painting are O(1).
+ * The events of the underlying model are translated to the visible indices before they are passed to the listeners,
+ * and a filter change is reported as removal and insertion of the affected nodes instead of a reload.
+ * The results are indexed as they are added, so a filter is evaluated once for all the results and a node
+ * is checked with a bit lookup.
  */
 class FilteredTreeModel implements TreeModel {
 
   private TreeModel treeModel;
 
   private LinkedHashSet<String> filters = new LinkedHashSet<>();
+  /**
+   * filter typed by the user, null if none.
+   */
+  private ResultFilter queryFilter;
+  /**
+   * the file type and query filters combined, null if nothing is filtered.
+   */
+  private ResultFilter filter;
+
+  private final ResultIndex resultIndex = new ResultIndex();
+  /**
+   * rows of the result index matching the filter, null if to be evaluated.
+   */
+  private BitSet visibleRows;
+
+  /**
+   * A filter change affecting more nodes than this is reported as a structure change of the parent.
+   * The tree handles a large number of removed or inserted rows one row at a time, so rebuilding the rows of the
+   * parent is cheaper.
+   */
+  private static final int MAX_FINE_GRAINED_CHANGES = 500;
+
+  private final EventListenerList listeners = new EventListenerList();
+  /**
+   * visible children of the indexed parents.
+   */
+  private final Map<Object, List<Object>> visibleChildren = new IdentityHashMap<>();
+  /**
+   * position of a visible node among the visible children of its parent.
+   */
+  private final Map<Object, Integer> visiblePositions = new IdentityHashMap<>();
+  /**
+   * cached match state of the nodes, a node matches if it or any of its descendants matches the filters.
+   */
+  private final Map<Object, Boolean> matches = new IdentityHashMap<>();
 
   FilteredTreeModel(final TreeModel treeModel) {
     this.treeModel = treeModel;
+    treeModel.addTreeModelListener(new UnderlyingModelListener());
   }
 
   TreeModel getTreeModel() {
@@ -34,8 +89,8 @@ class FilteredTreeModel implements TreeModel {
    */
   void addFilter(String fileType) {
     fileType = fileType.toLowerCase();
-    if (!filters.contains(fileType)) {
-      filters.add(fileType);
+    if (filters.add(fileType)) {
+      updateFilter();
     }
   }
 
@@ -44,28 +99,218 @@ class FilteredTreeModel implements TreeModel {
    * @param fileType
    */
   void removeFilter(final String fileType) {
-    filters.remove(fileType.toLowerCase());
+    if (filters.remove(fileType.toLowerCase())) {
+      updateFilter();
+    }
+  }
+
+  /**
+   * Sets the filter typed by the user, which applies in addition to the file type filters.
+   * @param queryFilter the filter or null to remove it.
+   */
+  void setQueryFilter(ResultFilter queryFilter) {
+    if (this.queryFilter == null && queryFilter == null) {
+      return;
+    }
+    this.queryFilter = queryFilter;
+    updateFilter();
+  }
+
+  /**
+   * @return the file type and query filters combined, null if nothing is filtered.
+   */
+  ResultFilter getFilter() {
+    return filter;
+  }
+
+  private void updateFilter() {
+    ResultFilter fileTypes = filters.isEmpty() ? null : ResultFilters.extension(filters);
+    if (fileTypes != null && queryFilter != null) {
+      filter = ResultFilters.and(fileTypes, queryFilter);
+    } else {
+      filter = fileTypes != null ? fileTypes : queryFilter;
+    }
+    visibleRows = null;
+    onFiltersChanged();
+  }
+
+  /**
+   * Adds the result of the node to the index.
+   */
+  private void register(final Object node) {
+    Object userObject = ((DefaultMutableTreeNode) node).getUserObject();
+    if (userObject instanceof CodeSearchResult && resultIndex.rowOf((CodeSearchResult) userObject) < 0) {
+      resultIndex.add((CodeSearchResult) userObject);
+      visibleRows = null;
+    }
+  }
+
+  /**
+   * Checks the node itself against the filters.
+   * @param node tree node
+   * @return true if the node should be displayed irrespective of its children.
+   */
+  private boolean isVisible(final Object node) {
+    Object userObject = ((DefaultMutableTreeNode) node).getUserObject();
+    if (filter == null || !(userObject instanceof CodeSearchResult)) {
+      return true;
+    }
+    register(node);
+    if (visibleRows == null) {
+      visibleRows = filter.apply(resultIndex);
+    }
+    return visibleRows.get(resultIndex.rowOf((CodeSearchResult) userObject));
   }
 
   /**
-   * Does a recursive match
-   * @param obj tree node
-   * @param filters list of filters
+   * Does a recursive match, caching the result for the node.
+   * @param node tree node
    * @return true if there a match
    */
-  private boolean recursiveMatch(final Object obj, LinkedHashSet<String> filters) {
-    DefaultMutableTreeNode node = (DefaultMutableTreeNode) obj;
+  private boolean matches(final Object node) {
+    Boolean cached = matches.get(node);
+    if (cached != null) {
+      return cached;
+    }
+    boolean match = isVisible(node);
+    int childCount = treeModel.getChildCount(node);
+    for (int i = 0; i < childCount && !match; i++) {
+      match = matches(treeModel.getChild(node, i));
+    }
+    matches.put(node, match);
+    return match;
+  }
 
-    boolean matches = filters.isEmpty() || (node.getUserObject() instanceof String) || filters.contains(
-        ((CodeSearchResult) node.getUserObject()).getFileExtension().toLowerCase());
+  /**
+   * @return the visible children of the parent, indexing them if required.
+   */
+  private List<Object> getVisibleChildren(final Object parent) {
+    List<Object> children = visibleChildren.get(parent);
+    if (children == null) {
+      children = index(parent);
+    }
+    return children;
+  }
 
+  /**
+   * (Re)builds the visible children index of the parent.
+   */
+  private List<Object> index(final Object parent) {
+    List<Object> previous = visibleChildren.get(parent);
+    if (previous != null) {
+      for (Object child : previous) {
+        visiblePositions.remove(child);
+      }
+    }
+    int childCount = treeModel.getChildCount(parent);
+    //all the children are indexed before the filter is evaluated.
+    for (int i = 0; i < childCount; i++) {
+      register(treeModel.getChild(parent, i));
+    }
+    List<Object> children = new ArrayList<>(childCount);
+    for (int i = 0; i < childCount; i++) {
+      Object child = treeModel.getChild(parent, i);
+      if (matches(child)) {
+        visiblePositions.put(child, children.size());
+        children.add(child);
+      }
+    }
+    visibleChildren.put(parent, children);
+    return children;
+  }
+
+  /**
+   * Drops the cached state of the node and its descendants.
+   */
+  private void invalidate(final Object node) {
+    matches.remove(node);
+    List<Object> children = visibleChildren.remove(node);
+    if (children != null) {
+      for (Object child : children) {
+        visiblePositions.remove(child);
+      }
+    }
     int childCount = treeModel.getChildCount(node);
     for (int i = 0; i < childCount; i++) {
-      Object child = treeModel.getChild(node, i);
-      matches |= recursiveMatch(child, filters);
+      invalidate(treeModel.getChild(node, i));
+    }
+  }
+
+  /**
+   * Drops the cached match state of the nodes of the path, which depends on the descendants that changed.
+   */
+  private void invalidateMatches(final TreePath path) {
+    for (Object node : path.getPath()) {
+      matches.remove(node);
+    }
+  }
+
+  /**
+   * Recomputes the match state and reports the nodes that were hidden or shown, parent by parent.
+   */
+  private void onFiltersChanged() {
+    matches.clear();
+    List<Object> parents = new ArrayList<>(visibleChildren.keySet());
+    for (Object parent : parents) {
+      List<Object> before = visibleChildren.get(parent);
+      if (before == null) {
+        continue;
+      }
+      before = new ArrayList<>(before);
+      List<Object> after = index(parent);
+      TreePath path = pathTo(parent);
+      if (path == null) {
+        continue;
+      }
+
+      //removed nodes are reported with their positions before the change.
+      Set<Object> beforeSet = Collections.newSetFromMap(new IdentityHashMap<>());
+      List<Object> removed = new ArrayList<>();
+      List<Integer> removedPositions = new ArrayList<>();
+      for (int i = 0; i < before.size(); i++) {
+        beforeSet.add(before.get(i));
+        if (!visiblePositions.containsKey(before.get(i))) {
+          removed.add(before.get(i));
+          removedPositions.add(i);
+        }
+      }
+
+      //inserted nodes are reported with their positions after the change.
+      List<Object> inserted = new ArrayList<>();
+      List<Integer> insertedPositions = new ArrayList<>();
+      for (int i = 0; i < after.size(); i++) {
+        if (!beforeSet.contains(after.get(i))) {
+          inserted.add(after.get(i));
+          insertedPositions.add(i);
+        }
+      }
+
+      if (removed.size() + inserted.size() > MAX_FINE_GRAINED_CHANGES) {
+        fireTreeStructureChanged(new TreeModelEvent(this, path));
+        continue;
+      }
+      if (!removed.isEmpty()) {
+        fireTreeNodesRemoved(new TreeModelEvent(this, path, toArray(removedPositions), removed.toArray()));
+      }
+      if (!inserted.isEmpty()) {
+        fireTreeNodesInserted(new TreeModelEvent(this, path, toArray(insertedPositions), inserted.toArray()));
+      }
     }
+  }
 
-    return matches;
+  private TreePath pathTo(final Object node) {
+    if (node instanceof DefaultMutableTreeNode) {
+      return new TreePath(((DefaultMutableTreeNode) node).getPath());
+    }
+    return node == getRoot() ? new TreePath(node) : null;
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    int[] array = new int[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
   }
 
   @Override
@@ -75,31 +320,13 @@ class FilteredTreeModel implements TreeModel {
 
   @Override
   public Object getChild(final Object parent, final int index) {
-    int count = 0;
-    int childCount = treeModel.getChildCount(parent);
-    for (int i = 0; i < childCount; i++) {
-      Object child = treeModel.getChild(parent, i);
-      if (recursiveMatch(child, filters)) {
-        if (count == index) {
-          return child;
-        }
-        count++;
-      }
-    }
-    return null;
+    List<Object> children = getVisibleChildren(parent);
+    return index >= 0 && index < children.size() ? children.get(index) : null;
   }
 
   @Override
   public int getChildCount(final Object parent) {
-    int count = 0;
-    int childCount = treeModel.getChildCount(parent);
-    for (int i = 0; i < childCount; i++) {
-      Object child = treeModel.getChild(parent, i);
-      if (recursiveMatch(child, filters)) {
-        count++;
-      }
-    }
-    return count;
+    return getVisibleChildren(parent).size();
   }
 
   @Override
@@ -114,25 +341,169 @@ class FilteredTreeModel implements TreeModel {
 
   @Override
   public int getIndexOfChild(final Object parent, final Object childToFind) {
-    int childCount = treeModel.getChildCount(parent);
-    for (int i = 0; i < childCount; i++) {
-      Object child = treeModel.getChild(parent, i);
-      if (recursiveMatch(child, filters)) {
-        if (childToFind.equals(child)) {
-          return i;
-        }
-      }
+    if (parent == null || childToFind == null) {
+      return -1;
     }
-    return -1;
+    getVisibleChildren(parent);
+    Integer position = visiblePositions.get(childToFind);
+    return position == null ? -1 : position;
   }
 
   @Override
   public void addTreeModelListener(final TreeModelListener l) {
-    treeModel.addTreeModelListener(l);
+    listeners.add(TreeModelListener.class, l);
   }
 
   @Override
   public void removeTreeModelListener(final TreeModelListener l) {
-    treeModel.removeTreeModelListener(l);
+    listeners.remove(TreeModelListener.class, l);
+  }
+
+  private void fireTreeNodesInserted(TreeModelEvent event) {
+    for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+      listener.treeNodesInserted(event);
+    }
+  }
+
+  private void fireTreeNodesRemoved(TreeModelEvent event) {
+    for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+      listener.treeNodesRemoved(event);
+    }
+  }
+
+  private void fireTreeNodesChanged(TreeModelEvent event) {
+    for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+      listener.treeNodesChanged(event);
+    }
+  }
+
+  private void fireTreeStructureChanged(TreeModelEvent event) {
+    for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+      listener.treeStructureChanged(event);
+    }
+  }
+
+  /**
+   * Keeps the index in sync with the underlying model and translates its events to the visible positions.
+   */
+  private class UnderlyingModelListener implements TreeModelListener {
+
+    @Override
+    public void treeNodesInserted(TreeModelEvent e) {
+      Object parent = e.getTreePath().getLastPathComponent();
+      List<Object> children = visibleChildren.get(parent);
+      invalidateMatches(e.getTreePath());
+      if (children == null) {
+        //not displayed yet, indexed on first access.
+        return;
+      }
+      Object[] inserted = e.getChildren();
+      for (Object child : inserted) {
+        register(child);
+      }
+      int[] indices = e.getChildIndices();
+      boolean appended = indices.length > 0 && indices[0] == treeModel.getChildCount(parent) - indices.length;
+      List<Object> visibleInserted = new ArrayList<>();
+      List<Integer> positions = new ArrayList<>();
+      if (appended) {
+        //the common case of results being appended, the index is extended in place.
+        for (Object child : inserted) {
+          if (matches(child)) {
+            visiblePositions.put(child, children.size());
+            positions.add(children.size());
+            visibleInserted.add(child);
+            children.add(child);
+          }
+        }
+      } else {
+        index(parent);
+        for (Object child : inserted) {
+          Integer position = visiblePositions.get(child);
+          if (position != null) {
+            positions.add(position);
+            visibleInserted.add(child);
+          }
+        }
+      }
+      if (!visibleInserted.isEmpty()) {
+        fireTreeNodesInserted(new TreeModelEvent(FilteredTreeModel.this, e.getTreePath(), toArray(positions),
+            visibleInserted.toArray()));
+      }
+    }
+
+    @Override
+    public void treeNodesRemoved(TreeModelEvent e) {
+      Object parent = e.getTreePath().getLastPathComponent();
+      List<Object> children = visibleChildren.get(parent);
+      List<Object> visibleRemoved = new ArrayList<>();
+      List<Integer> positions = new ArrayList<>();
+      for (Object child : e.getChildren()) {
+        Integer position = visiblePositions.get(child);
+        if (position != null) {
+          positions.add(position);
+          visibleRemoved.add(child);
+        }
+        invalidate(child);
+      }
+      invalidateMatches(e.getTreePath());
+      if (children == null) {
+        return;
+      }
+      index(parent);
+      if (!visibleRemoved.isEmpty()) {
+        //the removed children are in the order of the underlying model, so the positions are already ascending.
+        fireTreeNodesRemoved(new TreeModelEvent(FilteredTreeModel.this, e.getTreePath(), toArray(positions),
+            visibleRemoved.toArray()));
+      }
+    }
+
+    @Override
+    public void treeNodesChanged(TreeModelEvent e) {
+      Object[] changed = e.getChildren();
+      if (changed == null) {
+        //the node of the path itself changed.
+        fireTreeNodesChanged(new TreeModelEvent(FilteredTreeModel.this, e.getTreePath()));
+        return;
+      }
+      Object parent = e.getTreePath().getLastPathComponent();
+      invalidateMatches(e.getTreePath());
+      boolean visibilityChanged = false;
+      List<Object> visibleChanged = new ArrayList<>();
+      List<Integer> positions = new ArrayList<>();
+      for (Object child : changed) {
+        boolean wasVisible = visiblePositions.containsKey(child);
+        matches.remove(child);
+        if (matches(child) != wasVisible) {
+          visibilityChanged = true;
+        } else if (wasVisible) {
+          positions.add(visiblePositions.get(child));
+          visibleChanged.add(child);
+        }
+      }
+      if (visibilityChanged && visibleChildren.containsKey(parent)) {
+        index(parent);
+        fireTreeStructureChanged(new TreeModelEvent(FilteredTreeModel.this, e.getTreePath()));
+      } else if (!visibleChanged.isEmpty()) {
+        fireTreeNodesChanged(new TreeModelEvent(FilteredTreeModel.this, e.getTreePath(), toArray(positions),
+            visibleChanged.toArray()));
+      }
+    }
+
+    @Override
+    public void treeStructureChanged(TreeModelEvent e) {
+      TreePath path = e.getTreePath();
+      if (path != null && path.getPathCount() > 1) {
+        invalidate(path.getLastPathComponent());
+        invalidateMatches(path);
+      } else {
+        //the results were replaced, the index is rebuilt as the new results are accessed.
+        visibleChildren.clear();
+        visiblePositions.clear();
+        matches.clear();
+        resultIndex.clear();
+        visibleRows = null;
+      }
+      fireTreeStructureChanged(new TreeModelEvent(FilteredTreeModel.this, path));
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package com.senthil.ui.search;
+
+import com.senthil.codesearch.model.CodeSearchFacet;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Pages of results requested before the user asks for them, keyed by facet and start.
+ * The pages may still be loading. At most a few pages are kept, the oldest are dropped.
+ *
+ * Must be used in the event dispatch thread.
+ */
+class PageBuffer {
+
+  private final Map<PageKey, CompletableFuture<List<CodeSearchResult>>> pages;
+
+  PageBuffer(int maxPages) {
+    pages = new LinkedHashMap<PageKey, CompletableFuture<List<CodeSearchResult>>>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<PageKey, CompletableFuture<List<CodeSearchResult>>> eldest) {
+        return size() > maxPages;
+      }
+    };
+  }
+
+  boolean contains(@NotNull CodeSearchFacet facet, int start) {
+    return pages.containsKey(new PageKey(facet, start));
+  }
+
+  void put(@NotNull CodeSearchFacet facet, int start, @NotNull CompletableFuture<List<CodeSearchResult>> page) {
+    pages.put(new PageKey(facet, start), page);
+  }
+
+  /**
+   * Removes the page from the buffer.
+   * @return the page or null if it is not present or failed.
+   */
+  CompletableFuture<List<CodeSearchResult>> take(@NotNull CodeSearchFacet facet, int start) {
+    CompletableFuture<List<CodeSearchResult>> page = pages.remove(new PageKey(facet, start));
+    if (page == null || page.isCompletedExceptionally() || (page.isDone() && page.getNow(null) == null)) {
+      return null;
+    }
+    return page;
+  }
+
+  void clear() {
+    pages.clear();
+  }
+
+  private static final class PageKey {
+    private final String query;
+    private final String facetId;
+    private final int start;
+
+    PageKey(CodeSearchFacet facet, int start) {
+      this.query = facet.getQuery();
+      this.facetId = facet.getId();
+      this.start = start;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PageKey)) {
+        return false;
+      }
+      PageKey other = (PageKey) o;
+      return start == other.start && Objects.equals(query, other.query) && Objects.equals(facetId, other.facetId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, facetId, start);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.senthil.ui.search;
+
+import com.senthil.codesearch.filter.ResultFilter;
+import com.senthil.codesearch.filter.ResultIndex;
+import com.senthil.codesearch.model.CodeSearchResult;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+
+/**
+ * List model of the flat results view.
+ * The results are kept in a {@link ResultIndex} and the list only stores the rows that pass the filter,
+ * so no per result object is created for the view and the list asks for the rows it paints.
+ * The last element is an optional trailer, the 'load more' or loading message.
+ *
+ * Must be used in the event dispatch thread.
+ */
+@SuppressWarnings("serial")
+class ResultsListModel extends AbstractListModel<Object> {
+
+  private final ResultIndex results = new ResultIndex();
+  private ResultFilter filter;
+  /**
+   * rows of the results that pass the filter, in order. Unused if there is no filter.
+   */
+  private int[] visibleRows = new int[0];
+  private int visibleCount;
+  /**
+   * displayed after the results, null if none.
+   */
+  private Object trailer;
+
+  @Override
+  public int getSize() {
+    return resultCount() + (trailer == null ? 0 : 1);
+  }
+
+  @Override
+  public Object getElementAt(int index) {
+    if (index < resultCount()) {
+      return getResult(index);
+    }
+    return trailer;
+  }
+
+  /**
+   * @return the result displayed at the index.
+   */
+  CodeSearchResult getResult(int index) {
+    return results.getResult(filter == null ? index : visibleRows[index]);
+  }
+
+  /**
+   * no of results displayed, excluding the trailer.
+   */
+  int resultCount() {
+    return filter == null ? results.size() : visibleCount;
+  }
+
+  /**
+   * no of results loaded, including the filtered ones.
+   */
+  int loadedCount() {
+    return results.size();
+  }
+
+  /**
+   * @return index of the displayed result or -1.
+   */
+  int indexOf(CodeSearchResult result) {
+    int row = results.rowOf(result);
+    if (row < 0 || filter == null) {
+      return row;
+    }
+    int index = Arrays.binarySearch(visibleRows, 0, visibleCount, row);
+    return index < 0 ? -1 : index;
+  }
+
+  Object getTrailer() {
+    return trailer;
+  }
+
+  void setTrailer(Object trailer) {
+    Object previous = this.trailer;
+    this.trailer = trailer;
+    int index = resultCount();
+    if (previous == null && trailer != null) {
+      fireIntervalAdded(this, index, index);
+    } else if (previous != null && trailer == null) {
+      fireIntervalRemoved(this, index, index);
+    } else if (previous != null) {
+      fireContentsChanged(this, index, index);
+    }
+  }
+
+  void addAll(List<CodeSearchResult> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    int firstIndex = resultCount();
+    int firstRow = results.size();
+    for (CodeSearchResult result : batch) {
+      results.add(result);
+    }
+    if (filter != null) {
+      //the filter does not change for the existing rows, only the new rows are appended.
+      BitSet matching = filter.apply(results);
+      for (int row = matching.nextSetBit(firstRow); row >= 0; row = matching.nextSetBit(row + 1)) {
+        appendVisible(row);
+      }
+    }
+    int lastIndex = resultCount() - 1;
+    if (lastIndex >= firstIndex) {
+      fireIntervalAdded(this, firstIndex, lastIndex);
+    }
+  }
+
+  /**
+   * Replaces the results.
+   */
+  void setAll(List<CodeSearchResult> newResults) {
+    int oldSize = getSize();
+    results.clear();
+    visibleCount = 0;
+    for (CodeSearchResult result : newResults) {
+      results.add(result);
+    }
+    applyFilter(oldSize);
+  }
+
+  void clear() {
+    int oldSize = getSize();
+    results.clear();
+    visibleCount = 0;
+    trailer = null;
+    fireReplaced(oldSize);
+  }
+
+  /**
+   * @param filter the filter or null to display all the results.
+   */
+  void setFilter(ResultFilter filter) {
+    if (this.filter == null && filter == null) {
+      return;
+    }
+    int oldSize = getSize();
+    this.filter = filter;
+    applyFilter(oldSize);
+  }
+
+  private void applyFilter(int oldSize) {
+    visibleCount = 0;
+    if (filter != null) {
+      BitSet matching = filter.apply(results);
+      visibleRows = new int[Math.max(matching.cardinality(), 16)];
+      for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+        visibleRows[visibleCount++] = row;
+      }
+    }
+    fireReplaced(oldSize);
+  }
+
+  /**
+   * Reports all the elements as replaced.
+   */
+  private void fireReplaced(int oldSize) {
+    if (oldSize > 0) {
+      fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+    if (getSize() > 0) {
+      fireIntervalAdded(this, 0, getSize() - 1);
+    }
+  }
+
+  private void appendVisible(int row) {
+    if (visibleCount == visibleRows.length) {
+      visibleRows = Arrays.copyOf(visibleRows, Math.max(16, visibleCount * 2));
+    }
+    visibleRows[visibleCount++] = row;
+  }
+}
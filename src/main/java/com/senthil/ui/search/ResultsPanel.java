@@ -24,7 +24,9 @@ import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.openapi.ui.popup.ListPopup;
 import com.intellij.openapi.ui.popup.PopupStep;
 import com.intellij.openapi.ui.popup.util.BaseListPopupStep;
+import com.intellij.ui.DocumentAdapter;
 import com.intellij.ui.JBColor;
+import com.intellij.ui.SearchTextField;
 import com.intellij.ui.TreeSpeedSearch;
 import com.intellij.ui.awt.RelativePoint;
 import com.intellij.ui.components.JBPanel;
@@ -33,6 +35,7 @@ import com.intellij.ui.treeStructure.Tree;
 import com.intellij.usages.UsageView;
 import com.senthil.messages.Messages;
 import com.senthil.codesearch.CodeSearchHistoryManager;
+import com.senthil.codesearch.filter.ResultFilters;
 import com.senthil.codesearch.model.CodeSearchFacet;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.codesearch.net.CodeSearchRequest;
@@ -42,10 +45,10 @@ import com.sun.glass.events.KeyEvent;
 import java.awt.*;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -62,6 +65,7 @@ class ResultsPanel extends JBPanel {
    * tree display of results.
    */
   private final ResultsViewComponent resultsViewComponent;
+  private final JBScrollPane scrollPane;
 
   ResultsPanel(Tree tree) {
     resultsViewTree = tree;
@@ -75,11 +79,16 @@ class ResultsPanel extends JBPanel {
 
     JBPanel resultsView = new JBPanel();
     resultsView.setLayout(new BorderLayout());
-    resultsView.add(filterToolbar, BorderLayout.NORTH);
+    JBPanel filterPanel = new JBPanel();
+    filterPanel.setLayout(new BorderLayout());
+    filterPanel.add(filterToolbar, BorderLayout.WEST);
+    filterPanel.add(createFilterField(), BorderLayout.CENTER);
+    resultsView.add(filterPanel, BorderLayout.NORTH);
     //The load more button doesnt work if the horizontal scrollbar is present. So we disable horizontal scrollbar
     //Fix this if required.
-    resultsView.add(new JBScrollPane(resultsViewComponent, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
-        ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.CENTER);
+    scrollPane = new JBScrollPane(resultsViewComponent, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+        ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+    resultsView.add(scrollPane, BorderLayout.CENTER);
     add(resultsView, BorderLayout.CENTER);
     new TreeSpeedSearch(resultsViewTree, TreeSpeedSearch.NODE_DESCRIPTOR_TOSTRING, false);
   }
@@ -104,6 +113,80 @@ class ResultsPanel extends JBPanel {
     return actionToolbar;
   }
 
+  /**
+   * Text field filtering the loaded results locally, see {@link ResultFilters#parse(String)} for the syntax.
+   */
+  private SearchTextField createFilterField() {
+    SearchTextField filterField = new SearchTextField(false);
+    filterField.getTextEditor().setToolTipText(Messages.message("ui.codesearch.results.filter.hint"));
+    filterField.addDocumentListener(new DocumentAdapter() {
+      @Override
+      protected void textChanged(DocumentEvent e) {
+        String text = filterField.getText().trim();
+        JTextField editor = filterField.getTextEditor();
+        try {
+          resultsViewComponent.setQueryFilter(text.isEmpty() ? null : ResultFilters.parse(text));
+          editor.setForeground(UIManager.getColor("TextField.foreground"));
+        } catch (PatternSyntaxException ex) {
+          //keep the previous filter while the expression is being typed.
+          editor.setForeground(JBColor.RED);
+        }
+      }
+    });
+    return filterField;
+  }
+
+  CodeSearchResult getSelectedResult() {
+    return resultsViewComponent.getSelectedResult();
+  }
+
+  List<CodeSearchResult> getResultsAfter(CodeSearchResult result, int count) {
+    return resultsViewComponent.getResultsAfter(result, count);
+  }
+
+  void addSelectionListener(Runnable listener) {
+    resultsViewComponent.addSelectionListener(listener);
+  }
+
+  /**
+   * Notifies the listener when the view is scrolled to, or one of the last rows is selected.
+   * @param rows no of rows from the end.
+   */
+  void addNearEndListener(int rows, Runnable listener) {
+    BoundedRangeModel scrollModel = scrollPane.getVerticalScrollBar().getModel();
+    scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+      int distance = scrollModel.getMaximum() - scrollModel.getValue() - scrollModel.getExtent();
+      if (!e.getValueIsAdjusting() && scrollModel.getMaximum() > scrollModel.getExtent()
+          && distance <= rows * resultsViewComponent.getRowHeight()) {
+        listener.run();
+      }
+    });
+    resultsViewComponent.addSelectionListener(() -> {
+      if (resultsViewComponent.isSelectionNearEnd(rows)) {
+        listener.run();
+      }
+    });
+  }
+
+  boolean isLoading() {
+    return resultsViewComponent.isLoading();
+  }
+
+  boolean isLoadMoreSelected() {
+    return resultsViewComponent.isLoadMoreSelected();
+  }
+
+  /**
+   * no of results loaded for the facet.
+   */
+  int getResultCount() {
+    return resultsViewComponent.getResultCount();
+  }
+
+  JComponent getResultsList() {
+    return resultsViewComponent.getResultsList();
+  }
+
   void clearView() {
     resultsViewComponent.clear();
   }
@@ -112,11 +195,28 @@ class ResultsPanel extends JBPanel {
     resultsViewComponent.markLoading();
   }
 
+  int startLoading(CodeSearchFacet facet) {
+    return resultsViewComponent.startLoading(facet);
+  }
+
+  void appendResults(int loadId, List<CodeSearchResult> results, CodeSearchFacet facet) {
+    resultsViewComponent.appendResults(loadId, results, facet);
+  }
+
+  void finishLoading(int loadId, CodeSearchFacet facet, boolean lastPage) {
+    resultsViewComponent.finishLoading(loadId, facet, lastPage);
+  }
+
   /**
    * Displays a list of previous search queries to the user.
    */
   public static class HistoryAction extends AnAction implements DumbAware {
 
+    /**
+     * max no of queries displayed in the popup.
+     */
+    private static final int MAX_QUERIES = 50;
+
     class HistoryPopup extends BaseListPopupStep<CodeSearchRequest> {
       private final Project project;
 
@@ -131,11 +231,18 @@ class ResultsPanel extends JBPanel {
         CodesearchPanel panel = new CodesearchPanel(project);
         CodeSearchUtils.showWindow(panel, request.toString());
         SearcherFactory.getSearcher()
-            .getFacets(request)
-            .thenAccept(facets -> panel.updateFacets(facets, request))
+            .search(request)
+            .thenAccept(response -> {
+              if (response == null) {
+                panel.displayError();
+                CodeSearchUtils.displayErrorMessage(project);
+              } else {
+                panel.updateSearchResponse(response, request);
+              }
+            })
             .exceptionally(ex -> {
               panel.displayError();
-              CodeSearchUtils.displayErrorMessage(project);
+              CodeSearchUtils.displayErrorMessage(project, ex);
               return null;
             });
         return FINAL_CHOICE;
@@ -179,15 +286,7 @@ class ResultsPanel extends JBPanel {
 
     void displayPopup(Project project, RelativePoint point) {
 
-      List<CodeSearchRequest> recentQueries = CodeSearchHistoryManager.getInstance()
-          .getRecentQueries()
-          .stream()
-          .map(CodeSearchRequest::copy)
-          .collect(Collectors.toList());
-
-      if (!recentQueries.isEmpty()) {
-        Collections.reverse(recentQueries);
-      }
+      List<CodeSearchRequest> recentQueries = CodeSearchHistoryManager.getInstance().getRecentQueries(MAX_QUERIES);
 
       if (recentQueries.isEmpty()) {
         recentQueries.add(null); // to fill the popup
@@ -205,7 +304,7 @@ class ResultsPanel extends JBPanel {
     @Override
     public void update(AnActionEvent e) {
       Presentation presentation = e.getPresentation();
-      presentation.setEnabled(CodeSearchHistoryManager.getInstance().getRecentQueries().size() > 1);
+      presentation.setEnabled(CodeSearchHistoryManager.getInstance().getQueryCount() > 1);
     }
   }
 
@@ -281,6 +380,26 @@ class ResultsPanel extends JBPanel {
     }
   }
 
+  /**
+   * Switches between the results tree and the flat results list.
+   */
+  private class ListViewAction extends ToggleAction {
+
+    public ListViewAction() {
+      super(Messages.message("ui.codesearch.toolbar.hints.listview"), null, AllIcons.ObjectBrowser.FlattenPackages);
+    }
+
+    @Override
+    public boolean isSelected(AnActionEvent anActionEvent) {
+      return resultsViewComponent.isListView();
+    }
+
+    @Override
+    public void setSelected(AnActionEvent anActionEvent, boolean state) {
+      resultsViewComponent.setListView(state);
+    }
+  }
+
   /**
    * Opens the current search result in browser.
    */
@@ -293,15 +412,14 @@ class ResultsPanel extends JBPanel {
     @Override
     public void update(AnActionEvent e) {
       Presentation presentation = e.getPresentation();
-      presentation.setEnabled(!resultsViewTree.isEmpty() && resultsViewTree.getLastSelectedPathComponent() != null
-          && resultsViewTree.getLastSelectedPathComponent() instanceof ResultsTreeNode);
+      presentation.setEnabled(resultsViewComponent.getSelectedResult() != null);
     }
 
     @Override
     public void actionPerformed(AnActionEvent event) {
-      if (resultsViewTree.getLastSelectedPathComponent() instanceof ResultsTreeNode) {
-        ResultsTreeNode currentNode = (ResultsTreeNode) resultsViewTree.getLastSelectedPathComponent();
-        CodeSearchUtils.openInBrowser(currentNode.getSearchResult().getFilePath());
+      CodeSearchResult result = resultsViewComponent.getSelectedResult();
+      if (result != null) {
+        CodeSearchUtils.openInBrowser(result.getFilePath());
       }
     }
   }
@@ -310,6 +428,13 @@ class ResultsPanel extends JBPanel {
     resultsViewComponent.update(searchResults, facet);
   }
 
+  /**
+   * Replaces the displayed results in place with refreshed results.
+   */
+  void replace(List<CodeSearchResult> searchResults, CodeSearchFacet facet) {
+    resultsViewComponent.replace(searchResults, facet);
+  }
+
   /**
    * Creates the action buttons for the tool bar.
    * @return
@@ -328,6 +453,8 @@ class ResultsPanel extends JBPanel {
     next.registerCustomShortcutSet(new CustomShortcutSet(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0)), this);
     group.add(next);
 
+    group.add(new ListViewAction());
+
     PreviewAction openExternal = new PreviewAction();
     openExternal.registerCustomShortcutSet(
         new CustomShortcutSet(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.SHIFT_MASK)), this);
@@ -4,15 +4,25 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.ui.ColoredListCellRenderer;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.JBColor;
+import com.intellij.ui.ListSpeedSearch;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.ui.treeStructure.Tree;
+import com.senthil.codesearch.filter.ResultFilter;
 import com.senthil.codesearch.model.CodeSearchResult;
 import com.senthil.messages.Messages;
 import com.senthil.codesearch.model.CodeSearchFacet;
 import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
@@ -23,6 +33,10 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * UI represenation of the search results
+ *
+ * The results are displayed either in a tree, or in a flat list for large result sets. The list is backed by a
+ * {@link ResultsListModel} which always holds the loaded results, and only paints the visible rows.
+ * The tree nodes are created only while the tree is displayed.
  */
 @SuppressWarnings("serial")
 class ResultsViewComponent extends JBPanel {
@@ -32,13 +46,44 @@ class ResultsViewComponent extends JBPanel {
   private Tree resultsTree;
 
   private DefaultMutableTreeNode root;
+  /**
+   * id of the page being loaded, incremented for every load and every clear.
+   */
+  private int loadId;
+  /**
+   * no of new results added by the page being loaded.
+   */
+  private int loadAddedCount;
+  /**
+   * flat view of the results.
+   */
+  private final JBList<Object> resultsList;
+  private final ResultsListModel listModel = new ResultsListModel();
+  /**
+   * external links of the loaded results, adjacent pages may return the same result.
+   */
+  private final Set<String> loadedLinks = new HashSet<>();
+  private boolean listView;
+  /**
+   * facet of the displayed results.
+   */
+  private CodeSearchFacet facet;
 
   private static final Logger LOGGER = Logger.getInstance(ResultsViewComponent.class);
 
+  /**
+   * trailing items of the list.
+   */
+  private static final String LOAD_MORE = Messages.message("ui.codesearch.results.load.more");
+  private static final String LOADING = Messages.message("ui.codesearch.results.loading.message");
+
   ResultsViewComponent(Tree tree) {
     setLayout(new BorderLayout());
     setBackground(JBColor.WHITE);
     resultsTree = tree;
+    resultsList = createResultsList();
+    //the tree uses the fixed height of the list rows, see getRowHeight.
+    resultsTree.setRowHeight(resultsList.getFixedCellHeight());
     if (!(resultsTree.getModel().getRoot() instanceof DefaultMutableTreeNode)) {
       return;
     }
@@ -71,6 +116,162 @@ class ResultsViewComponent extends JBPanel {
     add(resultsTree);
   }
 
+  private JBList<Object> createResultsList() {
+    JBList<Object> list = new JBList<Object>(listModel) {
+      @Override
+      public String getToolTipText(MouseEvent event) {
+        int index = locationToIndex(event.getPoint());
+        if (index < 0 || index >= listModel.resultCount()) {
+          return null;
+        }
+        return listModel.getResult(index).getFilePath();
+      }
+    };
+    list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    list.setCellRenderer(new ColoredListCellRenderer<Object>() {
+      @Override
+      protected void customizeCellRenderer(JList list, Object value, int index, boolean selected,
+          boolean hasFocus) {
+        if (value instanceof CodeSearchResult) {
+          CodeSearchResult result = (CodeSearchResult) value;
+          append(result.getFilePath() == null ? "" : result.getFilePath());
+          setIcon(FileTypeManager.getInstance().getFileTypeByExtension(result.getFileExtension()).getIcon());
+        } else if (value != null) {
+          append(value.toString(), SimpleTextAttributes.GRAYED_ATTRIBUTES);
+        }
+      }
+    });
+    //the rows have a fixed size, so the list does not render all the rows to compute its size.
+    list.setPrototypeCellValue(Messages.message("ui.codesearch.results.load.more"));
+    list.getEmptyText().setText(Messages.message("ui.codesearch.results.ready.message"));
+    new ListSpeedSearch(list, (Object value) -> value instanceof CodeSearchResult ?
+        ((CodeSearchResult) value).getFileName() : null);
+    return list;
+  }
+
+  JBList<Object> getResultsList() {
+    return resultsList;
+  }
+
+  boolean isListView() {
+    return listView;
+  }
+
+  /**
+   * Switches between the tree and the flat list. The tree nodes are created when switching to the tree,
+   * and released when switching to the list.
+   * @param listView true to display the results in a list.
+   */
+  void setListView(boolean listView) {
+    if (this.listView == listView) {
+      return;
+    }
+    this.listView = listView;
+    removeAll();
+    if (listView) {
+      root.removeAllChildren();
+      reload();
+      add(resultsList);
+    } else {
+      root.removeAllChildren();
+      for (int i = 0; i < listModel.loadedCount(); i++) {
+        root.add(new ResultsTreeNode(listModel.getResult(i)));
+      }
+      if (listModel.getTrailer() == LOAD_MORE) {
+        root.add(new ResultsTreeNode());
+      }
+      if (facet != null) {
+        root.setUserObject(resultsTitle(facet));
+      }
+      reload();
+      resultsTree.expandPath(new TreePath(root.getPath()));
+      add(resultsTree);
+    }
+    revalidate();
+    repaint();
+  }
+
+  /**
+   * @return the selected result or null if no result is selected.
+   */
+  CodeSearchResult getSelectedResult() {
+    if (listView) {
+      Object value = resultsList.getSelectedValue();
+      return value instanceof CodeSearchResult ? (CodeSearchResult) value : null;
+    }
+    Object component = resultsTree.getLastSelectedPathComponent();
+    return component instanceof ResultsTreeNode ? ((ResultsTreeNode) component).getSearchResult() : null;
+  }
+
+  /**
+   * @return the results displayed after the result, at most count.
+   */
+  List<CodeSearchResult> getResultsAfter(CodeSearchResult result, int count) {
+    int index = listModel.indexOf(result);
+    if (index < 0) {
+      return Collections.emptyList();
+    }
+    int end = Math.min(listModel.resultCount(), index + 1 + count);
+    List<CodeSearchResult> results = new ArrayList<>(Math.max(end - index - 1, 0));
+    for (int i = index + 1; i < end; i++) {
+      results.add(listModel.getResult(i));
+    }
+    return results;
+  }
+
+  /**
+   * @return true if one of the last rows of the loaded results is selected.
+   */
+  boolean isSelectionNearEnd(int rows) {
+    CodeSearchResult selected = getSelectedResult();
+    int index = selected == null ? -1 : listModel.indexOf(selected);
+    return index >= 0 && index >= listModel.resultCount() - rows;
+  }
+
+  /**
+   * @return true while a page of results is being loaded.
+   */
+  boolean isLoading() {
+    return listModel.getTrailer() == LOADING;
+  }
+
+  /**
+   * height of a row, the same in the tree and in the list.
+   */
+  int getRowHeight() {
+    return resultsList.getFixedCellHeight();
+  }
+
+  /**
+   * Notifies the listener when the selection of the tree or of the list changes.
+   */
+  void addSelectionListener(Runnable listener) {
+    resultsTree.addTreeSelectionListener(e -> listener.run());
+    resultsList.addListSelectionListener(e -> {
+      if (!e.getValueIsAdjusting()) {
+        listener.run();
+      }
+    });
+  }
+
+  /**
+   * @return true if the 'load more' item is selected.
+   */
+  boolean isLoadMoreSelected() {
+    if (listView) {
+      return resultsList.getSelectedValue() == LOAD_MORE;
+    }
+    Object component = resultsTree.getLastSelectedPathComponent();
+    return component instanceof ResultsTreeNode && ((ResultsTreeNode) component).isLastNode();
+  }
+
+  /**
+   * no of results loaded, including the filtered ones.
+   */
+  int getResultCount() {
+    return listModel.loadedCount();
+  }
+
   /**
    * Update the results window with the list of search results
    * @param results search results.
@@ -78,31 +279,174 @@ class ResultsViewComponent extends JBPanel {
    */
   public void update(List<CodeSearchResult> results, CodeSearchFacet facet) {
     ApplicationManager.getApplication().invokeLater(() -> {
-      markLoading();
-      try {
-        DefaultTreeModel model = (DefaultTreeModel) ((FilteredTreeModel) resultsTree.getModel()).getTreeModel();
-        root.setUserObject(Messages.message("ui.codesearch.results.title", facet.getQuery(), facet.getName()));
+      int loadId = startLoading(facet);
+      insertResults(loadId, results, facet);
+      completeLoading(loadId, facet, false);
+    });
+  }
+
+  /**
+   * Starts loading a page of results. Must be called in the event dispatch thread.
+   * The 'load more' node is removed until the page is loaded.
+   * @param facet CodeSearchFacet/multiproduct associated with the search request.
+   * @return id of the load, results of an older load are ignored.
+   */
+  int startLoading(CodeSearchFacet facet) {
+    loadId++;
+    loadAddedCount = 0;
+    this.facet = facet;
+    listModel.setTrailer(LOADING);
+    DefaultTreeModel model = getUnderlyingModel();
+    root.setUserObject(Messages.message("ui.codesearch.results.loading.message"));
+    model.nodeChanged(root);
+    if (root.getChildCount() > 0) {
+      ResultsTreeNode lastNode = (ResultsTreeNode) root.getLastChild();
+      if (lastNode.isLastNode()) {
+        int index = root.getIndex(lastNode);
+        root.remove(index);
+        model.nodesWereRemoved(root, new int[]{index}, new Object[]{lastNode});
+      }
+    }
+    return loadId;
+  }
+
+  /**
+   * Appends a batch of results to the page being loaded.
+   * @param loadId id returned by startLoading.
+   * @param results batch of search results.
+   * @param facet CodeSearchFacet/multiproduct associated with the search request.
+   */
+  void appendResults(int loadId, List<CodeSearchResult> results, CodeSearchFacet facet) {
+    ApplicationManager.getApplication().invokeLater(() -> insertResults(loadId, results, facet));
+  }
+
+  /**
+   * Completes the page being loaded, adding the 'load more' node if there are more results.
+   * @param loadId id returned by startLoading.
+   * @param facet CodeSearchFacet/multiproduct associated with the search request.
+   * @param lastPage true if the page returned fewer results than the page size.
+   */
+  void finishLoading(int loadId, CodeSearchFacet facet, boolean lastPage) {
+    ApplicationManager.getApplication().invokeLater(() -> completeLoading(loadId, facet, lastPage));
+  }
+
+  private void insertResults(int loadId, List<CodeSearchResult> batch, CodeSearchFacet facet) {
+    if (loadId != this.loadId) {
+      return;
+    }
+    List<CodeSearchResult> results = newResults(batch);
+    if (results.isEmpty()) {
+      return;
+    }
+    listModel.addAll(results);
+    loadAddedCount += results.size();
+    if (listView) {
+      return;
+    }
+    try {
+      DefaultTreeModel model = getUnderlyingModel();
+      int[] indices = new int[results.size()];
+      int index = root.getChildCount();
+      for (int i = 0; i < indices.length; i++) {
+        root.add(new ResultsTreeNode(results.get(i)));
+        indices[i] = index++;
+      }
+      model.nodesWereInserted(root, indices);
+      if (!resultsTitle(facet).equals(root.getUserObject())) {
+        root.setUserObject(resultsTitle(facet));
+        model.nodeChanged(root);
+      }
+      resultsTree.expandPath(new TreePath(root.getPath()));
+    } catch (Exception e) {
+      LOGGER.debug("Exception updating results", e);
+    }
+  }
+
+  /**
+   * @return the results of the batch that are not loaded yet.
+   */
+  private List<CodeSearchResult> newResults(List<CodeSearchResult> batch) {
+    List<CodeSearchResult> results = new ArrayList<>(batch.size());
+    for (CodeSearchResult result : batch) {
+      if (result.getExternalLink() == null || loadedLinks.add(result.getExternalLink())) {
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * The match count of the facet is often larger than the no of results the server returns, and the results of
+   * adjacent pages are dropped if already loaded. There are no more results once a page adds none or is not full.
+   */
+  private void completeLoading(int loadId, CodeSearchFacet facet, boolean lastPage) {
+    if (loadId != this.loadId) {
+      return;
+    }
+    boolean more = !lastPage && loadAddedCount > 0 && listModel.loadedCount() < facet.getMatchCount();
+    listModel.setTrailer(more ? LOAD_MORE : null);
+    DefaultTreeModel model = getUnderlyingModel();
+    root.setUserObject(resultsTitle(facet));
+    model.nodeChanged(root);
+    if (more && !listView) {
+      root.add(new ResultsTreeNode());
+      model.nodesWereInserted(root, new int[]{root.getChildCount() - 1});
+    }
+    resultsTree.expandPath(new TreePath(root.getPath()));
+  }
 
-        if (root.getChildCount() > 0) {
-          ResultsTreeNode lastNode = (ResultsTreeNode) root.getLastChild();
-          if (lastNode.isLastNode()) {
-            root.remove(lastNode);
+  private static String resultsTitle(CodeSearchFacet facet) {
+    return Messages.message("ui.codesearch.results.title", facet.getQuery(), facet.getName());
+  }
+
+  private DefaultTreeModel getUnderlyingModel() {
+    return (DefaultTreeModel) ((FilteredTreeModel) resultsTree.getModel()).getTreeModel();
+  }
+
+  /**
+   * Replaces the displayed results with the refreshed results, keeping the selected result if it is still present.
+   * @param refreshedResults refreshed search results.
+   * @param facet CodeSearchFacet/multiproduct associated with the search request.
+   */
+  public void replace(List<CodeSearchResult> refreshedResults, CodeSearchFacet facet) {
+    ApplicationManager.getApplication().invokeLater(() -> {
+      this.facet = facet;
+      CodeSearchResult selected = getSelectedResult();
+      String selectedLink = selected == null ? null : selected.getExternalLink();
+      loadedLinks.clear();
+      List<CodeSearchResult> results = newResults(refreshedResults);
+      listModel.setAll(results);
+      boolean more = !results.isEmpty() && results.size() < facet.getMatchCount();
+      listModel.setTrailer(more ? LOAD_MORE : null);
+      if (listView) {
+        for (int i = 0; selectedLink != null && i < listModel.resultCount(); i++) {
+          if (selectedLink.equals(listModel.getResult(i).getExternalLink())) {
+            resultsList.setSelectedIndex(i);
+            break;
           }
         }
-
+        return;
+      }
+      try {
+        root.removeAllChildren();
+        ResultsTreeNode selectedNode = null;
         for (CodeSearchResult result : results) {
           ResultsTreeNode node = new ResultsTreeNode(result);
           root.add(node);
+          if (selectedLink != null && selectedLink.equals(result.getExternalLink())) {
+            selectedNode = node;
+          }
         }
-        int totalCount = facet.getMatchCount();
-
-        if (root.getChildCount() < totalCount) {
+        if (more) {
           root.add(new ResultsTreeNode());
         }
-        model.reload(root);
+        reload();
         resultsTree.expandPath(new TreePath(root.getPath()));
+        if (selectedNode != null) {
+          resultsTree.setSelectionPath(new TreePath(selectedNode.getPath()));
+        }
       } catch (Exception e) {
-        LOGGER.debug("Exception updating results", e);
+        LOGGER.debug("Exception refreshing results", e);
       }
     });
   }
@@ -111,6 +455,9 @@ class ResultsViewComponent extends JBPanel {
    * Clears all the search results.
    */
   public void clear() {
+    loadId++;
+    listModel.clear();
+    loadedLinks.clear();
     root.removeAllChildren();
     markReady();
   }
@@ -120,10 +467,11 @@ class ResultsViewComponent extends JBPanel {
    * @return
    */
   public boolean isEmpty() {
-    return root.getChildCount() == 0;
+    return listModel.getSize() == 0;
   }
 
   void markLoading() {
+    listModel.setTrailer(LOADING);
     root.setUserObject(Messages.message("ui.codesearch.results.loading.message"));
     reload();
   }
@@ -153,6 +501,14 @@ class ResultsViewComponent extends JBPanel {
    * Focuses if already open.
    */
   public void showNextResult() {
+    if (listView) {
+      int index = resultsList.getSelectedIndex() + 1;
+      if (index < listModel.resultCount()) {
+        resultsList.setSelectedIndex(index);
+        resultsList.ensureIndexIsVisible(index);
+      }
+      return;
+    }
     TreePath selectedPath = resultsTree.getSelectionPath();
     if (root.getFirstChild() instanceof DefaultMutableTreeNode) {
       TreePath treePath = new TreePath(((DefaultMutableTreeNode) root.getFirstChild()).getPath());
@@ -174,6 +530,15 @@ class ResultsViewComponent extends JBPanel {
    * Focuses if already open.
    */
   public void showPrevResult() {
+    if (listView) {
+      int selected = resultsList.getSelectedIndex();
+      int index = selected < 0 ? listModel.resultCount() - 1 : selected - 1;
+      if (index >= 0) {
+        resultsList.setSelectedIndex(index);
+        resultsList.ensureIndexIsVisible(index);
+      }
+      return;
+    }
     TreePath selectedResult = resultsTree.getSelectionPath();
     TreeNode prevResult = root.getLastChild();
 
@@ -199,7 +564,7 @@ class ResultsViewComponent extends JBPanel {
   void addFilter(FileType fileType) {
     FilteredTreeModel model = ((FilteredTreeModel) resultsTree.getModel());
     model.addFilter(fileType.getDefaultExtension().toLowerCase());
-    ((DefaultTreeModel) model.getTreeModel()).reload(root);
+    listModel.setFilter(model.getFilter());
   }
 
   /**
@@ -209,6 +574,16 @@ class ResultsViewComponent extends JBPanel {
   void removeFilter(FileType fileType) {
     FilteredTreeModel model = ((FilteredTreeModel) resultsTree.getModel());
     model.removeFilter(fileType.getDefaultExtension().toLowerCase());
-    ((DefaultTreeModel) model.getTreeModel()).reload(root);
+    listModel.setFilter(model.getFilter());
+  }
+
+  /**
+   * Restricts the results view to the results matching the filter, in addition to the file filters.
+   * @param filter the filter or null to show all the results.
+   */
+  void setQueryFilter(ResultFilter filter) {
+    FilteredTreeModel model = ((FilteredTreeModel) resultsTree.getModel());
+    model.setQueryFilter(filter);
+    listModel.setFilter(model.getFilter());
   }
 }
@@ -5,18 +5,26 @@ import com.intellij.ide.BrowserUtil;
 import com.intellij.notification.NotificationDisplayType;
 import com.intellij.notification.NotificationGroup;
 import com.intellij.notification.NotificationType;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.markup.EffectType;
 import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.openapi.fileTypes.UnknownFileType;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindow;
@@ -26,12 +34,17 @@ import com.intellij.ui.JBColor;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
 import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.ContentRange;
 import com.senthil.messages.Messages;
 import com.senthil.notification.NotificationManager;
-import com.senthil.codesearch.model.CodeSearchHighlightData;
+import com.senthil.codesearch.model.CodeSearchHighlights;
+import com.senthil.codesearch.net.CircuitOpenException;
+import com.senthil.codesearch.net.SearcherFactory;
 import com.senthil.ui.search.CodesearchPanel;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -110,6 +123,26 @@ public final class CodeSearchUtils {
             Messages.message("action.codesearch.error.notification.message"), NotificationType.ERROR, null);
   }
 
+  /**
+   * Displays the error of a failed search, a server that keeps failing is reported with the time before it is tried
+   * again.
+   * @param error the failure, possibly wrapped by the future.
+   */
+  public static void displayErrorMessage(Project project, Throwable error) {
+    while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (!(error instanceof CircuitOpenException)) {
+      displayErrorMessage(project);
+      return;
+    }
+    long seconds = TimeUnit.MILLISECONDS.toSeconds(((CircuitOpenException) error).getRetryDelay() + 999);
+    NotificationManager.getInstance(project)
+        .showNotification(CODESEARCH_CONNECTION_NOTIFICATION_GROUP,
+            Messages.message("action.codesearch.error.notification.title"),
+            Messages.message("action.codesearch.error.unavailable.message", seconds), NotificationType.ERROR, null);
+  }
+
   /**
    * Open the file present @ path in a web browser
    * @param path
@@ -119,10 +152,9 @@ public final class CodeSearchUtils {
   }
 
   /**
-   * Creates a virtual file from the search result
-   * @param result
+   * @return the open file of the search result or null.
    */
-  private static VirtualFile getOrCreateFile(@NotNull Project project, @NotNull CodeSearchResult result) {
+  private static VirtualFile findOpenFile(@NotNull Project project, @NotNull CodeSearchResult result) {
     VirtualFile[] openFiles = FileEditorManager.getInstance(project).getOpenFiles();
     for (VirtualFile openFile : openFiles) {
       CodeSearchResult embeddedResult = getSearchResult(openFile);
@@ -131,6 +163,15 @@ public final class CodeSearchUtils {
         return openFile;
       }
     }
+    return null;
+  }
+
+  /**
+   * Creates a virtual file from the search result
+   * @param result
+   * @param content the content of the file, or its beginning if the rest is appended later.
+   */
+  static VirtualFile createFile(@NotNull CodeSearchResult result, @NotNull CharSequence content) {
     FileType fileType;
     if (result.getFileExtension() == null) {
       fileType = PlainTextFileType.INSTANCE;
@@ -142,7 +183,7 @@ public final class CodeSearchUtils {
       fileType = PlainTextFileType.INSTANCE;
     }
 
-    LightVirtualFile file = new LightVirtualFile(result.getFileName(), fileType, result.getContent());
+    LightVirtualFile file = new LightVirtualFile(result.getFileName(), fileType, content);
     file.putUserDataIfAbsent(CODESEARCH_RESULT, result);
     file.setWritable(false);
     return file;
@@ -152,59 +193,205 @@ public final class CodeSearchUtils {
     return file.getUserData(CODESEARCH_RESULT);
   }
 
+  /**
+   * Keeps the beginning of a content downloaded before the result is opened, the file is then opened with it instead
+   * of downloading it again.
+   * @param range the first range of the content.
+   */
+  public static void keepFirstRange(@NotNull CodeSearchResult result, @NotNull ContentRange range) {
+    ResultContentLoader.keepFirstRange(result, range);
+  }
+
   /**
    * Highlights the file with the highlight data present in search result
-   * The file will be open in an
+   * The file is opened right away. The matches are located in a background read action, and only the
+   * highlighters are added in the event dispatch thread.
+   * If the content is not downloaded yet, the file is opened once the part around the matches is downloaded and
+   * the rest of the content is appended in the background.
    * @param result search result
+   * @return the file, or null if it is opened later.
    */
   public static VirtualFile openAndHighlightFile(@NotNull Project project, @NotNull CodeSearchResult result) {
+    VirtualFile file = findOpenFile(project, result);
+    if (file == null) {
+      if (!result.isContentLoaded()) {
+        ResultContentLoader.load(project, result, SearcherFactory.getSearcher());
+        return null;
+      }
+      file = createFile(result, result.getContent());
+    }
+    return openAndHighlightFile(project, result, file);
+  }
 
-    VirtualFile file = getOrCreateFile(project, result);
-
+  static VirtualFile openAndHighlightFile(@NotNull Project project, @NotNull CodeSearchResult result,
+      @NotNull VirtualFile file) {
     file.putUserDataIfAbsent(CODESEARCH_RESULT, result);
 
     FileEditorManager.getInstance(project).openFile(file, true);
 
-    Collection<CodeSearchHighlightData> highlightDatas = result.getHighlightData();
+    CodeSearchHighlights highlights = result.getHighlights();
 
     //Highlight the results
-    HighlightManager highlightManager = HighlightManager.getInstance(project);
     Editor currentEditor = FileEditorManager.getInstance(project).getSelectedTextEditor();
     assert currentEditor != null;
     MarkupModel markupModel = currentEditor.getMarkupModel();
     markupModel.removeAllHighlighters();
-    String documentText = currentEditor.getDocument().getText().toLowerCase();
-    TextAttributes attributes =
-        new TextAttributes(currentEditor.getSelectionModel().getTextAttributes().getForegroundColor(),
-            currentEditor.getSelectionModel().getTextAttributes().getBackgroundColor(), JBColor.YELLOW,
-            EffectType.SEARCH_MATCH, 0);
 
-    if (highlightDatas == null || highlightDatas.isEmpty()) { //just open the file if there is no highlight data
+    if (highlights == null || highlights.isEmpty()) { //just open the file if there is no highlight data
       NotificationManager.getInstance(project)
           .showNotification(HIGHLIGHT_NOTIFICATION_GROUP,
               Messages.message("ui.codesearch.highlight.notification.title"),
               Messages.message("ui.codesearch.highlight.notification.message"), NotificationType.INFORMATION,
               null);
+      return file;
+    }
+
+    highlight(project, file, currentEditor, highlights, true);
+    return file;
+  }
+
+  /**
+   * Highlights the matches in the editors of the file, once its content changed.
+   * @param navigate true to move the caret to the first match if it was not moved yet.
+   */
+  static void highlightFile(@NotNull Project project, @NotNull VirtualFile file, CodeSearchHighlights highlights,
+      boolean navigate) {
+    if (highlights == null || highlights.isEmpty()) {
+      return;
+    }
+    for (FileEditor fileEditor : FileEditorManager.getInstance(project).getEditors(file)) {
+      if (fileEditor instanceof TextEditor) {
+        Editor editor = ((TextEditor) fileEditor).getEditor();
+        highlight(project, file, editor, highlights, navigate && editor.getCaretModel().getOffset() == 0);
+      }
     }
+  }
+
+  /**
+   * Appends to the content of an open search result file.
+   */
+  static void appendContent(@NotNull VirtualFile file, @NotNull String text) {
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document == null || text.isEmpty()) {
+      return;
+    }
+    Application application = ApplicationManager.getApplication();
+    CommandProcessor.getInstance().runUndoTransparentAction(() -> application.runWriteAction(() -> {
+      //the document of the search result is read only for the user.
+      document.setReadOnly(false);
+      try {
+        document.insertString(document.getTextLength(), text);
+      } finally {
+        document.setReadOnly(true);
+      }
+    }));
+  }
+
+  /**
+   * Locates the matches in a background read action and highlights them in the event dispatch thread.
+   */
+  private static void highlight(Project project, VirtualFile file, Editor editor, CodeSearchHighlights highlights,
+      boolean navigate) {
+    Document document = editor.getDocument();
+    Application application = ApplicationManager.getApplication();
+    application.executeOnPooledThread(() -> {
+      int[] ranges = application.runReadAction((Computable<int[]>) () -> findMatches(document, highlights));
+      application.invokeLater(() -> addHighlights(project, file, editor, ranges, navigate));
+    });
+  }
 
-    Integer firstOccurenceLineNo = null;
-    if (highlightDatas != null) {
-      for (CodeSearchHighlightData highlightData : highlightDatas) {
-        int startOffset = currentEditor.getDocument().getLineStartOffset(highlightData.getLineNumber());
-        String matchedQuery = highlightData.getMatchedString().toLowerCase();
-        int startIndex = documentText.indexOf(matchedQuery, startOffset);
-        int endIndex = startIndex + matchedQuery.length();
-        if (startIndex == -1) {
+  /**
+   * Locates the matches in the document. A match without a column is searched in its line only, ignoring case.
+   * Must be called in a read action.
+   * @return start and end offsets of the matches found.
+   */
+  static int[] findMatches(Document document, CodeSearchHighlights highlights) {
+    CharSequence text = document.getCharsSequence();
+    int lineCount = document.getLineCount();
+    int[] ranges = new int[highlights.size() * 2];
+    int count = 0;
+    for (int i = 0; i < highlights.size(); i++) {
+      int line = highlights.getLine(i);
+      if (line < 0 || line >= lineCount) {
+        continue;
+      }
+      int lineStart = document.getLineStartOffset(line);
+      int lineEnd = document.getLineEndOffset(line);
+      int start;
+      int end;
+      if (highlights.getColumn(i) != CodeSearchHighlights.UNKNOWN
+          && highlights.getLength(i) != CodeSearchHighlights.UNKNOWN) {
+        start = lineStart + highlights.getColumn(i);
+        end = start + highlights.getLength(i);
+      } else {
+        String matchedString = highlights.getMatchedString(i);
+        if (matchedString == null || matchedString.isEmpty()) {
           continue;
         }
-        highlightManager.addOccurrenceHighlight(currentEditor, startIndex, endIndex, attributes,
-            HighlightManager.HIDE_BY_ESCAPE, new ArrayList<>(), JBColor.BLUE);
-        if (firstOccurenceLineNo == null) {
-          firstOccurenceLineNo = highlightData.getLineNumber();
-          new OpenFileDescriptor(project, file, firstOccurenceLineNo, startIndex - startOffset).navigate(true);
-        }
+        start = indexOfIgnoreCase(text, matchedString, lineStart, lineEnd);
+        end = start + matchedString.length();
+      }
+      if (start < 0 || end > lineEnd) {
+        continue;
+      }
+      ranges[count++] = start;
+      ranges[count++] = end;
+    }
+    return Arrays.copyOf(ranges, count);
+  }
+
+  /**
+   * @return offset of the first occurrence of the string between the offsets, ignoring case, or -1.
+   */
+  static int indexOfIgnoreCase(CharSequence text, String string, int from, int to) {
+    int last = to - string.length();
+    for (int start = from; start <= last; start++) {
+      int i = 0;
+      while (i < string.length() && equalsIgnoreCase(text.charAt(start + i), string.charAt(i))) {
+        i++;
+      }
+      if (i == string.length()) {
+        return start;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean equalsIgnoreCase(char a, char b) {
+    return a == b || Character.toLowerCase(a) == Character.toLowerCase(b)
+        || Character.toUpperCase(a) == Character.toUpperCase(b);
+  }
+
+  /**
+   * Replaces the highlighters and moves the caret to the first match.
+   * @param ranges start and end offsets of the matches.
+   * @param navigate true to move the caret.
+   */
+  private static void addHighlights(Project project, VirtualFile file, Editor editor, int[] ranges,
+      boolean navigate) {
+    if (editor.isDisposed() || project.isDisposed()) {
+      return;
+    }
+    editor.getMarkupModel().removeAllHighlighters();
+    HighlightManager highlightManager = HighlightManager.getInstance(project);
+    TextAttributes attributes =
+        new TextAttributes(editor.getSelectionModel().getTextAttributes().getForegroundColor(),
+            editor.getSelectionModel().getTextAttributes().getBackgroundColor(), JBColor.YELLOW,
+            EffectType.SEARCH_MATCH, 0);
+    Document document = editor.getDocument();
+    boolean navigated = !navigate;
+    for (int i = 0; i < ranges.length; i += 2) {
+      //the content is only ever appended to, so the offsets stay valid while they are inside the document.
+      if (ranges[i + 1] > document.getTextLength()) {
+        continue;
+      }
+      highlightManager.addOccurrenceHighlight(editor, ranges[i], ranges[i + 1], attributes,
+          HighlightManager.HIDE_BY_ESCAPE, null, JBColor.BLUE);
+      if (!navigated) {
+        navigated = true;
+        int line = document.getLineNumber(ranges[i]);
+        new OpenFileDescriptor(project, file, line, ranges[i] - document.getLineStartOffset(line)).navigate(true);
       }
     }
-    return file;
   }
 }
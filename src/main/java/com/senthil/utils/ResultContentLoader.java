@@ -0,0 +1,217 @@
+package com.senthil.utils;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.senthil.codesearch.model.CodeSearchHighlights;
+import com.senthil.codesearch.model.CodeSearchResult;
+import com.senthil.codesearch.model.ContentRange;
+import com.senthil.codesearch.net.Searcher;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+
+
+/**
+ * Downloads the content of a search result in ranges, so that a large file is displayed before it is downloaded.
+ * The beginning of the file up to the first match is fetched first and the file is opened with it, the rest of
+ * the content is then appended to the document. Loading stops if the file is closed.
+ * A result is loaded once at a time, opening it again while its first range is downloaded does nothing.
+ *
+ * The state is only accessed in the event dispatch thread.
+ */
+final class ResultContentLoader {
+
+  private static final Logger LOG = Logger.getInstance(ResultContentLoader.class);
+
+  /**
+   * estimated no of bytes of a line, used to size the first range from the line of the first match.
+   */
+  private static final int BYTES_PER_LINE = 80;
+  private static final int MIN_FIRST_RANGE = 64 * 1024;
+  private static final int MAX_FIRST_RANGE = 1024 * 1024;
+  private static final int RANGE = 256 * 1024;
+  /**
+   * no of first ranges downloaded before the results are opened that are kept.
+   */
+  private static final int MAX_FIRST_RANGES = 8;
+
+  /**
+   * keys of the results whose file is not opened yet, see {@link #key(Project, CodeSearchResult)}.
+   */
+  private static final Set<String> OPENING = new HashSet<>();
+  /**
+   * first ranges of the results downloaded by the prefetcher, in access order. Written from background threads.
+   */
+  private static final Map<CodeSearchResult, ContentRange> FIRST_RANGES = Collections.synchronizedMap(
+      new LinkedHashMap<CodeSearchResult, ContentRange>(MAX_FIRST_RANGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CodeSearchResult, ContentRange> eldest) {
+          return size() > MAX_FIRST_RANGES;
+        }
+      });
+
+  private final Project project;
+  private final CodeSearchResult result;
+  private final Searcher searcher;
+  private final String key;
+  private VirtualFile file;
+  /**
+   * no of bytes and chars of the content received.
+   */
+  private long loadedBytes;
+  private int loadedChars;
+  /**
+   * a trailing carriage return, kept until the next range as it may be followed by a line feed.
+   */
+  private String pending = "";
+
+  private ResultContentLoader(Project project, CodeSearchResult result, Searcher searcher, String key) {
+    this.project = project;
+    this.result = result;
+    this.searcher = searcher;
+    this.key = key;
+  }
+
+  /**
+   * Loads the content of the result and opens its file, unless the result is already being opened.
+   */
+  static void load(@NotNull Project project, @NotNull CodeSearchResult result, @NotNull Searcher searcher) {
+    String key = key(project, result);
+    if (!OPENING.add(key)) {
+      LOG.debug("Content already loading ", result.getFilePath());
+      return;
+    }
+    new ResultContentLoader(project, result, searcher, key).load();
+  }
+
+  /**
+   * Keeps the first range of a content too large to be prefetched, the result is opened with it.
+   */
+  static void keepFirstRange(@NotNull CodeSearchResult result, @NotNull ContentRange range) {
+    if (range.getStart() == 0) {
+      FIRST_RANGES.put(result, range);
+    }
+  }
+
+  /**
+   * The open files are matched by path, see {@link CodeSearchUtils#openAndHighlightFile(Project, CodeSearchResult)}.
+   */
+  private static String key(Project project, CodeSearchResult result) {
+    return project.getLocationHash() + '\u0000' + result.getFilePath();
+  }
+
+  private void load() {
+    Application application = ApplicationManager.getApplication();
+    ContentRange firstRange = FIRST_RANGES.remove(result);
+    if (firstRange != null) {
+      application.invokeLater(() -> open(firstRange));
+      return;
+    }
+    searcher.getContentRange(result, 0, firstRangeLength(result.getHighlights())).whenComplete((range, e) -> {
+      if (range == null) {
+        LOG.debug("Content range not available, downloading ", result.getFilePath());
+        loadWhole();
+      } else {
+        application.invokeLater(() -> open(range));
+      }
+    });
+  }
+
+  /**
+   * The first range reaches a little past the line of the first match, the offset of the line being estimated.
+   */
+  static int firstRangeLength(CodeSearchHighlights highlights) {
+    long line = highlights == null || highlights.isEmpty() ? 0 : highlights.getLine(0);
+    long length = line * BYTES_PER_LINE + MIN_FIRST_RANGE / 2;
+    return (int) Math.min(MAX_FIRST_RANGE, Math.max(MIN_FIRST_RANGE, length));
+  }
+
+  private void open(ContentRange range) {
+    OPENING.remove(key);
+    if (project.isDisposed()) {
+      return;
+    }
+    file = CodeSearchUtils.openAndHighlightFile(project, result, CodeSearchUtils.createFile(result, accept(range)));
+    next(range);
+  }
+
+  private void append(ContentRange range) {
+    if (range == null) {
+      LOG.debug("Stopped loading content of ", result.getFilePath());
+      return;
+    }
+    if (project.isDisposed() || !FileEditorManager.getInstance(project).isFileOpen(file)) {
+      return;
+    }
+    CodeSearchUtils.appendContent(file, accept(range));
+    next(range);
+  }
+
+  private void next(ContentRange range) {
+    if (range.isLast()) {
+      finish();
+      return;
+    }
+    Application application = ApplicationManager.getApplication();
+    searcher.getContentRange(result, loadedBytes, RANGE)
+        .whenComplete((nextRange, e) -> application.invokeLater(() -> append(nextRange)));
+  }
+
+  /**
+   * Keeps the content in the result and highlights the matches of the ranges appended.
+   */
+  private void finish() {
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document != null) {
+      result.setContent(document.getText());
+    }
+    CodeSearchUtils.highlightFile(project, file, result.getHighlights(), true);
+  }
+
+  /**
+   * @return the text of the range to be added to the document.
+   */
+  private String accept(ContentRange range) {
+    String text = range.getText();
+    if (range.getStart() == 0 && loadedChars > 0) {
+      //the whole content is returned by servers ignoring ranges, only the rest of it is new.
+      text = text.substring(Math.min(loadedChars, text.length()));
+    }
+    loadedChars = range.getStart() == 0 ? range.getText().length() : loadedChars + text.length();
+    loadedBytes = range.getEnd();
+    text = pending + text;
+    pending = "";
+    if (!range.isLast() && text.endsWith("\r")) {
+      pending = "\r";
+      text = text.substring(0, text.length() - 1);
+    }
+    return StringUtil.convertLineSeparators(text);
+  }
+
+  /**
+   * Downloads the whole content, for the searchers that cannot return a range.
+   */
+  private void loadWhole() {
+    Application application = ApplicationManager.getApplication();
+    application.executeOnPooledThread(() -> {
+      String content = result.getContent();
+      application.invokeLater(() -> {
+        OPENING.remove(key);
+        if (!project.isDisposed()) {
+          CodeSearchUtils.openAndHighlightFile(project, result,
+              CodeSearchUtils.createFile(result, content == null ? "" : content));
+        }
+      });
+    });
+  }
+}